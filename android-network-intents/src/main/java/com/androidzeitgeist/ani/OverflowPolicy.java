@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani;
+
+/**
+ * Policy deciding what happens when an element is added to a bounded queue that
+ * is already full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Drop the oldest element in the queue to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Drop the new element and keep the queue unchanged.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Block the caller until there is room in the queue.
+     */
+    BLOCK
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani;
+
+import java.net.NetworkInterface;
+
+/**
+ * Options applied to the sockets used by a {@link com.androidzeitgeist.ani.discovery.Discovery}
+ * or a {@link com.androidzeitgeist.ani.transmitter.Transmitter}. Options that have
+ * not been set keep the default value of the system.
+ *
+ * The options are read whenever a socket is created, so changes only affect
+ * sockets created afterwards.
+ */
+public class SocketOptions {
+    private Integer receiveBufferSize;
+    private Integer sendBufferSize;
+    private Integer timeToLive;
+    private Boolean loopbackEnabled;
+    private Integer trafficClass;
+    private NetworkInterface networkInterface;
+
+    /**
+     * Set the size of the receive buffer of the socket (SO_RCVBUF). A larger buffer
+     * allows a {@link com.androidzeitgeist.ani.discovery.Discovery} to absorb bursts
+     * of packets without dropping them. The system may limit the actual size.
+     *
+     * @param receiveBufferSize The size of the receive buffer in bytes.
+     */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        if (receiveBufferSize <= 0) {
+            throw new IllegalArgumentException("Receive buffer size must be positive");
+        }
+
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public Integer getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Set the size of the send buffer of the socket (SO_SNDBUF).
+     *
+     * @param sendBufferSize The size of the send buffer in bytes.
+     */
+    public void setSendBufferSize(int sendBufferSize) {
+        if (sendBufferSize <= 0) {
+            throw new IllegalArgumentException("Send buffer size must be positive");
+        }
+
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public Integer getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Set the time-to-live of sent multicast packets. The default of 1 keeps the
+     * packets in the local network.
+     *
+     * @param timeToLive The time-to-live between 0 and 255.
+     */
+    public void setTimeToLive(int timeToLive) {
+        if (timeToLive < 0 || timeToLive > 255) {
+            throw new IllegalArgumentException("Time-to-live must be between 0 and 255");
+        }
+
+        this.timeToLive = timeToLive;
+    }
+
+    public Integer getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Set whether sent multicast packets are looped back to the sending device.
+     *
+     * @param loopbackEnabled True to receive own multicast packets.
+     */
+    public void setLoopbackEnabled(boolean loopbackEnabled) {
+        this.loopbackEnabled = loopbackEnabled;
+    }
+
+    public Boolean getLoopbackEnabled() {
+        return loopbackEnabled;
+    }
+
+    /**
+     * Set the traffic class or type-of-service octet of sent packets (IP_TOS).
+     *
+     * @param trafficClass The traffic class between 0 and 255.
+     */
+    public void setTrafficClass(int trafficClass) {
+        if (trafficClass < 0 || trafficClass > 255) {
+            throw new IllegalArgumentException("Traffic class must be between 0 and 255");
+        }
+
+        this.trafficClass = trafficClass;
+    }
+
+    public Integer getTrafficClass() {
+        return trafficClass;
+    }
+
+    /**
+     * Set the network interface used to send multicast packets and to join
+     * multicast groups. By default the system picks the interface.
+     *
+     * @param networkInterface The {@link NetworkInterface} to use.
+     */
+    public void setNetworkInterface(NetworkInterface networkInterface) {
+        this.networkInterface = networkInterface;
+    }
+
+    public NetworkInterface getNetworkInterface() {
+        return networkInterface;
+    }
+}
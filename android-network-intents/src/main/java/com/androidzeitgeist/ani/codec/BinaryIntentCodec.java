@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.codec;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.androidzeitgeist.ani.internal.BufferedIntentCodec;
+import com.androidzeitgeist.ani.internal.ByteReader;
+import com.androidzeitgeist.ani.internal.ByteWriter;
+
+/**
+ * {@link IntentCodec} using a compact binary format. Every field is prefixed by
+ * its length and extras are stored with their type, so decoding does not need to
+ * escape or parse any text.
+ *
+ * Packets start with a magic number and a version byte. Packets without this
+ * header are decoded as legacy URI packets (see {@link UriIntentCodec}), so a
+ * receiver using this codec understands both formats.
+ *
+ * Supported extra types are the primitive wrapper types, {@link String} and
+ * arrays of <code>byte</code>, <code>int</code>, <code>long</code> and
+ * {@link String}.
+ */
+public class BinaryIntentCodec implements BufferedIntentCodec, IntentHeaderDecoder {
+    /* package-private */ static final byte MAGIC_0 = (byte) 0xA7;
+    /* package-private */ static final byte MAGIC_1 = (byte) 'I';
+    /* package-private */ static final byte VERSION = 1;
+
+    private static final int HEADER_LENGTH = 3;
+
+    private static final int TYPE_STRING = 1;
+    private static final int TYPE_INT = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_BOOLEAN = 4;
+    private static final int TYPE_BYTE = 5;
+    private static final int TYPE_SHORT = 6;
+    private static final int TYPE_CHAR = 7;
+    private static final int TYPE_FLOAT = 8;
+    private static final int TYPE_DOUBLE = 9;
+    private static final int TYPE_BYTE_ARRAY = 10;
+    private static final int TYPE_INT_ARRAY = 11;
+    private static final int TYPE_LONG_ARRAY = 12;
+    private static final int TYPE_STRING_ARRAY = 13;
+
+    private final UriIntentCodec legacyCodec = new UriIntentCodec();
+
+    /**
+     * Returns true if the given range of bytes starts with the header of the
+     * binary format.
+     */
+    public static boolean isBinary(byte[] data, int offset, int length) {
+        return length >= HEADER_LENGTH
+            && data[offset] == MAGIC_0
+            && data[offset + 1] == MAGIC_1;
+    }
+
+    @Override
+    public byte[] encode(Intent intent) throws IntentCodecException {
+        ByteWriter writer = new ByteWriter();
+        encode(intent, writer);
+        return writer.toByteArray();
+    }
+
+    @Override
+    public void encode(Intent intent, ByteWriter writer) throws IntentCodecException {
+        writer.writeByte(MAGIC_0);
+        writer.writeByte(MAGIC_1);
+        writer.writeByte(VERSION);
+
+        writer.writeVarInt(intent.getFlags());
+        writer.writeString(intent.getAction());
+        writer.writeString(intent.getDataString());
+        writer.writeString(intent.getType());
+        writer.writeString(intent.getPackage());
+
+        ComponentName component = intent.getComponent();
+        writer.writeString(component != null ? component.flattenToString() : null);
+
+        Set<String> categories = intent.getCategories();
+        if (categories != null) {
+            writer.writeVarInt(categories.size());
+            for (String category : categories) {
+                writer.writeString(category);
+            }
+        } else {
+            writer.writeVarInt(0);
+        }
+
+        Bundle extras = intent.getExtras();
+        if (extras != null) {
+            Set<String> keys = extras.keySet();
+            writer.writeVarInt(keys.size());
+            for (String key : keys) {
+                writer.writeString(key);
+                writeExtra(writer, key, extras.get(key));
+            }
+        } else {
+            writer.writeVarInt(0);
+        }
+    }
+
+    @Override
+    public Intent decode(byte[] data, int offset, int length) throws IntentCodecException {
+        if (!isBinary(data, offset, length)) {
+            return legacyCodec.decode(data, offset, length);
+        }
+
+        if (data[offset + 2] != VERSION) {
+            throw new IntentCodecException("Unsupported binary format version: " + data[offset + 2]);
+        }
+
+        ByteReader reader = new ByteReader(data, offset + HEADER_LENGTH, length - HEADER_LENGTH);
+
+        try {
+            return decode(reader);
+        } catch (IOException exception) {
+            throw new IntentCodecException("Malformed binary Intent", exception);
+        }
+    }
+
+    @Override
+    public IntentHeader decodeHeader(byte[] data, int offset, int length) throws IntentCodecException {
+        if (!isBinary(data, offset, length)) {
+            return legacyCodec.decodeHeader(data, offset, length);
+        }
+
+        if (data[offset + 2] != VERSION) {
+            throw new IntentCodecException("Unsupported binary format version: " + data[offset + 2]);
+        }
+
+        ByteReader reader = new ByteReader(data, offset + HEADER_LENGTH, length - HEADER_LENGTH);
+
+        try {
+            reader.readVarInt(); // Flags
+            String action = reader.readString();
+            String scheme = UriIntentCodec.getScheme(reader.readString());
+
+            reader.skipString(); // Type
+            reader.skipString(); // Package
+            reader.skipString(); // Component
+
+            Set<String> categories = null;
+
+            int categoryCount = reader.readVarInt();
+            if (categoryCount > 0) {
+                categories = new HashSet<String>();
+                for (int i = 0; i < categoryCount; i++) {
+                    categories.add(reader.readString());
+                }
+            }
+
+            return new IntentHeader(action, categories, scheme);
+        } catch (IOException exception) {
+            throw new IntentCodecException("Malformed binary Intent", exception);
+        }
+    }
+
+    private Intent decode(ByteReader reader) throws IOException, IntentCodecException {
+        Intent intent = createIntent();
+
+        intent.setFlags(reader.readVarInt());
+        intent.setAction(reader.readString());
+
+        String dataString = reader.readString();
+        String type = reader.readString();
+        if (dataString != null) {
+            intent.setDataAndType(Uri.parse(dataString), type);
+        } else if (type != null) {
+            intent.setType(type);
+        }
+
+        String packageName = reader.readString();
+        if (packageName != null) {
+            intent.setPackage(packageName);
+        }
+
+        String component = reader.readString();
+        if (component != null) {
+            intent.setComponent(ComponentName.unflattenFromString(component));
+        }
+
+        int categoryCount = reader.readVarInt();
+        for (int i = 0; i < categoryCount; i++) {
+            intent.addCategory(reader.readString());
+        }
+
+        int extraCount = reader.readVarInt();
+        for (int i = 0; i < extraCount; i++) {
+            readExtra(reader, reader.readString(), intent);
+        }
+
+        return intent;
+    }
+
+    protected Intent createIntent() {
+        return new Intent();
+    }
+
+    private static void writeExtra(ByteWriter writer, String key, Object value) throws IntentCodecException {
+        if (value instanceof String) {
+            writer.writeByte(TYPE_STRING);
+            writer.writeString((String) value);
+        } else if (value instanceof Integer) {
+            writer.writeByte(TYPE_INT);
+            writeSignedVarLong(writer, (Integer) value);
+        } else if (value instanceof Long) {
+            writer.writeByte(TYPE_LONG);
+            writeSignedVarLong(writer, (Long) value);
+        } else if (value instanceof Boolean) {
+            writer.writeByte(TYPE_BOOLEAN);
+            writer.writeByte((Boolean) value ? 1 : 0);
+        } else if (value instanceof Byte) {
+            writer.writeByte(TYPE_BYTE);
+            writer.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            writer.writeByte(TYPE_SHORT);
+            writer.writeShort((Short) value);
+        } else if (value instanceof Character) {
+            writer.writeByte(TYPE_CHAR);
+            writer.writeShort((Character) value);
+        } else if (value instanceof Float) {
+            writer.writeByte(TYPE_FLOAT);
+            writer.writeInt(Float.floatToIntBits((Float) value));
+        } else if (value instanceof Double) {
+            writer.writeByte(TYPE_DOUBLE);
+            writer.writeLong(Double.doubleToLongBits((Double) value));
+        } else if (value instanceof byte[]) {
+            byte[] array = (byte[]) value;
+            writer.writeByte(TYPE_BYTE_ARRAY);
+            writer.writeVarInt(array.length);
+            writer.writeBytes(array);
+        } else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            writer.writeByte(TYPE_INT_ARRAY);
+            writer.writeVarInt(array.length);
+            for (int element : array) {
+                writeSignedVarLong(writer, element);
+            }
+        } else if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            writer.writeByte(TYPE_LONG_ARRAY);
+            writer.writeVarInt(array.length);
+            for (long element : array) {
+                writeSignedVarLong(writer, element);
+            }
+        } else if (value instanceof String[]) {
+            String[] array = (String[]) value;
+            writer.writeByte(TYPE_STRING_ARRAY);
+            writer.writeVarInt(array.length);
+            for (String element : array) {
+                writer.writeString(element);
+            }
+        } else {
+            throw new IntentCodecException("Unsupported type of extra '" + key + "': "
+                + (value != null ? value.getClass().getName() : "null"));
+        }
+    }
+
+    private static void readExtra(ByteReader reader, String key, Intent intent) throws IOException {
+        int type = reader.readUnsignedByte();
+
+        switch (type) {
+            case TYPE_STRING:
+                intent.putExtra(key, reader.readString());
+                break;
+            case TYPE_INT:
+                intent.putExtra(key, (int) readSignedVarLong(reader));
+                break;
+            case TYPE_LONG:
+                intent.putExtra(key, readSignedVarLong(reader));
+                break;
+            case TYPE_BOOLEAN:
+                intent.putExtra(key, reader.readByte() != 0);
+                break;
+            case TYPE_BYTE:
+                intent.putExtra(key, (byte) reader.readByte());
+                break;
+            case TYPE_SHORT:
+                intent.putExtra(key, (short) reader.readShort());
+                break;
+            case TYPE_CHAR:
+                intent.putExtra(key, (char) reader.readShort());
+                break;
+            case TYPE_FLOAT:
+                intent.putExtra(key, Float.intBitsToFloat(reader.readInt()));
+                break;
+            case TYPE_DOUBLE:
+                intent.putExtra(key, Double.longBitsToDouble(reader.readLong()));
+                break;
+            case TYPE_BYTE_ARRAY:
+                intent.putExtra(key, reader.readBytes(reader.readLength()));
+                break;
+            case TYPE_INT_ARRAY: {
+                int[] array = new int[reader.readLength()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = (int) readSignedVarLong(reader);
+                }
+                intent.putExtra(key, array);
+                break;
+            }
+            case TYPE_LONG_ARRAY: {
+                long[] array = new long[reader.readLength()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readSignedVarLong(reader);
+                }
+                intent.putExtra(key, array);
+                break;
+            }
+            case TYPE_STRING_ARRAY: {
+                String[] array = new String[reader.readLength()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = reader.readString();
+                }
+                intent.putExtra(key, array);
+                break;
+            }
+            default:
+                throw new IOException("Unknown extra type: " + type);
+        }
+    }
+
+    /**
+     * Write a signed value using zig-zag encoding so that small negative values
+     * stay small on the wire.
+     */
+    private static void writeSignedVarLong(ByteWriter writer, long value) {
+        writer.writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private static long readSignedVarLong(ByteReader reader) throws IOException {
+        long value = reader.readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.codec;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.internal.BufferedIntentCodec;
+import com.androidzeitgeist.ani.internal.ByteWriter;
+
+/**
+ * {@link IntentCodec} that remembers recently decoded {@link Intent}s, so that
+ * repeated identical packets, e.g. periodic beacons or status broadcasts, are
+ * parsed only once.
+ *
+ * Decoded {@link Intent}s are kept in a least recently used cache keyed by a
+ * 64 bit hash of the serialized bytes. A hit is confirmed by comparing the bytes,
+ * so a hash collision never returns a wrong {@link Intent}. The cache is bounded
+ * by the number of entries and by the total size of the cached bytes.
+ *
+ * Every call to {@link #decode(byte[], int, int)} returns a new copy of the cached
+ * {@link Intent}, so receivers may modify it. The copy is shallow: array extras
+ * are shared between copies and must not be modified.
+ *
+ * Encoding is passed through to the wrapped codec unchanged.
+ */
+public class CachingIntentCodec implements BufferedIntentCodec, IntentHeaderDecoder {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final IntentCodec codec;
+    private final int maximumEntries;
+    private final int maximumBytes;
+
+    private final LinkedHashMap<Long, CacheEntry> entries = new LinkedHashMap<Long, CacheEntry>(16, 0.75f, true);
+    private int cachedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create a cache of up to the given number of entries with up to 1 KB of
+     * serialized data per entry on average.
+     *
+     * @param codec The {@link IntentCodec} to decode packets that are not cached.
+     * @param maximumEntries The maximum number of cached {@link Intent}s.
+     */
+    public CachingIntentCodec(IntentCodec codec, int maximumEntries) {
+        this(codec, maximumEntries, (int) Math.min(Integer.MAX_VALUE, maximumEntries * 1024L));
+    }
+
+    /**
+     * Create a cache bounded by the number of entries and the size of their
+     * serialized data. Packets larger than the byte limit are never cached.
+     *
+     * @param codec The {@link IntentCodec} to decode packets that are not cached.
+     * @param maximumEntries The maximum number of cached {@link Intent}s.
+     * @param maximumBytes The maximum total size of the serialized data of all
+     *                     cached {@link Intent}s.
+     * @throws IllegalArgumentException if a limit is not positive.
+     */
+    public CachingIntentCodec(IntentCodec codec, int maximumEntries, int maximumBytes) {
+        if (codec == null) {
+            throw new IllegalArgumentException("Codec must not be null");
+        }
+
+        if (maximumEntries <= 0 || maximumBytes <= 0) {
+            throw new IllegalArgumentException("Cache limits must be positive");
+        }
+
+        this.codec = codec;
+        this.maximumEntries = maximumEntries;
+        this.maximumBytes = maximumBytes;
+    }
+
+    @Override
+    public byte[] encode(Intent intent) throws IntentCodecException {
+        return codec.encode(intent);
+    }
+
+    @Override
+    public void encode(Intent intent, ByteWriter writer) throws IntentCodecException {
+        if (codec instanceof BufferedIntentCodec) {
+            ((BufferedIntentCodec) codec).encode(intent, writer);
+        } else {
+            writer.writeBytes(codec.encode(intent));
+        }
+    }
+
+    @Override
+    public Intent decode(byte[] data, int offset, int length) throws IntentCodecException {
+        return copy(getIntent(data, offset, length));
+    }
+
+    /**
+     * Returns the header of a cached {@link Intent} without decoding the packet
+     * again. Packets that are not cached are passed to the header decoder of the
+     * wrapped codec or, if it has none, decoded completely and cached.
+     */
+    @Override
+    public IntentHeader decodeHeader(byte[] data, int offset, int length) throws IntentCodecException {
+        long hash = hash(data, offset, length);
+
+        Intent intent = lookup(hash, data, offset, length);
+        if (intent != null) {
+            hits.incrementAndGet();
+        } else {
+            if (codec instanceof IntentHeaderDecoder) {
+                return ((IntentHeaderDecoder) codec).decodeHeader(data, offset, length);
+            }
+
+            misses.incrementAndGet();
+            intent = decodeAndCache(hash, data, offset, length);
+        }
+
+        // Never hand out the categories of the cached Intent
+        Set<String> categories = intent.getCategories();
+        if (categories != null) {
+            categories = Collections.unmodifiableSet(categories);
+        }
+
+        return new IntentHeader(intent.getAction(), categories, intent.getScheme());
+    }
+
+    /**
+     * Returns the number of calls to {@link #decode(byte[], int, int)} and
+     * {@link #decodeHeader(byte[], int, int)} served from the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of calls to {@link #decode(byte[], int, int)} and
+     * {@link #decodeHeader(byte[], int, int)} that had to be decoded completely
+     * by the wrapped codec.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of entries removed to stay within the limits.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the number of cached {@link Intent}s.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Remove all cached {@link Intent}s. The statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        cachedBytes = 0;
+    }
+
+    /**
+     * Create a copy of a cached {@link Intent} to be handed out.
+     */
+    protected Intent copy(Intent intent) {
+        return new Intent(intent);
+    }
+
+    private Intent getIntent(byte[] data, int offset, int length) throws IntentCodecException {
+        long hash = hash(data, offset, length);
+
+        Intent intent = lookup(hash, data, offset, length);
+        if (intent != null) {
+            hits.incrementAndGet();
+            return intent;
+        }
+
+        misses.incrementAndGet();
+        return decodeAndCache(hash, data, offset, length);
+    }
+
+    private synchronized Intent lookup(long hash, byte[] data, int offset, int length) {
+        CacheEntry entry = entries.get(hash);
+
+        if (entry == null || !entry.matches(data, offset, length)) {
+            return null;
+        }
+
+        return entry.intent;
+    }
+
+    /**
+     * Decode outside of the lock, so that other threads can use the cache meanwhile.
+     */
+    private Intent decodeAndCache(long hash, byte[] data, int offset, int length) throws IntentCodecException {
+        Intent intent = codec.decode(data, offset, length);
+
+        if (length <= maximumBytes) {
+            byte[] bytes = new byte[length];
+            System.arraycopy(data, offset, bytes, 0, length);
+
+            put(hash, new CacheEntry(bytes, intent));
+        }
+
+        return intent;
+    }
+
+    private synchronized void put(long hash, CacheEntry entry) {
+        CacheEntry previous = entries.put(hash, entry);
+        if (previous != null) {
+            cachedBytes -= previous.data.length;
+        }
+
+        cachedBytes += entry.data.length;
+
+        Iterator<CacheEntry> iterator = entries.values().iterator();
+        while (entries.size() > maximumEntries || cachedBytes > maximumBytes) {
+            CacheEntry eldest = iterator.next();
+            iterator.remove();
+
+            cachedBytes -= eldest.data.length;
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the given range.
+     */
+    /* package-private */ static long hash(byte[] data, int offset, int length) {
+        long hash = FNV_OFFSET_BASIS;
+
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= data[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+
+        return hash;
+    }
+
+    private static class CacheEntry {
+        private final byte[] data;
+        private final Intent intent;
+
+        public CacheEntry(byte[] data, Intent intent) {
+            this.data = data;
+            this.intent = intent;
+        }
+
+        public boolean matches(byte[] other, int offset, int length) {
+            if (data.length != length) {
+                return false;
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (data[i] != other[offset + i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
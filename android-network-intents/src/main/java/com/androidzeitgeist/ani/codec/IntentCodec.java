@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.codec;
+
+import android.content.Intent;
+
+/**
+ * An {@link IntentCodec} converts {@link Intent}s to the bytes of a network
+ * packet and back.
+ *
+ * Implementations must be thread-safe as a single instance may be used by
+ * multiple threads at the same time.
+ */
+public interface IntentCodec {
+    /**
+     * Serialize the given {@link Intent}.
+     *
+     * @param intent The {@link Intent} to serialize.
+     * @return The serialized {@link Intent}.
+     * @throws IntentCodecException if the {@link Intent} could not be serialized.
+     */
+    public byte[] encode(Intent intent) throws IntentCodecException;
+
+    /**
+     * Deserialize an {@link Intent} from the given range of bytes.
+     *
+     * @param data The buffer containing the serialized {@link Intent}.
+     * @param offset The offset of the first byte in the buffer.
+     * @param length The number of bytes to read.
+     * @return The deserialized {@link Intent}.
+     * @throws IntentCodecException if the bytes could not be parsed as {@link Intent}.
+     */
+    public Intent decode(byte[] data, int offset, int length) throws IntentCodecException;
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.codec;
+
+/**
+ * Exception thrown by an {@link IntentCodec} if an Intent could not be
+ * serialized or deserialized.
+ */
+@SuppressWarnings("serial")
+public class IntentCodecException extends Exception {
+    /**
+     * Constructs a new {@link IntentCodecException} with the current stack trace
+     * and the specified detail message.
+     *
+     * @param detailMessage the detail message for this exception.
+     */
+    public IntentCodecException(String detailMessage) {
+        super(detailMessage);
+    }
+
+    /**
+     * Constructs a new {@link IntentCodecException} with the current stack trace, the
+     * specified detail message and the specified cause.
+     *
+     * @param detailMessage the detail message for this exception.
+     * @param cause the cause of this exception.
+     */
+    public IntentCodecException(String detailMessage, Throwable cause) {
+        super(detailMessage, cause);
+    }
+}
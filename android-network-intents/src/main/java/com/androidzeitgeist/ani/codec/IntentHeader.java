@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.codec;
+
+import java.util.Collections;
+import java.util.Set;
+
+import android.content.Intent;
+
+/**
+ * The parts of a serialized {@link Intent} that are needed to decide whether it
+ * is of interest, read without deserializing the whole {@link Intent}.
+ *
+ * @see IntentHeaderDecoder
+ */
+public class IntentHeader {
+    private final String action;
+    private final Set<String> categories;
+    private final String scheme;
+
+    /**
+     * @param action The action of the {@link Intent} or null.
+     * @param categories The categories of the {@link Intent} or null.
+     * @param scheme The scheme of the data URI of the {@link Intent} or null.
+     */
+    public IntentHeader(String action, Set<String> categories, String scheme) {
+        this.action = action;
+        this.categories = categories != null ? categories : Collections.<String>emptySet();
+        this.scheme = scheme;
+    }
+
+    /**
+     * Returns the action or null if the {@link Intent} has no action.
+     */
+    public String getAction() {
+        return action;
+    }
+
+    /**
+     * Returns the categories. The set is empty if the {@link Intent} has no categories.
+     */
+    public Set<String> getCategories() {
+        return categories;
+    }
+
+    /**
+     * Returns the scheme of the data URI or null if the {@link Intent} has no data
+     * or the data has no scheme.
+     */
+    public String getScheme() {
+        return scheme;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.codec;
+
+import android.content.Intent;
+
+/**
+ * Optional interface for {@link IntentCodec}s that can read the {@link IntentHeader}
+ * of a serialized {@link Intent} more cheaply than decoding the whole {@link Intent}.
+ * Used to drop unwanted packets before they are deserialized.
+ */
+public interface IntentHeaderDecoder {
+    /**
+     * Read the action, categories and data scheme from the given range of bytes
+     * without creating an {@link Intent}.
+     *
+     * @param data The buffer containing the serialized {@link Intent}.
+     * @param offset The offset of the first byte in the buffer.
+     * @param length The number of bytes to read.
+     * @return The {@link IntentHeader} of the serialized {@link Intent}.
+     * @throws IntentCodecException if the bytes could not be parsed.
+     */
+    public IntentHeader decodeHeader(byte[] data, int offset, int length) throws IntentCodecException;
+}
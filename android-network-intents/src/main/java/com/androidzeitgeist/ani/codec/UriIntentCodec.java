@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URISyntaxException;
+import java.util.HashSet;
+import java.util.Set;
+
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.internal.BufferedIntentCodec;
+import com.androidzeitgeist.ani.internal.ByteWriter;
+
+/**
+ * {@link IntentCodec} using the URI representation of an {@link Intent} as
+ * returned by {@link Intent#toUri(int)}. This is the original wire format of
+ * this library and understood by every version of it.
+ *
+ * The URI is always encoded as UTF-8, independent of the default charset of the
+ * platform, so that devices with different defaults understand each other.
+ */
+public class UriIntentCodec implements BufferedIntentCodec, IntentHeaderDecoder {
+    private static final String INTENT_FRAGMENT = "#Intent;";
+
+    @Override
+    public byte[] encode(Intent intent) {
+        return intent.toUri(0).getBytes(ByteWriter.UTF_8);
+    }
+
+    @Override
+    public void encode(Intent intent, ByteWriter writer) {
+        writer.writeUtf8(intent.toUri(0));
+    }
+
+    @Override
+    public Intent decode(byte[] data, int offset, int length) throws IntentCodecException {
+        String intentUri = new String(data, offset, length, ByteWriter.UTF_8);
+
+        try {
+            return Intent.parseUri(intentUri, 0);
+        } catch (URISyntaxException exception) {
+            throw new IntentCodecException("Could not parse Intent URI", exception);
+        }
+    }
+
+    /**
+     * Scan the URI for the data scheme and the action and category fields of
+     * the Intent fragment. All other fields are skipped.
+     */
+    @Override
+    public IntentHeader decodeHeader(byte[] data, int offset, int length) throws IntentCodecException {
+        String intentUri = new String(data, offset, length, ByteWriter.UTF_8);
+
+        int fragment = intentUri.lastIndexOf(INTENT_FRAGMENT);
+        if (fragment == -1) {
+            throw new IntentCodecException("Intent URI without Intent fragment");
+        }
+
+        String scheme = fragment > 0 ? getScheme(intentUri.substring(0, fragment)) : null;
+        String action = null;
+        Set<String> categories = null;
+
+        int position = fragment + INTENT_FRAGMENT.length();
+        while (!intentUri.startsWith("end", position) || position + 3 != intentUri.length()) {
+            int end = intentUri.indexOf(';', position);
+            if (end == -1) {
+                throw new IntentCodecException("Intent URI fragment not terminated");
+            }
+
+            if (intentUri.startsWith("action=", position)) {
+                action = decodeValue(intentUri.substring(position + 7, end));
+            } else if (intentUri.startsWith("category=", position)) {
+                if (categories == null) {
+                    categories = new HashSet<String>();
+                }
+                categories.add(decodeValue(intentUri.substring(position + 9, end)));
+            }
+
+            position = end + 1;
+        }
+
+        return new IntentHeader(action, categories, scheme);
+    }
+
+    /**
+     * Returns the scheme of the given URI, the same way {@link android.net.Uri#getScheme()}
+     * determines it, or null if there is none.
+     */
+    /* package-private */ static String getScheme(String uri) {
+        if (uri == null) {
+            return null;
+        }
+
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+
+            if (c == ':') {
+                return i > 0 ? uri.substring(0, i) : null;
+            } else if (c == '/' || c == '?' || c == '#') {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Decode the percent-encoded UTF-8 sequences written by {@link android.net.Uri#encode(String)}.
+     */
+    private static String decodeValue(String value) throws IntentCodecException {
+        if (value.indexOf('%') == -1) {
+            return value;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length());
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c != '%') {
+                byte[] encoded = String.valueOf(c).getBytes(ByteWriter.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+                continue;
+            }
+
+            if (i + 2 >= value.length()) {
+                throw new IntentCodecException("Invalid escape sequence in Intent URI");
+            }
+
+            int high = Character.digit(value.charAt(i + 1), 16);
+            int low = Character.digit(value.charAt(i + 2), 16);
+            if (high == -1 || low == -1) {
+                throw new IntentCodecException("Invalid escape sequence in Intent URI");
+            }
+
+            bytes.write((high << 4) | low);
+            i += 2;
+        }
+
+        return new String(bytes.toByteArray(), ByteWriter.UTF_8);
+    }
+}
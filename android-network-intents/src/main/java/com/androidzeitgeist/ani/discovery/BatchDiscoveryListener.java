@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import java.util.List;
+
+import android.content.Intent;
+
+/**
+ * Listener receiving {@link Intent}s discovered by a {@link Discovery} in batches
+ * instead of one by one. See
+ * {@link Discovery#addBatchDiscoveryListener(BatchDiscoveryListener, DiscoveryFilter, java.util.concurrent.Executor, int, long)}.
+ *
+ * All methods are called on the {@link java.util.concurrent.Executor} or
+ * {@link android.os.Looper} the listener has been registered with, in the order
+ * the events happened.
+ */
+public interface BatchDiscoveryListener {
+    /**
+     * The {@link Discovery} has been started and is now waiting for incoming
+     * {@link Intent}s.
+     */
+    public void onDiscoveryStarted();
+
+    /**
+     * The {@link Discovery} has been stopped. All {@link Intent}s received before
+     * have been delivered.
+     */
+    public void onDiscoveryStopped();
+
+    /**
+     * An unrecoverable error occured. The {@link Discovery} is going to be stopped.
+     *
+     * @param exception Actual exception that occured in the background thread
+     */
+    public void onDiscoveryError(Exception exception);
+
+    /**
+     * Called with the {@link Intent}s the {@link Discovery} has received since the
+     * last call, in the order they have been received.
+     *
+     * @param intents The received {@link Intent}s. The list is never empty and
+     *                belongs to the listener.
+     */
+    public void onIntentsDiscovered(List<DiscoveredIntent> intents);
+}
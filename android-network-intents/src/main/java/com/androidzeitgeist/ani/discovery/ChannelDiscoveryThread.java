@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import android.annotation.TargetApi;
+import android.util.Log;
+
+import com.androidzeitgeist.ani.SocketOptions;
+import com.androidzeitgeist.ani.internal.Sockets;
+
+/**
+ * Internal discovery thread that receives packets using non-blocking
+ * {@link DatagramChannel}s and a {@link Selector} instead of a blocking
+ * {@link java.net.MulticastSocket}.
+ *
+ * Every {@link Subscription} gets its own channel that is bound to the multicast
+ * group and port, so that packets can be attributed to the {@link Subscription}
+ * they have been sent to. The group is joined using a
+ * {@link java.nio.channels.MembershipKey}. As these channels only receive packets
+ * sent to the group, additional channels bound to the addresses of the network
+ * interface receive packets sent directly to this device on the port passed to
+ * the constructor, see
+ * {@link com.androidzeitgeist.ani.transmitter.Transmitter#transmit(Collection, Collection)}.
+ *
+ * All channels are served by this single thread and packets are received into a
+ * single direct {@link ByteBuffer} that is reused for the lifetime of this thread.
+ *
+ * Subscriptions can be added and removed while the thread is running. Stopping
+ * the thread wakes up the {@link Selector} instead of closing the socket
+ * underneath a blocked receive call.
+ */
+@TargetApi(24)
+class ChannelDiscoveryThread extends DiscoveryThread {
+    private static final String TAG = "ANI/ChannelDiscovery";
+
+    private final Set<Subscription> initialSubscriptions = new LinkedHashSet<Subscription>();
+    private final Queue<SubscriptionChange> pendingChanges = new ConcurrentLinkedQueue<SubscriptionChange>();
+    private final Map<Subscription, SelectionKey> keys = new HashMap<Subscription, SelectionKey>();
+    private final List<SelectionKey> unicastKeys = new ArrayList<SelectionKey>();
+
+    private volatile Selector selector;
+    private volatile boolean running;
+
+    /**
+     * Create a new channel based thread that handles incoming Intents on the given
+     * multicast address and port.
+     */
+    /* package-private */ ChannelDiscoveryThread(String multicastAddress, int port, int maximumPacketSize, DiscoveryListener listener) {
+        super(multicastAddress, port, maximumPacketSize, listener);
+    }
+
+    /**
+     * Create a new channel based thread that handles incoming Intents on the given,
+     * already resolved multicast address and port.
+     */
+    /* package-private */ ChannelDiscoveryThread(InetAddress group, int port, int maximumPacketSize, DiscoveryListener listener) {
+        super(group, port, maximumPacketSize, listener);
+    }
+
+    /**
+     * Listen to the given subscriptions in addition to the multicast address and
+     * port passed to the constructor. Must be called before the thread is started.
+     */
+    /* package-private */ void setAdditionalSubscriptions(Collection<Subscription> subscriptions) {
+        initialSubscriptions.addAll(subscriptions);
+    }
+
+    /**
+     * Start listening to the given {@link Subscription} while this thread is running.
+     */
+    /* package-private */ void addSubscription(Subscription subscription) {
+        pendingChanges.add(new SubscriptionChange(subscription, true));
+        wakeup();
+    }
+
+    /**
+     * Stop listening to the given {@link Subscription} while this thread is running.
+     */
+    /* package-private */ void removeSubscription(Subscription subscription) {
+        pendingChanges.add(new SubscriptionChange(subscription, false));
+        wakeup();
+    }
+
+    @Override
+    public void run() {
+        running = true;
+
+        DiscoveryListener listener = getListener();
+        listener.onDiscoveryStarted();
+
+        PacketHandler handler = createPacketHandler();
+
+        try {
+            selector = Selector.open();
+
+            Subscription primary = new Subscription(getGroup(), getPort());
+            register(primary);
+            registerUnicast(primary);
+
+            for (Subscription subscription : initialSubscriptions) {
+                register(subscription);
+            }
+
+            receiveIntents(handler);
+        } catch (IOException exception) {
+            if (running) {
+                listener.onDiscoveryError(exception);
+            }
+        } finally {
+            closeChannels();
+
+            handler.shutdown();
+        }
+
+        listener.onDiscoveryStopped();
+    }
+
+    /**
+     * Open a non-blocking {@link DatagramChannel} bound to the group and port of
+     * the {@link Subscription} and join the multicast group on the network
+     * interface of the {@link SocketOptions} or the default multicast interface.
+     */
+    protected DatagramChannel createChannel(Subscription subscription) throws IOException {
+        InetAddress group = subscription.getGroup();
+
+        DatagramChannel channel = DatagramChannel.open(
+            group.getAddress().length == 4 ? StandardProtocolFamily.INET : StandardProtocolFamily.INET6
+        );
+
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(group, subscription.getPort()));
+            channel.configureBlocking(false);
+
+            SocketOptions options = getSocketOptions();
+            Sockets.apply(options, channel);
+
+            if (options != null && options.getNetworkInterface() != null) {
+                channel.join(group, options.getNetworkInterface());
+            } else {
+                channel.join(group, getMulticastInterface());
+            }
+        } catch (IOException exception) {
+            channel.close();
+            throw exception;
+        }
+
+        return channel;
+    }
+
+    /**
+     * Open a non-blocking {@link DatagramChannel} bound to the given local address
+     * and the port of the {@link Subscription}, receiving packets sent directly to
+     * this device.
+     */
+    protected DatagramChannel createUnicastChannel(Subscription subscription, InetAddress address) throws IOException {
+        DatagramChannel channel = DatagramChannel.open(
+            address.getAddress().length == 4 ? StandardProtocolFamily.INET : StandardProtocolFamily.INET6
+        );
+
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(address, subscription.getPort()));
+            channel.configureBlocking(false);
+
+            Sockets.apply(getSocketOptions(), channel);
+        } catch (IOException exception) {
+            channel.close();
+            throw exception;
+        }
+
+        return channel;
+    }
+
+    @Override
+    public void stopDiscovery() {
+        running = false;
+
+        wakeup();
+    }
+
+    private void wakeup() {
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private void register(Subscription subscription) throws IOException {
+        if (keys.containsKey(subscription)) {
+            return;
+        }
+
+        DatagramChannel channel = createChannel(subscription);
+        keys.put(subscription, channel.register(selector, SelectionKey.OP_READ, subscription));
+    }
+
+    /**
+     * Listen for packets sent directly to any address of the network interface
+     * that has the same protocol family as the group of the {@link Subscription}.
+     * Packets received this way are attributed to the {@link Subscription}.
+     * Addresses that cannot be bound are skipped, so unicast reception never
+     * prevents receiving from the group.
+     */
+    private void registerUnicast(Subscription subscription) throws IOException {
+        SocketOptions options = getSocketOptions();
+        NetworkInterface networkInterface = options != null && options.getNetworkInterface() != null
+            ? options.getNetworkInterface()
+            : getMulticastInterface();
+
+        int addressLength = subscription.getGroup().getAddress().length;
+
+        Enumeration<InetAddress> addresses = networkInterface.getInetAddresses();
+        while (addresses.hasMoreElements()) {
+            InetAddress address = addresses.nextElement();
+            if (address.getAddress().length != addressLength) {
+                continue;
+            }
+
+            try {
+                DatagramChannel channel = createUnicastChannel(subscription, address);
+                unicastKeys.add(channel.register(selector, SelectionKey.OP_READ, subscription));
+            } catch (IOException exception) {
+                Log.w(TAG, "Could not listen for unicast packets on " + address, exception);
+            }
+        }
+    }
+
+    private void unregister(Subscription subscription) throws IOException {
+        SelectionKey key = keys.remove(subscription);
+
+        if (key != null) {
+            // Closing the channel drops its membership in the multicast group.
+            key.channel().close();
+        }
+    }
+
+    /**
+     * Apply subscription changes requested by other threads.
+     */
+    private void applyPendingChanges() {
+        SubscriptionChange change;
+
+        while ((change = pendingChanges.poll()) != null) {
+            try {
+                if (change.add) {
+                    register(change.subscription);
+                } else {
+                    unregister(change.subscription);
+                }
+            } catch (IOException exception) {
+                Log.w(TAG, "Could not change subscription " + change.subscription, exception);
+            }
+        }
+    }
+
+    private void receiveIntents(PacketHandler handler) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(getMaximumPacketSize());
+
+        // The codecs work on byte arrays, so every packet is copied once from the
+        // direct buffer into this array. Both are allocated once and reused.
+        byte[] data = new byte[buffer.capacity()];
+
+        while (running) {
+            applyPendingChanges();
+
+            selector.select();
+
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+
+                if (!key.isValid() || !key.isReadable()) {
+                    continue;
+                }
+
+                DatagramChannel channel = (DatagramChannel) key.channel();
+                Subscription subscription = (Subscription) key.attachment();
+
+                InetSocketAddress sender;
+                while (running && (sender = (InetSocketAddress) channel.receive(buffer)) != null) {
+                    buffer.flip();
+
+                    int length = buffer.remaining();
+                    buffer.get(data, 0, length);
+                    buffer.clear();
+
+                    handler.handle(subscription, sender.getAddress(), data, 0, length);
+                }
+            }
+        }
+    }
+
+    private void closeChannels() {
+        for (SelectionKey key : keys.values()) {
+            try {
+                key.channel().close();
+            } catch (IOException exception) {
+                // Nothing left to do.
+            }
+        }
+
+        keys.clear();
+
+        for (SelectionKey key : unicastKeys) {
+            try {
+                key.channel().close();
+            } catch (IOException exception) {
+                // Nothing left to do.
+            }
+        }
+
+        unicastKeys.clear();
+
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+        } catch (IOException exception) {
+            // Nothing left to do.
+        }
+    }
+
+    /**
+     * Returns the first network interface that is up and supports multicast,
+     * preferring non-loopback interfaces.
+     */
+    /* package-private */ static NetworkInterface getMulticastInterface() throws SocketException {
+        NetworkInterface loopback = null;
+
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        while (interfaces != null && interfaces.hasMoreElements()) {
+            NetworkInterface networkInterface = interfaces.nextElement();
+
+            if (!networkInterface.isUp() || !networkInterface.supportsMulticast()) {
+                continue;
+            }
+
+            if (networkInterface.isLoopback()) {
+                loopback = networkInterface;
+            } else {
+                return networkInterface;
+            }
+        }
+
+        if (loopback == null) {
+            throw new SocketException("No network interface supporting multicast");
+        }
+
+        return loopback;
+    }
+
+    private static class SubscriptionChange {
+        private final Subscription subscription;
+        private final boolean add;
+
+        public SubscriptionChange(Subscription subscription, boolean add) {
+            this.subscription = subscription;
+            this.add = add;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import java.net.InetAddress;
+
+import android.content.Intent;
+
+/**
+ * An {@link Intent} received by a {@link Discovery} together with its sender,
+ * as delivered to a {@link BatchDiscoveryListener}.
+ */
+public final class DiscoveredIntent {
+    private final Subscription subscription;
+    private final InetAddress address;
+    private final Intent intent;
+
+    /**
+     * Create a new {@link DiscoveredIntent}.
+     *
+     * @param subscription The {@link Subscription} the {@link Intent} has been
+     *                     received on or null if it is not known.
+     * @param address The IP address of the sender of the {@link Intent}.
+     * @param intent The received {@link Intent}.
+     */
+    public DiscoveredIntent(Subscription subscription, InetAddress address, Intent intent) {
+        this.subscription = subscription;
+        this.address = address;
+        this.intent = intent;
+    }
+
+    /**
+     * Returns the {@link Subscription} the {@link Intent} has been received on,
+     * including the primary subscription for the multicast address and port passed
+     * to the constructor of the {@link Discovery}. Returns null only if the
+     * {@link Intent} was passed on without its subscription.
+     */
+    public Subscription getSubscription() {
+        return subscription;
+    }
+
+    /**
+     * Returns the IP address of the sender of the {@link Intent}.
+     */
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the received {@link Intent}.
+     */
+    public Intent getIntent() {
+        return intent;
+    }
+}
@@ -16,18 +16,59 @@
 
 package com.androidzeitgeist.ani.discovery;
 
+import java.net.InetAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+
 import android.content.Intent;
+import android.os.Build;
+import android.os.Looper;
 
+import com.androidzeitgeist.ani.OverflowPolicy;
+import com.androidzeitgeist.ani.SocketOptions;
+import com.androidzeitgeist.ani.codec.BinaryIntentCodec;
+import com.androidzeitgeist.ani.codec.IntentCodec;
 import com.androidzeitgeist.ani.internal.AndroidNetworkIntents;
+import com.androidzeitgeist.ani.internal.BoundedExecutor;
+import com.androidzeitgeist.ani.internal.HandlerExecutor;
+import com.androidzeitgeist.ani.metrics.CounterMetrics;
+import com.androidzeitgeist.ani.metrics.MetricsRecorder;
 
 /**
  * Discovery class for receiving {@link Intent}s from the network.
+ *
+ * Besides {@link Intent}s sent to the multicast group, {@link Intent}s sent directly
+ * to this device on the same port (see
+ * {@link com.androidzeitgeist.ani.transmitter.Transmitter#transmit(java.util.Collection, java.util.Collection)})
+ * are received and passed to the same listeners.
+ *
+ * User interfaces receiving many {@link Intent}s should register a
+ * {@link BatchDiscoveryListener} with
+ * {@link #addBatchDiscoveryListener(BatchDiscoveryListener, DiscoveryFilter, Looper)}
+ * to get one message per frame on the main thread instead of one per packet.
  */
 public class Discovery {
     private String multicastAddress;
+    private InetAddress group;
     private int port;
+    private int maximumPacketSize = AndroidNetworkIntents.DEFAULT_MAXIMUM_PACKET_SIZE;
+    private IntentCodec codec = new BinaryIntentCodec();
+    private DiscoveryEngine engine = DiscoveryEngine.MULTICAST_SOCKET;
+    private SocketOptions socketOptions;
+    private MetricsRecorder metrics = new CounterMetrics();
+    private DiscoveryFilter filter;
+    private final Set<Subscription> subscriptions = new CopyOnWriteArraySet<Subscription>();
 
-    private DiscoveryListener listener;
+    private Executor dispatchExecutor;
+    private int dispatchQueueCapacity;
+    private int dispatchThreads;
+    private OverflowPolicy dispatchOverflowPolicy;
+
+    private final ListenerRegistry registry = new ListenerRegistry();
+    private final ConcurrentMap<BatchDiscoveryListener, IntentBatcher> batchers = new ConcurrentHashMap<BatchDiscoveryListener, IntentBatcher>();
     private DiscoveryThread thread;
 
     /**
@@ -66,6 +107,19 @@ public class Discovery {
         this.port = port;
     }
 
+    /**
+     * Create a new {@link Discovery} instance that will listen to the given,
+     * already resolved multicast address and port for incoming {@link Intent}s.
+     *
+     * @param multicastAddress The multicast address to listen to.
+     * @param port The port to listen to.
+     */
+    public Discovery(InetAddress multicastAddress, int port) {
+        this.multicastAddress = multicastAddress.getHostAddress();
+        this.group = multicastAddress;
+        this.port = port;
+    }
+
     /**
      * Set the {@link DiscoveryListener} instance that will be notified about
      * incoming {@link Intent}s.
@@ -74,7 +128,316 @@ public class Discovery {
      *                 incoming {@link Intent}s.
      */
     public void setDisoveryListener(DiscoveryListener listener) {
-        this.listener = listener;
+        registry.setPrimaryListener(listener);
+    }
+
+    /**
+     * Register an additional {@link DiscoveryListener} that will be notified about
+     * all incoming {@link Intent}s. See
+     * {@link #addDiscoveryListener(DiscoveryListener, DiscoveryFilter, Executor)}.
+     *
+     * @param listener The {@link DiscoveryListener} to register.
+     */
+    public void addDiscoveryListener(DiscoveryListener listener) {
+        addDiscoveryListener(listener, null, null);
+    }
+
+    /**
+     * Register an additional {@link DiscoveryListener} that will be notified about
+     * incoming {@link Intent}s matching the given filter. Multiple components can
+     * share a single {@link Discovery}: every packet is received and decoded once
+     * and then handed to all interested listeners. Packets no listener is
+     * interested in are dropped before they are deserialized if possible.
+     *
+     * Listeners can be added and removed at any time, also while the
+     * {@link Discovery} is running. All listeners are notified about lifecycle
+     * events on the discovery thread. Listeners share the same {@link Intent}
+     * instance and must not modify it.
+     *
+     * @param listener The {@link DiscoveryListener} to register.
+     * @param filter The {@link DiscoveryFilter} {@link Intent}s have to match or
+     *               null to receive all {@link Intent}s.
+     * @param executor The {@link Executor} to notify the listener on or null to
+     *                 notify it on the thread decoding the packet.
+     */
+    public void addDiscoveryListener(DiscoveryListener listener, DiscoveryFilter filter, Executor executor) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener must not be null");
+        }
+
+        registry.add(listener, filter, executor);
+    }
+
+    /**
+     * Unregister a {@link DiscoveryListener} registered with
+     * {@link #addDiscoveryListener(DiscoveryListener, DiscoveryFilter, Executor)}.
+     *
+     * @param listener The {@link DiscoveryListener} to unregister.
+     */
+    public void removeDiscoveryListener(DiscoveryListener listener) {
+        registry.remove(listener);
+    }
+
+    /**
+     * Register a {@link BatchDiscoveryListener} that will be notified about incoming
+     * {@link Intent}s matching the given filter on the thread of the given
+     * {@link Looper}, e.g. {@link Looper#getMainLooper()}. {@link Intent}s received
+     * within {@link AndroidNetworkIntents#DEFAULT_BATCH_WINDOW} milliseconds are
+     * delivered together, up to {@link AndroidNetworkIntents#DEFAULT_BATCH_SIZE}
+     * at a time.
+     *
+     * @param listener The {@link BatchDiscoveryListener} to register.
+     * @param filter The {@link DiscoveryFilter} {@link Intent}s have to match or
+     *               null to receive all {@link Intent}s.
+     * @param looper The {@link Looper} to notify the listener on.
+     */
+    public void addBatchDiscoveryListener(BatchDiscoveryListener listener, DiscoveryFilter filter, Looper looper) {
+        addBatchDiscoveryListener(listener, filter, new HandlerExecutor(looper),
+                AndroidNetworkIntents.DEFAULT_BATCH_SIZE, AndroidNetworkIntents.DEFAULT_BATCH_WINDOW);
+    }
+
+    /**
+     * Register a {@link BatchDiscoveryListener} that will be notified about incoming
+     * {@link Intent}s matching the given filter in batches. {@link Intent}s are
+     * collected on the thread decoding the packets. A batch is handed to the
+     * executor when it reaches the maximum batch size or when the time window has
+     * passed since its first {@link Intent} has been received, whichever comes first.
+     *
+     * Lifecycle events are delivered on the same executor, after all {@link Intent}s
+     * received before them. Listeners can be added and removed at any time.
+     *
+     * @param listener The {@link BatchDiscoveryListener} to register.
+     * @param filter The {@link DiscoveryFilter} {@link Intent}s have to match or
+     *               null to receive all {@link Intent}s.
+     * @param executor The {@link Executor} to notify the listener on.
+     * @param maxBatchSize The maximum number of {@link Intent}s delivered at once.
+     * @param windowMillis The maximum time in milliseconds an {@link Intent} is held
+     *                     before it is delivered.
+     * @throws IllegalArgumentException if the listener is already registered or the
+     *                                  batch size or time window is not positive.
+     */
+    public void addBatchDiscoveryListener(BatchDiscoveryListener listener, DiscoveryFilter filter, Executor executor, int maxBatchSize, long windowMillis) {
+        IntentBatcher batcher = new IntentBatcher(listener, executor, maxBatchSize, windowMillis);
+
+        if (batchers.putIfAbsent(listener, batcher) != null) {
+            throw new IllegalArgumentException("Listener already registered");
+        }
+
+        registry.add(batcher, filter, null);
+    }
+
+    /**
+     * Unregister a {@link BatchDiscoveryListener} registered with
+     * {@link #addBatchDiscoveryListener(BatchDiscoveryListener, DiscoveryFilter, Executor, int, long)}.
+     * {@link Intent}s that have not been delivered yet are dropped.
+     *
+     * @param listener The {@link BatchDiscoveryListener} to unregister.
+     */
+    public void removeBatchDiscoveryListener(BatchDiscoveryListener listener) {
+        IntentBatcher batcher = batchers.remove(listener);
+
+        if (batcher != null) {
+            registry.remove(batcher);
+            batcher.close();
+        }
+    }
+
+    /**
+     * Set the maximum size of a packet that this {@link Discovery} will receive.
+     * Larger packets will be truncated and most likely fail to be parsed.
+     *
+     * The receive buffer is allocated once when the {@link Discovery} is enabled,
+     * so changing this value will only take effect the next time
+     * {@link #enable()} is called.
+     *
+     * @param maximumPacketSize The maximum packet size in bytes.
+     * @throws IllegalArgumentException if the size is not positive.
+     */
+    public void setMaximumPacketSize(int maximumPacketSize) {
+        if (maximumPacketSize <= 0) {
+            throw new IllegalArgumentException("Maximum packet size must be positive");
+        }
+
+        this.maximumPacketSize = maximumPacketSize;
+    }
+
+    /**
+     * Set the {@link IntentCodec} used to deserialize incoming {@link Intent}s.
+     * The default {@link BinaryIntentCodec} accepts both the binary and the
+     * legacy URI format.
+     *
+     * Changing the codec will only take effect the next time {@link #enable()}
+     * is called.
+     *
+     * @param codec The {@link IntentCodec} to use.
+     */
+    public void setIntentCodec(IntentCodec codec) {
+        if (codec == null) {
+            throw new IllegalArgumentException("Codec must not be null");
+        }
+
+        this.codec = codec;
+    }
+
+    /**
+     * Set the {@link DiscoveryEngine} used to receive packets from the network.
+     * {@link DiscoveryEngine#DATAGRAM_CHANNEL} falls back to
+     * {@link DiscoveryEngine#MULTICAST_SOCKET} on devices running versions of
+     * Android older than 7.0.
+     *
+     * Changing the engine will only take effect the next time {@link #enable()}
+     * is called.
+     *
+     * @param engine The {@link DiscoveryEngine} to use.
+     */
+    public void setEngine(DiscoveryEngine engine) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Engine must not be null");
+        }
+
+        this.engine = engine;
+    }
+
+    /**
+     * Set the {@link SocketOptions} applied to the sockets receiving packets, e.g.
+     * to increase the receive buffer or to join the multicast group on a specific
+     * network interface.
+     *
+     * The options will only take effect the next time {@link #enable()} is called.
+     *
+     * @param socketOptions The {@link SocketOptions} to apply or null for the
+     *                      system defaults.
+     */
+    public void setSocketOptions(SocketOptions socketOptions) {
+        this.socketOptions = socketOptions;
+    }
+
+    /**
+     * Set a {@link DiscoveryFilter} to drop unwanted packets before they are
+     * deserialized. The listener will only be notified about {@link Intent}s
+     * matching the filter.
+     *
+     * Setting a different filter will only take effect the next time
+     * {@link #enable()} is called. The filter itself can be modified at any time.
+     *
+     * @param filter The {@link DiscoveryFilter} or null to receive all {@link Intent}s.
+     */
+    public void setFilter(DiscoveryFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Set the {@link MetricsRecorder} that receives metrics about received packets,
+     * parse failures, decoding and listener latency and the dispatch queue.
+     *
+     * The default recorder is a {@link CounterMetrics} instance. Changing the
+     * recorder will only take effect the next time {@link #enable()} is called.
+     *
+     * @param metrics The {@link MetricsRecorder} to use.
+     */
+    public void setMetricsRecorder(MetricsRecorder metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("Metrics recorder must not be null");
+        }
+
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the {@link MetricsRecorder} of this {@link Discovery}. Unless replaced
+     * by {@link #setMetricsRecorder(MetricsRecorder)} this is a {@link CounterMetrics}
+     * instance that can be used to take a snapshot of the recorded metrics.
+     */
+    public MetricsRecorder getMetricsRecorder() {
+        return metrics;
+    }
+
+    /**
+     * Listen to the given {@link Subscription} in addition to the multicast address
+     * and port passed to the constructor. All subscriptions are served by the same
+     * thread. Use a {@link SubscriptionDiscoveryListener} to find out on which
+     * {@link Subscription} an {@link Intent} has been received.
+     *
+     * Subscriptions can be added while the {@link Discovery} is enabled. Additional
+     * subscriptions require the {@link DiscoveryEngine#DATAGRAM_CHANNEL} engine and
+     * Android 7.0.
+     *
+     * @param subscription The {@link Subscription} to add.
+     * @throws IllegalStateException if the {@link Discovery} is enabled and does not
+     *                               use the {@link DiscoveryEngine#DATAGRAM_CHANNEL} engine.
+     */
+    public void addSubscription(Subscription subscription) {
+        if (thread != null && !(thread instanceof ChannelDiscoveryThread)) {
+            throw new IllegalStateException("Subscriptions can only be changed at runtime with the DATAGRAM_CHANNEL engine");
+        }
+
+        if (subscriptions.add(subscription) && thread != null) {
+            ((ChannelDiscoveryThread) thread).addSubscription(subscription);
+        }
+    }
+
+    /**
+     * Stop listening to a {@link Subscription} previously added with
+     * {@link #addSubscription(Subscription)}.
+     *
+     * @param subscription The {@link Subscription} to remove.
+     */
+    public void removeSubscription(Subscription subscription) {
+        if (subscriptions.remove(subscription) && thread instanceof ChannelDiscoveryThread) {
+            ((ChannelDiscoveryThread) thread).removeSubscription(subscription);
+        }
+    }
+
+    /**
+     * Decode incoming {@link Intent}s and notify the listener on the given {@link Executor}
+     * instead of the thread receiving from the network. This keeps a slow listener
+     * from blocking the socket and causing packets to be dropped by the system.
+     * Frames are still parsed on the receiving thread, so that sequence numbers
+     * and fragments are seen in the order they have been received.
+     *
+     * The listener may be called from multiple threads at the same time if the
+     * executor uses more than one thread. {@link Intent}s rejected by the executor
+     * are dropped. The executor is not shut down when the {@link Discovery} is disabled.
+     *
+     * Changing the executor will only take effect the next time {@link #enable()}
+     * is called.
+     *
+     * @param executor The {@link Executor} to dispatch packets to or null to
+     *                 dispatch on the receiving thread.
+     */
+    public void setDispatchExecutor(Executor executor) {
+        this.dispatchExecutor = executor;
+        this.dispatchThreads = 0;
+    }
+
+    /**
+     * Decode incoming {@link Intent}s and notify the listener on a pool of worker threads
+     * fed by a bounded queue. This keeps a slow listener from blocking the socket
+     * and causing packets to be dropped by the system. With a single thread the
+     * listener is notified in the order the packets have been received.
+     *
+     * The worker threads are started when the {@link Discovery} is enabled and
+     * stopped when it is disabled. Changing the queue will only take effect the
+     * next time {@link #enable()} is called.
+     *
+     * @param capacity The maximum number of {@link Intent}s waiting to be dispatched.
+     * @param threads The number of worker threads.
+     * @param overflowPolicy What to do with received {@link Intent}s if the queue is full.
+     * @throws IllegalArgumentException if capacity or threads are not positive.
+     */
+    public void setDispatchQueue(int capacity, int threads, OverflowPolicy overflowPolicy) {
+        if (capacity <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Capacity and number of threads must be positive");
+        }
+
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy must not be null");
+        }
+
+        this.dispatchExecutor = null;
+        this.dispatchQueueCapacity = capacity;
+        this.dispatchThreads = threads;
+        this.dispatchOverflowPolicy = overflowPolicy;
     }
 
     /**
@@ -101,14 +464,19 @@ public class Discovery {
      * {@link Intent}s and notify the set {@link DiscoveryListener} instance.
      *
      * @throws DiscoveryException if discovery could not be enabled.
-     * @throws IllegalStateException if no listener has been set
+     * @throws IllegalStateException if no listener has been set or added or if additional
+     *                               subscriptions are not supported by the engine
      * @throws IllegalAccessError if this {@link Discovery} is already enabled
      */
     public void enable() throws DiscoveryException {
-        if (listener == null) {
+        if (registry.isEmpty()) {
             throw new IllegalStateException("No listener set");
         }
 
+        if (!subscriptions.isEmpty() && !isChannelEngineAvailable()) {
+            throw new IllegalStateException("Additional subscriptions require the DATAGRAM_CHANNEL engine and API 24");
+        }
+
         if (thread == null) {
             thread = createDiscoveryThread();
             thread.start();
@@ -118,7 +486,43 @@ public class Discovery {
     }
 
     protected DiscoveryThread createDiscoveryThread() {
-        return new DiscoveryThread(multicastAddress, port, listener);
+        DiscoveryThread thread;
+
+        if (isChannelEngineAvailable()) {
+            ChannelDiscoveryThread channelThread;
+
+            if (group != null) {
+                channelThread = new ChannelDiscoveryThread(group, port, maximumPacketSize, registry);
+            } else {
+                channelThread = new ChannelDiscoveryThread(multicastAddress, port, maximumPacketSize, registry);
+            }
+
+            channelThread.setAdditionalSubscriptions(subscriptions);
+            thread = channelThread;
+        } else if (group != null) {
+            thread = new DiscoveryThread(group, port, maximumPacketSize, registry);
+        } else {
+            thread = new DiscoveryThread(multicastAddress, port, maximumPacketSize, registry);
+        }
+
+        thread.setIntentCodec(codec);
+        thread.setSocketOptions(socketOptions);
+        thread.setMetricsRecorder(metrics);
+        thread.setFilter(filter);
+
+        if (dispatchThreads > 0) {
+            thread.setDispatchExecutor(new BoundedExecutor(
+                "ANI/Dispatch", dispatchQueueCapacity, dispatchThreads, dispatchOverflowPolicy
+            ));
+        } else if (dispatchExecutor != null) {
+            thread.setDispatchExecutor(dispatchExecutor);
+        }
+
+        return thread;
+    }
+
+    private boolean isChannelEngineAvailable() {
+        return engine == DiscoveryEngine.DATAGRAM_CHANNEL && Build.VERSION.SDK_INT >= 24;
     }
 
     /**
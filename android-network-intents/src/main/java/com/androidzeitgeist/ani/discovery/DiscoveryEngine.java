@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+/**
+ * The implementation a {@link Discovery} uses to receive packets from the network.
+ */
+public enum DiscoveryEngine {
+    /**
+     * Receive packets with a blocking {@link java.net.MulticastSocket} on a
+     * dedicated thread. Available on all Android versions.
+     */
+    MULTICAST_SOCKET,
+
+    /**
+     * Receive packets with a non-blocking {@link java.nio.channels.DatagramChannel}
+     * driven by a {@link java.nio.channels.Selector}. Requires Android 7.0 (API 24);
+     * on older versions {@link #MULTICAST_SOCKET} is used instead.
+     */
+    DATAGRAM_CHANNEL
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.codec.IntentHeader;
+
+/**
+ * Filter for received {@link Intent}s, similar to an {@link android.content.IntentFilter}.
+ *
+ * A {@link Discovery} checks the sender of a packet before looking at its content
+ * and, if the {@link com.androidzeitgeist.ani.codec.IntentCodec} implements
+ * {@link com.androidzeitgeist.ani.codec.IntentHeaderDecoder}, the action, categories
+ * and data scheme before deserializing the {@link Intent}. Packets not matching
+ * the filter are dropped without creating an {@link Intent} object.
+ *
+ * An {@link Intent} matches if all of the following are true:
+ * <ul>
+ *   <li>No actions have been added or its action is one of them.</li>
+ *   <li>No categories have been added or all of its categories are one of them.</li>
+ *   <li>No data schemes have been added or its data scheme is one of them.</li>
+ *   <li>No senders have been added or it has been sent from one of them.</li>
+ * </ul>
+ *
+ * A filter can be modified while the {@link Discovery} is running.
+ */
+public class DiscoveryFilter {
+    private final List<String> actions = new CopyOnWriteArrayList<String>();
+    private final List<String> categories = new CopyOnWriteArrayList<String>();
+    private final List<String> schemes = new CopyOnWriteArrayList<String>();
+    private final List<Subnet> senders = new CopyOnWriteArrayList<Subnet>();
+
+    /**
+     * Accept {@link Intent}s with the given action.
+     */
+    public void addAction(String action) {
+        if (action == null) {
+            throw new IllegalArgumentException("Action must not be null");
+        }
+
+        actions.add(action);
+    }
+
+    /**
+     * Accept {@link Intent}s with the given category.
+     */
+    public void addCategory(String category) {
+        if (category == null) {
+            throw new IllegalArgumentException("Category must not be null");
+        }
+
+        categories.add(category);
+    }
+
+    /**
+     * Accept {@link Intent}s whose data URI has the given scheme.
+     */
+    public void addDataScheme(String scheme) {
+        if (scheme == null) {
+            throw new IllegalArgumentException("Scheme must not be null");
+        }
+
+        schemes.add(scheme);
+    }
+
+    /**
+     * Accept {@link Intent}s sent from the given address.
+     */
+    public void addSender(InetAddress address) {
+        if (address == null) {
+            throw new IllegalArgumentException("Address must not be null");
+        }
+
+        addSenderSubnet(address, address.getAddress().length * 8);
+    }
+
+    /**
+     * Accept {@link Intent}s sent from the given subnet, e.g. 192.168.1.0/24.
+     *
+     * @param network An address of the subnet.
+     * @param prefixLength The number of leading bits of the address that identify
+     *                     the subnet.
+     * @throws IllegalArgumentException if the prefix length is not valid for the
+     *                                  given address.
+     */
+    public void addSenderSubnet(InetAddress network, int prefixLength) {
+        if (network == null) {
+            throw new IllegalArgumentException("Network must not be null");
+        }
+
+        if (prefixLength < 0 || prefixLength > network.getAddress().length * 8) {
+            throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
+        }
+
+        senders.add(new Subnet(network.getAddress(), prefixLength));
+    }
+
+    /**
+     * Returns true if packets from the given address are accepted.
+     */
+    public boolean matchesSender(InetAddress address) {
+        if (senders.isEmpty()) {
+            return true;
+        }
+
+        byte[] bytes = address.getAddress();
+
+        for (Subnet subnet : senders) {
+            if (subnet.contains(bytes)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true if an {@link Intent} with the given header is accepted.
+     */
+    public boolean matches(IntentHeader header) {
+        return matches(header.getAction(), header.getCategories(), header.getScheme());
+    }
+
+    /**
+     * Returns true if the given {@link Intent} is accepted.
+     */
+    public boolean matches(Intent intent) {
+        return matches(intent.getAction(), intent.getCategories(), intent.getScheme());
+    }
+
+    /**
+     * Returns true if this filter has conditions on the content of an {@link Intent}
+     * and not only on its sender.
+     */
+    /* package-private */ boolean hasIntentConditions() {
+        return !actions.isEmpty() || !categories.isEmpty() || !schemes.isEmpty();
+    }
+
+    private boolean matches(String action, Set<String> intentCategories, String scheme) {
+        if (!actions.isEmpty() && !actions.contains(action)) {
+            return false;
+        }
+
+        if (!categories.isEmpty() && intentCategories != null && !categories.containsAll(intentCategories)) {
+            return false;
+        }
+
+        if (!schemes.isEmpty() && !schemes.contains(scheme)) {
+            return false;
+        }
+
+        return true;
+    }
+
+    private static class Subnet {
+        private final byte[] network;
+        private final int prefixLength;
+
+        public Subnet(byte[] network, int prefixLength) {
+            this.network = network;
+            this.prefixLength = prefixLength;
+        }
+
+        public boolean contains(byte[] address) {
+            if (address.length != network.length) {
+                return false;
+            }
+
+            int fullBytes = prefixLength / 8;
+            for (int i = 0; i < fullBytes; i++) {
+                if (address[i] != network[i]) {
+                    return false;
+                }
+            }
+
+            int remainingBits = prefixLength % 8;
+            if (remainingBits == 0) {
+                return true;
+            }
+
+            int mask = 0xFF << (8 - remainingBits);
+            return (address[fullBytes] & mask) == (network[fullBytes] & mask);
+        }
+    }
+}
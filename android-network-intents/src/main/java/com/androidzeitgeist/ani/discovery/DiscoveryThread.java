@@ -19,25 +19,40 @@ package com.androidzeitgeist.ani.discovery;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
-import java.net.URISyntaxException;
 import java.net.UnknownHostException;
+import java.util.concurrent.Executor;
 
 import android.content.Intent;
-import android.util.Log;
+
+import com.androidzeitgeist.ani.SocketOptions;
+import com.androidzeitgeist.ani.codec.BinaryIntentCodec;
+import com.androidzeitgeist.ani.codec.IntentCodec;
+import com.androidzeitgeist.ani.internal.AndroidNetworkIntents;
+import com.androidzeitgeist.ani.internal.BoundedExecutor;
+import com.androidzeitgeist.ani.internal.Sockets;
+import com.androidzeitgeist.ani.metrics.CounterMetrics;
+import com.androidzeitgeist.ani.metrics.MetricsRecorder;
 
 /**
  * Internal class for handling the network connection of the {@link Discovery} class
  * on a background thread.
  */
 class DiscoveryThread extends Thread {
-    private static final String TAG = "ANI/DiscoveryThread";
-    private static final int MAXIMUM_PACKET_BYTES = 102400;
-
     private String multicastAddress;
+    private InetAddress group;
     private int port;
+    private int maximumPacketSize;
     private MulticastSocket socket;
     private DiscoveryListener listener;
+    private IntentCodec codec = new BinaryIntentCodec();
+    private Executor dispatchExecutor;
+    private SocketOptions socketOptions;
+    private MetricsRecorder metrics = new CounterMetrics();
+    private DiscoveryFilter filter;
+    private PacketHandler handler;
+    private Subscription subscription;
 
     private volatile boolean running;
 
@@ -53,18 +68,96 @@ class DiscoveryThread extends Thread {
      * @param listener
      */
     /* package-private */ DiscoveryThread(String multicastAddress, int port, DiscoveryListener listener) {
+        this(multicastAddress, port, AndroidNetworkIntents.DEFAULT_MAXIMUM_PACKET_SIZE, listener);
+    }
+
+    /**
+     * Create a new background thread that handles incoming Intents on the given
+     * multicast address and port. Incoming packets are received into a single
+     * buffer of the given size that is reused for the lifetime of this thread.
+     *
+     * @param multicastAddress
+     * @param port
+     * @param maximumPacketSize
+     * @param listener
+     */
+    /* package-private */ DiscoveryThread(String multicastAddress, int port, int maximumPacketSize, DiscoveryListener listener) {
         this.multicastAddress = multicastAddress;
         this.port = port;
+        this.maximumPacketSize = maximumPacketSize;
         this.listener = listener;
     }
 
+    /**
+     * Create a new background thread that handles incoming Intents on the given,
+     * already resolved multicast address and port.
+     *
+     * @param group
+     * @param port
+     * @param maximumPacketSize
+     * @param listener
+     */
+    /* package-private */ DiscoveryThread(InetAddress group, int port, int maximumPacketSize, DiscoveryListener listener) {
+        this(group.getHostAddress(), port, maximumPacketSize, listener);
+
+        this.group = group;
+    }
+
+    /**
+     * Set the {@link IntentCodec} used to decode incoming packets. Must be called
+     * before the thread is started.
+     */
+    /* package-private */ void setIntentCodec(IntentCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Set an {@link Executor} that decodes packets and notifies the listener
+     * instead of this thread. A {@link BoundedExecutor} will be shut down once
+     * this thread stops (see {@link PacketHandler#shutdown()}). Must be called before the thread is started.
+     */
+    /* package-private */ void setDispatchExecutor(Executor dispatchExecutor) {
+        this.dispatchExecutor = dispatchExecutor;
+    }
+
+    /**
+     * Set the {@link SocketOptions} applied to the socket. Must be called before
+     * the thread is started.
+     */
+    /* package-private */ void setSocketOptions(SocketOptions socketOptions) {
+        this.socketOptions = socketOptions;
+    }
+
+    /**
+     * Set the {@link MetricsRecorder} to record received packets to. Must be called
+     * before the thread is started.
+     */
+    /* package-private */ void setMetricsRecorder(MetricsRecorder metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set the {@link DiscoveryFilter} for received packets. Must be called before
+     * the thread is started.
+     */
+    /* package-private */ void setFilter(DiscoveryFilter filter) {
+        this.filter = filter;
+    }
+
+    /* package-private */ SocketOptions getSocketOptions() {
+        return socketOptions;
+    }
+
     public void run() {
         running = true;
 
         listener.onDiscoveryStarted();
 
+        handler = createPacketHandler();
+
         try {
             socket = createSocket();
+            subscription = new Subscription(getGroup(), port);
             receiveIntents();
         } catch(IOException exception) {
             if (running) {
@@ -72,16 +165,58 @@ class DiscoveryThread extends Thread {
             }
         } finally {
             closeSocket();
+
+            handler.shutdown();
         }
 
         listener.onDiscoveryStopped();
     }
 
-    protected MulticastSocket createSocket() throws UnknownHostException, IOException {
-        InetAddress address = InetAddress.getByName(multicastAddress);
+    /* package-private */ PacketHandler createPacketHandler() {
+        PacketHandler handler = new PacketHandler(codec, listener, dispatchExecutor, metrics);
+        handler.setFilter(filter);
+        return handler;
+    }
+
+    /* package-private */ DiscoveryListener getListener() {
+        return listener;
+    }
+
+    /* package-private */ int getPort() {
+        return port;
+    }
 
+    /* package-private */ int getMaximumPacketSize() {
+        return maximumPacketSize;
+    }
+
+    /**
+     * Returns the multicast group to join. The address is only resolved if it
+     * has not been passed in resolved form.
+     */
+    /* package-private */ InetAddress getGroup() throws UnknownHostException {
+        if (group == null) {
+            group = InetAddress.getByName(multicastAddress);
+        }
+
+        return group;
+    }
+
+    protected MulticastSocket createSocket() throws UnknownHostException, IOException {
         MulticastSocket socket = new MulticastSocket(port);
-        socket.joinGroup(address);
+
+        try {
+            Sockets.apply(socketOptions, socket);
+
+            if (socketOptions != null && socketOptions.getNetworkInterface() != null) {
+                socket.joinGroup(new InetSocketAddress(getGroup(), port), socketOptions.getNetworkInterface());
+            } else {
+                socket.joinGroup(getGroup());
+            }
+        } catch (IOException exception) {
+            socket.close();
+            throw exception;
+        }
 
         return socket;
     }
@@ -98,25 +233,24 @@ class DiscoveryThread extends Thread {
         closeSocket();
     }
 
+    /**
+     * Receive packets until the thread is stopped. A single buffer and
+     * {@link DatagramPacket} are allocated up front and reset before every
+     * call to {@link MulticastSocket#receive(DatagramPacket)}, so that the
+     * steady state of this loop only allocates the decoded {@link Intent}.
+     */
     protected void receiveIntents() throws IOException {
-        while (running) {
-            DatagramPacket packet = new DatagramPacket(
-                new byte[MAXIMUM_PACKET_BYTES], MAXIMUM_PACKET_BYTES
-            );
-
-            try {
-                socket.receive(packet);
+        byte[] buffer = new byte[maximumPacketSize];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
 
-                byte[] data = packet.getData();
-                int length = packet.getLength();
+        while (running) {
+            // receive() shrinks the length of the packet to the size of the
+            // last datagram, so restore the full capacity of the buffer.
+            packet.setLength(buffer.length);
 
-                String intentUri = new String(data, 0, length);
-                Intent intent = Intent.parseUri(intentUri, 0);
+            socket.receive(packet);
 
-                listener.onIntentDiscovered(packet.getAddress(), intent);
-            } catch (URISyntaxException exception) {
-                Log.v(TAG, "Received UDP packet that could not be parsed as Intent");
-            }
+            handler.handle(subscription, packet.getAddress(), buffer, 0, packet.getLength());
         }
     }
 }
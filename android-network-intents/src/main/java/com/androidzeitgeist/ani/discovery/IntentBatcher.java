@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * Internal {@link DiscoveryListener} collecting discovered {@link Intent}s and
+ * delivering them to a {@link BatchDiscoveryListener} on an {@link Executor}.
+ *
+ * A batch is delivered as soon as it reaches the maximum batch size or when the
+ * time window has passed since its first {@link Intent} has been received, so
+ * the executor gets one task per window instead of one per packet. A background
+ * thread delivers batches whose window has passed. It is started by the first
+ * {@link Intent} and stopped when the {@link Discovery} stops.
+ *
+ * Tasks are passed to the executor while holding the lock, so that a serial
+ * executor runs them in the order the events happened.
+ */
+/* package-private */ class IntentBatcher implements SubscriptionDiscoveryListener {
+    private static final String TAG = "ANI/IntentBatcher";
+
+    private final BatchDiscoveryListener listener;
+    private final Executor executor;
+    private final int maxBatchSize;
+    private final long windowMillis;
+
+    private final Object lock = new Object();
+    private List<DiscoveredIntent> pendingIntents = new ArrayList<DiscoveredIntent>();
+    private long deadline;
+    private Thread flushThread;
+    private boolean closed;
+
+    /**
+     * Create a new {@link IntentBatcher}.
+     *
+     * @throws IllegalArgumentException if the batch size or the time window is not positive.
+     */
+    /* package-private */ IntentBatcher(BatchDiscoveryListener listener, Executor executor, int maxBatchSize, long windowMillis) {
+        if (listener == null || executor == null) {
+            throw new IllegalArgumentException("Listener and executor must not be null");
+        }
+
+        if (maxBatchSize <= 0 || windowMillis <= 0) {
+            throw new IllegalArgumentException("Batch size and time window must be positive");
+        }
+
+        this.listener = listener;
+        this.executor = executor;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+    }
+
+    /* package-private */ BatchDiscoveryListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Returns the number of {@link Intent}s waiting for delivery.
+     */
+    /* package-private */ int getPendingCount() {
+        synchronized (lock) {
+            return pendingIntents.size();
+        }
+    }
+
+    @Override
+    public void onDiscoveryStarted() {
+        synchronized (lock) {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onDiscoveryStarted();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onDiscoveryStopped() {
+        synchronized (lock) {
+            flush();
+            stopFlushThread();
+
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onDiscoveryStopped();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onDiscoveryError(final Exception exception) {
+        synchronized (lock) {
+            flush();
+
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onDiscoveryError(exception);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onIntentDiscovered(InetAddress address, Intent intent) {
+        onIntentDiscovered(null, address, intent);
+    }
+
+    @Override
+    public void onIntentDiscovered(Subscription subscription, InetAddress address, Intent intent) {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+
+            pendingIntents.add(new DiscoveredIntent(subscription, address, intent));
+
+            if (pendingIntents.size() >= maxBatchSize) {
+                flush();
+            } else if (pendingIntents.size() == 1) {
+                deadline = System.nanoTime() / 1000000 + windowMillis;
+                startFlushThread();
+            }
+        }
+    }
+
+    /**
+     * Drop all pending {@link Intent}s and stop the background thread. No further
+     * events are delivered to the {@link BatchDiscoveryListener}.
+     */
+    /* package-private */ void close() {
+        synchronized (lock) {
+            closed = true;
+            pendingIntents = new ArrayList<DiscoveredIntent>();
+            stopFlushThread();
+        }
+    }
+
+    /**
+     * Hand all pending {@link Intent}s to the executor. Must be called while
+     * holding the lock.
+     */
+    private void flush() {
+        if (pendingIntents.isEmpty()) {
+            return;
+        }
+
+        final List<DiscoveredIntent> intents = pendingIntents;
+        pendingIntents = new ArrayList<DiscoveredIntent>();
+
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onIntentsDiscovered(intents);
+            }
+        });
+    }
+
+    private void execute(Runnable task) {
+        if (closed) {
+            return;
+        }
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException exception) {
+            Log.v(TAG, "Executor rejected delivery to batch listener");
+        }
+    }
+
+    private void startFlushThread() {
+        if (flushThread != null) {
+            lock.notifyAll();
+            return;
+        }
+
+        flushThread = new Thread("ANI/IntentBatcher") {
+            @Override
+            public void run() {
+                flushPeriodically();
+            }
+        };
+        flushThread.setDaemon(true);
+        flushThread.start();
+    }
+
+    private void stopFlushThread() {
+        flushThread = null;
+        lock.notifyAll();
+    }
+
+    private void flushPeriodically() {
+        synchronized (lock) {
+            while (flushThread == Thread.currentThread()) {
+                try {
+                    if (pendingIntents.isEmpty()) {
+                        lock.wait();
+                        continue;
+                    }
+
+                    long remaining = deadline - System.nanoTime() / 1000000;
+                    if (remaining > 0) {
+                        lock.wait(remaining);
+                        continue;
+                    }
+                } catch (InterruptedException exception) {
+                    // Keep running until stopped
+                    continue;
+                }
+
+                flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import android.content.Intent;
+import android.util.Log;
+
+import com.androidzeitgeist.ani.codec.IntentHeader;
+
+/**
+ * Registry of the {@link DiscoveryListener}s of a {@link Discovery}. Every received
+ * {@link Intent} is decoded once and handed to all listeners whose
+ * {@link DiscoveryFilter} matches it, either directly or on the {@link Executor}
+ * registered with the listener.
+ *
+ * The registry is copy-on-write: listeners can be added and removed at any time
+ * while dispatching never takes a lock.
+ */
+/* package-private */ class ListenerRegistry implements SubscriptionDiscoveryListener {
+    private static final String TAG = "ANI/ListenerRegistry";
+
+    private volatile DiscoveryListener primaryListener;
+    private final List<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+
+    /* package-private */ ListenerRegistry() {
+    }
+
+    /**
+     * Create a registry notifying only the given listener.
+     */
+    /* package-private */ ListenerRegistry(DiscoveryListener primaryListener) {
+        this.primaryListener = primaryListener;
+    }
+
+    /**
+     * Set the listener that is notified about every {@link Intent} without filter.
+     */
+    /* package-private */ void setPrimaryListener(DiscoveryListener listener) {
+        this.primaryListener = listener;
+    }
+
+    /* package-private */ void add(DiscoveryListener listener, DiscoveryFilter filter, Executor executor) {
+        registrations.add(new Registration(listener, filter, executor));
+    }
+
+    /**
+     * Remove all registrations of the given listener.
+     *
+     * @return true if the listener was registered.
+     */
+    /* package-private */ boolean remove(DiscoveryListener listener) {
+        boolean removed = false;
+
+        for (Registration registration : registrations) {
+            if (registration.listener == listener) {
+                removed |= registrations.remove(registration);
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Returns true if neither a primary listener nor any other listener is registered.
+     */
+    /* package-private */ boolean isEmpty() {
+        return primaryListener == null && registrations.isEmpty();
+    }
+
+    /**
+     * Returns true if any listener accepts packets from the given address.
+     */
+    /* package-private */ boolean acceptsSender(InetAddress address) {
+        if (primaryListener != null) {
+            return true;
+        }
+
+        for (Registration registration : registrations) {
+            if (registration.filter == null || registration.filter.matchesSender(address)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true if the listeners have conditions on the content of an {@link Intent},
+     * i.e. it is worth looking at the {@link IntentHeader} before decoding.
+     */
+    /* package-private */ boolean hasIntentConditions() {
+        if (primaryListener != null) {
+            return false;
+        }
+
+        for (Registration registration : registrations) {
+            if (registration.filter == null || !registration.filter.hasIntentConditions()) {
+                return false;
+            }
+        }
+
+        return !registrations.isEmpty();
+    }
+
+    /**
+     * Returns true if any listener accepts an {@link Intent} with the given header.
+     */
+    /* package-private */ boolean accepts(InetAddress address, IntentHeader header) {
+        if (primaryListener != null) {
+            return true;
+        }
+
+        for (Registration registration : registrations) {
+            if (registration.matches(address, header, null)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Notify all matching listeners about a received {@link Intent}.
+     *
+     * @param header The {@link IntentHeader} of the {@link Intent} if it has been
+     *               read already or null to match filters against the {@link Intent}.
+     * @return The number of notified listeners.
+     */
+    /* package-private */ int dispatch(Subscription subscription, InetAddress address, Intent intent, IntentHeader header) {
+        int notified = 0;
+
+        DiscoveryListener primaryListener = this.primaryListener;
+        if (primaryListener != null) {
+            notify(primaryListener, subscription, address, intent);
+            notified++;
+        }
+
+        for (Registration registration : registrations) {
+            if (!registration.matches(address, header, intent)) {
+                continue;
+            }
+
+            if (registration.executor == null) {
+                notify(registration.listener, subscription, address, intent);
+                notified++;
+                continue;
+            }
+
+            try {
+                registration.executor.execute(new Notification(registration.listener, subscription, address, intent));
+                notified++;
+            } catch (RejectedExecutionException exception) {
+                Log.v(TAG, "Executor rejected notification of listener");
+            }
+        }
+
+        return notified;
+    }
+
+    @Override
+    public void onDiscoveryStarted() {
+        DiscoveryListener primaryListener = this.primaryListener;
+        if (primaryListener != null) {
+            primaryListener.onDiscoveryStarted();
+        }
+
+        for (Registration registration : registrations) {
+            registration.listener.onDiscoveryStarted();
+        }
+    }
+
+    @Override
+    public void onDiscoveryStopped() {
+        DiscoveryListener primaryListener = this.primaryListener;
+        if (primaryListener != null) {
+            primaryListener.onDiscoveryStopped();
+        }
+
+        for (Registration registration : registrations) {
+            registration.listener.onDiscoveryStopped();
+        }
+    }
+
+    @Override
+    public void onDiscoveryError(Exception exception) {
+        DiscoveryListener primaryListener = this.primaryListener;
+        if (primaryListener != null) {
+            primaryListener.onDiscoveryError(exception);
+        }
+
+        for (Registration registration : registrations) {
+            registration.listener.onDiscoveryError(exception);
+        }
+    }
+
+    @Override
+    public void onIntentDiscovered(InetAddress address, Intent intent) {
+        dispatch(null, address, intent, null);
+    }
+
+    @Override
+    public void onIntentDiscovered(Subscription subscription, InetAddress address, Intent intent) {
+        dispatch(subscription, address, intent, null);
+    }
+
+    private static void notify(DiscoveryListener listener, Subscription subscription, InetAddress address, Intent intent) {
+        if (subscription != null && listener instanceof SubscriptionDiscoveryListener) {
+            ((SubscriptionDiscoveryListener) listener).onIntentDiscovered(subscription, address, intent);
+        } else {
+            listener.onIntentDiscovered(address, intent);
+        }
+    }
+
+    private static class Registration {
+        private final DiscoveryListener listener;
+        private final DiscoveryFilter filter;
+        private final Executor executor;
+
+        public Registration(DiscoveryListener listener, DiscoveryFilter filter, Executor executor) {
+            this.listener = listener;
+            this.filter = filter;
+            this.executor = executor;
+        }
+
+        /**
+         * Match the filter against the header if available or the {@link Intent} otherwise.
+         */
+        public boolean matches(InetAddress address, IntentHeader header, Intent intent) {
+            if (filter == null) {
+                return true;
+            }
+
+            if (!filter.matchesSender(address)) {
+                return false;
+            }
+
+            if (!filter.hasIntentConditions()) {
+                return true;
+            }
+
+            return header != null ? filter.matches(header) : filter.matches(intent);
+        }
+    }
+
+    private static class Notification implements Runnable {
+        private final DiscoveryListener listener;
+        private final Subscription subscription;
+        private final InetAddress address;
+        private final Intent intent;
+
+        public Notification(DiscoveryListener listener, Subscription subscription, InetAddress address, Intent intent) {
+            this.listener = listener;
+            this.subscription = subscription;
+            this.address = address;
+            this.intent = intent;
+        }
+
+        @Override
+        public void run() {
+            ListenerRegistry.notify(listener, subscription, address, intent);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+import com.androidzeitgeist.ani.internal.ByteWriter;
+import com.androidzeitgeist.ani.internal.PacketFormat;
+
+/**
+ * Sends negative acknowledgements (NACKs) to the senders of reliable packets to
+ * request packets that have been missed. The socket is created when the first
+ * NACK is sent.
+ */
+/* package-private */ class NackSender {
+    private DatagramSocket socket;
+    private boolean closed;
+
+    /**
+     * Request the given range of sequence numbers from a sender.
+     *
+     * @param address The address of the sender.
+     * @param port The port the sender accepts NACKs on.
+     * @param senderId The id of the sender.
+     * @param firstSequence The first missing sequence number.
+     * @param count The number of missing sequence numbers.
+     */
+    /* package-private */ synchronized void send(InetAddress address, int port, long senderId, int firstSequence, int count) throws IOException {
+        if (closed) {
+            return;
+        }
+
+        if (socket == null) {
+            socket = createSocket();
+        }
+
+        ByteWriter writer = new ByteWriter(PacketFormat.HEADER_LENGTH + PacketFormat.SEQUENCE_HEADER_LENGTH + 5);
+        PacketFormat.writeHeader(writer, PacketFormat.FLAG_NACK);
+        writer.writeLong(senderId);
+        writer.writeInt(firstSequence);
+        writer.writeVarInt(count);
+
+        socket.send(new DatagramPacket(writer.getBuffer(), writer.size(), address, port));
+    }
+
+    /**
+     * Close the socket. No further NACKs will be sent.
+     */
+    /* package-private */ synchronized void close() {
+        closed = true;
+
+        if (socket != null) {
+            socket.close();
+            socket = null;
+        }
+    }
+
+    protected DatagramSocket createSocket() throws IOException {
+        return new DatagramSocket();
+    }
+}
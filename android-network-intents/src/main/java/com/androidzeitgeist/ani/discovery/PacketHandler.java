@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import android.content.Intent;
+import android.util.Log;
+
+import com.androidzeitgeist.ani.codec.IntentCodec;
+import com.androidzeitgeist.ani.codec.IntentCodecException;
+import com.androidzeitgeist.ani.codec.IntentHeader;
+import com.androidzeitgeist.ani.codec.IntentHeaderDecoder;
+import com.androidzeitgeist.ani.internal.BoundedExecutor;
+import com.androidzeitgeist.ani.internal.ByteReader;
+import com.androidzeitgeist.ani.internal.Compression;
+import com.androidzeitgeist.ani.internal.PacketFormat;
+import com.androidzeitgeist.ani.metrics.Metric;
+import com.androidzeitgeist.ani.metrics.MetricsRecorder;
+
+/**
+ * Internal class that turns received packets into {@link Intent}s and notifies
+ * the {@link DiscoveryListener}s. Shared by all discovery threads independent of
+ * how they receive packets from the network.
+ *
+ * Frames are parsed, sequence numbers tracked and fragments reassembled on the
+ * receiving thread, in the order the packets arrived. Only the serialized
+ * {@link Intent}s are handed to the dispatch executor, so that its worker threads
+ * can't reorder packets and make the sequence tracking see gaps that don't exist.
+ */
+class PacketHandler {
+    private static final String TAG = "ANI/PacketHandler";
+
+    private static final int REASSEMBLY_MAXIMUM_MESSAGES = 64;
+    private static final int REASSEMBLY_MAXIMUM_BYTES = 4 * 1024 * 1024;
+    private static final long REASSEMBLY_TIMEOUT_MILLIS = 5000;
+
+    private static final int MAXIMUM_TRACKED_SENDERS = 256;
+
+    private final IntentCodec codec;
+    private final ListenerRegistry registry;
+    private final Executor dispatchExecutor;
+    private final MetricsRecorder metrics;
+    private final Reassembler reassembler;
+    private final SequenceTracker sequenceTracker;
+    private final NackSender nackSender = new NackSender();
+    private volatile DiscoveryFilter filter;
+
+    /**
+     * @param codec The {@link IntentCodec} used to decode {@link Intent}s.
+     * @param listener The {@link DiscoveryListener} to notify. If it is a
+     *                 {@link ListenerRegistry} all listeners of the registry are
+     *                 notified according to their filters.
+     * @param dispatchExecutor Optional {@link Executor} that decodes {@link Intent}s
+     *                         and notifies the listener instead of the receiving thread.
+     * @param metrics The {@link MetricsRecorder} to record received packets to.
+     */
+    /* package-private */ PacketHandler(IntentCodec codec, DiscoveryListener listener, Executor dispatchExecutor, MetricsRecorder metrics) {
+        this.codec = codec;
+        this.registry = listener instanceof ListenerRegistry
+            ? (ListenerRegistry) listener
+            : new ListenerRegistry(listener);
+        this.dispatchExecutor = dispatchExecutor;
+        this.metrics = metrics;
+        this.reassembler = new Reassembler(REASSEMBLY_MAXIMUM_MESSAGES, REASSEMBLY_MAXIMUM_BYTES,
+            REASSEMBLY_TIMEOUT_MILLIS, metrics);
+        this.sequenceTracker = new SequenceTracker(MAXIMUM_TRACKED_SENDERS, metrics);
+    }
+
+    /**
+     * Set the {@link DiscoveryFilter} that received packets and {@link Intent}s
+     * have to match or null to accept everything.
+     */
+    /* package-private */ void setFilter(DiscoveryFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Handle a packet received on the given {@link Subscription}. The given buffer
+     * may be reused by the caller as soon as this method returns.
+     */
+    /* package-private */ void handle(Subscription subscription, InetAddress address, byte[] buffer, int offset, int length) {
+        metrics.record(Metric.PACKETS_RECEIVED, 1);
+        metrics.record(Metric.BYTES_RECEIVED, length);
+
+        DiscoveryFilter filter = this.filter;
+        if ((filter != null && !filter.matchesSender(address)) || !registry.acceptsSender(address)) {
+            metrics.record(Metric.PACKETS_FILTERED, 1);
+            return;
+        }
+
+        handlePacket(subscription, address, buffer, offset, length);
+    }
+
+    /**
+     * Close the socket used for NACKs and shut down the dispatch executor if it is
+     * a {@link BoundedExecutor} owned by the {@link Discovery}.
+     */
+    /* package-private */ void shutdown() {
+        nackSender.close();
+
+        if (dispatchExecutor instanceof BoundedExecutor) {
+            ((BoundedExecutor) dispatchExecutor).shutdown();
+        }
+    }
+
+    /**
+     * Decode the serialized {@link Intent} right away or, if a dispatch executor is
+     * set, hand a copy of it to the executor, so that the receive buffer can be
+     * reused right away.
+     */
+    private void handlePayload(Subscription subscription, InetAddress address, byte[] data, int offset, int length) {
+        if (dispatchExecutor != null) {
+            dispatchPayload(subscription, address, data, offset, length);
+        } else {
+            handleIntent(subscription, address, data, offset, length);
+        }
+    }
+
+    private void dispatchPayload(final Subscription subscription, final InetAddress address, byte[] buffer, int offset, int length) {
+        final byte[] data = new byte[length];
+        System.arraycopy(buffer, offset, data, 0, length);
+
+        BoundedExecutor boundedExecutor = dispatchExecutor instanceof BoundedExecutor
+            ? (BoundedExecutor) dispatchExecutor
+            : null;
+
+        long droppedBefore = boundedExecutor != null ? boundedExecutor.getDroppedTaskCount() : 0;
+
+        try {
+            dispatchExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handleIntent(subscription, address, data, 0, data.length);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            metrics.record(Metric.PACKETS_DROPPED, 1);
+            Log.v(TAG, "Dispatch executor rejected received Intent");
+            return;
+        }
+
+        if (boundedExecutor != null) {
+            long dropped = boundedExecutor.getDroppedTaskCount() - droppedBefore;
+            if (dropped > 0) {
+                metrics.record(Metric.PACKETS_DROPPED, dropped);
+            }
+
+            metrics.record(Metric.DISPATCH_QUEUE_SIZE, boundedExecutor.getQueueSize());
+        }
+    }
+
+    /**
+     * Decode the packet and notify the listener about every {@link Intent} in it.
+     */
+    private void handlePacket(Subscription subscription, InetAddress address, byte[] data, int offset, int length) {
+        if (!PacketFormat.isFrame(data, offset, length)) {
+            handlePayload(subscription, address, data, offset, length);
+            return;
+        }
+
+        try {
+            ByteReader reader = new ByteReader(data, offset, length);
+            int flags = PacketFormat.readHeader(reader);
+
+            if ((flags & ~PacketFormat.KNOWN_FLAGS) != 0) {
+                metrics.record(Metric.PARSE_FAILURES, 1);
+                Log.v(TAG, "Received frame of unknown type");
+                return;
+            }
+
+            if ((flags & PacketFormat.FLAG_FRAGMENT) != 0) {
+                handleFragment(subscription, address, data, reader, flags);
+                return;
+            }
+
+            if ((flags & PacketFormat.FLAG_NACK) != 0) {
+                return; // NACKs are sent to transmitters only
+            }
+
+            if ((flags & PacketFormat.FLAG_SEQUENCED) != 0) {
+                long senderId = reader.readLong();
+                int sequence = reader.readInt();
+                int nackPort = (flags & PacketFormat.FLAG_RELIABLE) != 0 ? reader.readShort() : 0;
+
+                int missing = sequenceTracker.accept(senderId, sequence);
+                if (missing == SequenceTracker.DUPLICATE) {
+                    metrics.record(Metric.DUPLICATES_DROPPED, 1);
+                    return;
+                }
+
+                if (missing > 0 && nackPort != 0) {
+                    requestRetransmission(address, nackPort, senderId, sequence - missing, missing);
+                }
+            }
+
+            if ((flags & PacketFormat.FLAG_COMPRESSED) != 0) {
+                int inflatedLength = reader.readVarInt();
+                if (inflatedLength < 0 || inflatedLength > PacketFormat.MAXIMUM_INFLATED_SIZE) {
+                    throw new IOException("Invalid uncompressed length: " + inflatedLength);
+                }
+
+                byte[] inflated = Compression.inflate(data, reader.position(), reader.remaining(), inflatedLength);
+                reader = new ByteReader(inflated, 0, inflated.length);
+                data = inflated;
+            }
+
+            if ((flags & PacketFormat.FLAG_BATCH) == 0) {
+                handlePayload(subscription, address, data, reader.position(), reader.remaining());
+                return;
+            }
+
+            while (reader.remaining() > 0) {
+                int intentLength = reader.readLength();
+                handlePayload(subscription, address, data, reader.position(), intentLength);
+                reader.skip(intentLength);
+            }
+        } catch (IOException exception) {
+            metrics.record(Metric.PARSE_FAILURES, 1);
+            Log.v(TAG, "Received UDP packet that could not be parsed as frame");
+        }
+    }
+
+    /**
+     * Ask the sender of a reliable packet to send the given packets again.
+     */
+    private void requestRetransmission(InetAddress address, int port, long senderId, int firstSequence, int count) {
+        try {
+            nackSender.send(address, port, senderId, firstSequence, count);
+            metrics.record(Metric.NACKS_SENT, count);
+        } catch (IOException exception) {
+            Log.v(TAG, "Could not send NACK to " + address, exception);
+        }
+    }
+
+    /**
+     * Add the fragment to the reassembly buffer and handle the packet once it is complete.
+     */
+    private void handleFragment(Subscription subscription, InetAddress address, byte[] data, ByteReader reader, int flags) throws IOException {
+        if (flags != PacketFormat.FLAG_FRAGMENT) {
+            throw new IOException("Fragment with unexpected flags: " + flags);
+        }
+
+        int messageId = reader.readInt();
+        int index = reader.readVarInt();
+        int count = reader.readVarInt();
+
+        byte[] packet = reassembler.add(address, messageId, index, count,
+            data, reader.position(), reader.remaining(), System.nanoTime() / 1000000);
+
+        if (packet == null) {
+            return;
+        }
+
+        if (PacketFormat.isFrame(packet, 0, packet.length) && (packet[3] & PacketFormat.FLAG_FRAGMENT) != 0) {
+            throw new IOException("Nested fragments");
+        }
+
+        handlePacket(subscription, address, packet, 0, packet.length);
+    }
+
+    private void handleIntent(Subscription subscription, InetAddress address, byte[] data, int offset, int length) {
+        DiscoveryFilter filter = this.filter;
+        boolean filterIntent = filter != null && filter.hasIntentConditions();
+
+        Intent intent;
+        IntentHeader header = null;
+
+        long decodeStart = System.nanoTime();
+        try {
+            if ((filterIntent || registry.hasIntentConditions()) && codec instanceof IntentHeaderDecoder) {
+                header = ((IntentHeaderDecoder) codec).decodeHeader(data, offset, length);
+
+                if ((filterIntent && !filter.matches(header)) || !registry.accepts(address, header)) {
+                    metrics.record(Metric.PACKETS_FILTERED, 1);
+                    return;
+                }
+
+                filterIntent = false;
+            }
+
+            intent = codec.decode(data, offset, length);
+        } catch (IntentCodecException exception) {
+            metrics.record(Metric.PARSE_FAILURES, 1);
+            Log.v(TAG, "Received UDP packet that could not be parsed as Intent");
+            return;
+        }
+
+        long listenerStart = System.nanoTime();
+        metrics.record(Metric.DECODE_TIME, listenerStart - decodeStart);
+
+        if (filterIntent && !filter.matches(intent)) {
+            metrics.record(Metric.PACKETS_FILTERED, 1);
+            return;
+        }
+
+        if (registry.dispatch(subscription, address, intent, header) == 0) {
+            metrics.record(Metric.PACKETS_FILTERED, 1);
+            return;
+        }
+
+        metrics.record(Metric.LISTENER_TIME, System.nanoTime() - listenerStart);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.androidzeitgeist.ani.internal.PacketFormat;
+import com.androidzeitgeist.ani.metrics.Metric;
+import com.androidzeitgeist.ani.metrics.MetricsRecorder;
+
+/**
+ * Collects the fragments of packets that have been split by the
+ * {@link com.androidzeitgeist.ani.transmitter.Transmitter} and returns a packet
+ * once all of its fragments have arrived.
+ *
+ * The buffer is bounded by the number of incomplete packets and the number of
+ * buffered bytes. Incomplete packets are discarded after a timeout or, if the
+ * buffer is full, starting with the oldest one.
+ */
+/* package-private */ class Reassembler {
+    private final int maximumMessages;
+    private final int maximumBytes;
+    private final long timeoutMillis;
+    private final MetricsRecorder metrics;
+
+    private final LinkedHashMap<MessageKey, PartialMessage> messages = new LinkedHashMap<MessageKey, PartialMessage>();
+    private int bufferedBytes;
+
+    /**
+     * @param maximumMessages The maximum number of incomplete packets to keep.
+     * @param maximumBytes The maximum number of bytes to buffer for incomplete packets.
+     * @param timeoutMillis The time in milliseconds to wait for missing fragments.
+     * @param metrics The {@link MetricsRecorder} to record discarded packets to.
+     */
+    /* package-private */ Reassembler(int maximumMessages, int maximumBytes, long timeoutMillis, MetricsRecorder metrics) {
+        this.maximumMessages = maximumMessages;
+        this.maximumBytes = maximumBytes;
+        this.timeoutMillis = timeoutMillis;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Add a fragment.
+     *
+     * @param sender The address the fragment has been received from.
+     * @param messageId The id shared by all fragments of a packet.
+     * @param index The index of this fragment.
+     * @param count The number of fragments of the packet.
+     * @param data The buffer containing the fragment. It is copied and may be
+     *             reused by the caller.
+     * @param offset The offset of the fragment in the buffer.
+     * @param length The length of the fragment.
+     * @param now The current time in milliseconds.
+     * @return The reassembled packet or null if fragments are still missing.
+     * @throws IOException if the fragment is invalid.
+     */
+    /* package-private */ synchronized byte[] add(InetAddress sender, int messageId, int index, int count,
+            byte[] data, int offset, int length, long now) throws IOException {
+        evictExpired(now);
+
+        if (count < 1 || count > PacketFormat.MAXIMUM_FRAGMENTS || index < 0 || index >= count) {
+            throw new IOException("Invalid fragment " + index + " of " + count);
+        }
+
+        if (length > maximumBytes) {
+            throw new IOException("Fragment exceeds reassembly buffer");
+        }
+
+        if (count == 1) {
+            byte[] packet = new byte[length];
+            System.arraycopy(data, offset, packet, 0, length);
+            return packet;
+        }
+
+        MessageKey key = new MessageKey(sender, messageId);
+        PartialMessage message = messages.get(key);
+
+        if (message == null) {
+            if (messages.size() >= maximumMessages) {
+                evictOldest();
+            }
+
+            message = new PartialMessage(count, now);
+            messages.put(key, message);
+        } else if (message.fragments.length != count) {
+            discard(key);
+            throw new IOException("Fragment count does not match previous fragments");
+        }
+
+        if (message.fragments[index] != null) {
+            return null; // Duplicate
+        }
+
+        while (bufferedBytes + length > maximumBytes) {
+            if (evictOldest() == message) {
+                return null;
+            }
+        }
+
+        byte[] fragment = new byte[length];
+        System.arraycopy(data, offset, fragment, 0, length);
+
+        message.fragments[index] = fragment;
+        message.received++;
+        message.size += length;
+        bufferedBytes += length;
+
+        if (message.received < count) {
+            return null;
+        }
+
+        messages.remove(key);
+        bufferedBytes -= message.size;
+
+        byte[] packet = new byte[message.size];
+        int position = 0;
+        for (byte[] part : message.fragments) {
+            System.arraycopy(part, 0, packet, position, part.length);
+            position += part.length;
+        }
+
+        return packet;
+    }
+
+    /**
+     * Returns the number of incomplete packets in the buffer.
+     */
+    /* package-private */ synchronized int getIncompleteCount() {
+        return messages.size();
+    }
+
+    private void evictExpired(long now) {
+        // Messages are ordered by creation time, so only the oldest ones can be expired.
+        Iterator<Map.Entry<MessageKey, PartialMessage>> iterator = messages.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            PartialMessage message = iterator.next().getValue();
+            if (now - message.created < timeoutMillis) {
+                break;
+            }
+
+            iterator.remove();
+            bufferedBytes -= message.size;
+            metrics.record(Metric.INCOMPLETE_MESSAGES, 1);
+        }
+    }
+
+    private PartialMessage evictOldest() {
+        Iterator<Map.Entry<MessageKey, PartialMessage>> iterator = messages.entrySet().iterator();
+
+        PartialMessage message = iterator.next().getValue();
+        iterator.remove();
+        bufferedBytes -= message.size;
+        metrics.record(Metric.INCOMPLETE_MESSAGES, 1);
+
+        return message;
+    }
+
+    private void discard(MessageKey key) {
+        PartialMessage message = messages.remove(key);
+        bufferedBytes -= message.size;
+        metrics.record(Metric.INCOMPLETE_MESSAGES, 1);
+    }
+
+    private static class MessageKey {
+        private final InetAddress sender;
+        private final int messageId;
+
+        public MessageKey(InetAddress sender, int messageId) {
+            this.sender = sender;
+            this.messageId = messageId;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof MessageKey)) {
+                return false;
+            }
+
+            MessageKey other = (MessageKey) object;
+            return messageId == other.messageId && sender.equals(other.sender);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sender.hashCode() + messageId;
+        }
+    }
+
+    private static class PartialMessage {
+        private final byte[][] fragments;
+        private final long created;
+        private int received;
+        private int size;
+
+        public PartialMessage(int count, long created) {
+            this.fragments = new byte[count][];
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.androidzeitgeist.ani.metrics.Metric;
+import com.androidzeitgeist.ani.metrics.MetricsRecorder;
+
+/**
+ * Tracks the sequence numbers of sequenced packets per sender to drop duplicates
+ * and to detect lost packets.
+ *
+ * For every sender a window of the last 64 sequence numbers is kept as a bitmap.
+ * A packet is accepted if its sequence number is newer than the window or if it
+ * is inside the window and has not been seen yet. Sequence numbers that leave the
+ * window without having been seen are recorded as lost. Packets older than the
+ * window are dropped as they can not be told apart from duplicates.
+ */
+/* package-private */ class SequenceTracker {
+    /**
+     * Returned by {@link #accept(long, int)} for packets that should be dropped.
+     */
+    /* package-private */ static final int DUPLICATE = -1;
+
+    private static final int WINDOW_SIZE = 64;
+
+    private final MetricsRecorder metrics;
+    private final Map<Long, Window> windows;
+
+    /**
+     * @param maximumSenders The maximum number of senders to track. If more
+     *                       senders are seen, the least recently seen one is
+     *                       forgotten.
+     * @param metrics The {@link MetricsRecorder} to record lost packets to.
+     */
+    /* package-private */ SequenceTracker(final int maximumSenders, MetricsRecorder metrics) {
+        this.metrics = metrics;
+        this.windows = new LinkedHashMap<Long, Window>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Window> eldest) {
+                return size() > maximumSenders;
+            }
+        };
+    }
+
+    /**
+     * Check whether the packet with the given sequence number has been seen before.
+     *
+     * @return {@link #DUPLICATE} if the packet should be dropped. Otherwise the
+     *         number of sequence numbers directly preceding this one that have
+     *         just been detected as missing, up to the size of the window.
+     */
+    /* package-private */ synchronized int accept(long senderId, int sequence) {
+        Window window = windows.get(senderId);
+
+        if (window == null) {
+            windows.put(senderId, new Window(sequence));
+            return 0;
+        }
+
+        // Integer arithmetic keeps working when the sequence number wraps around.
+        int delta = sequence - window.highest;
+
+        if (delta > 0) {
+            long lost = window.advance(delta);
+            window.highest = sequence;
+
+            if (lost > 0) {
+                metrics.record(Metric.PACKETS_LOST, lost);
+            }
+
+            return Math.min(delta - 1, WINDOW_SIZE - 1);
+        }
+
+        int age = -delta;
+        if (age >= WINDOW_SIZE) {
+            return DUPLICATE;
+        }
+
+        long bit = 1L << age;
+        if ((window.received & bit) != 0) {
+            return DUPLICATE;
+        }
+
+        window.received |= bit;
+        return 0;
+    }
+
+    private static class Window {
+        private int highest;
+
+        /**
+         * Bit n is set if sequence number (highest - n) has been received.
+         */
+        private long received;
+
+        /**
+         * Bit n is set if sequence number (highest - n) has been sent by the sender
+         * as far as we know, i.e. it is not older than the first packet we have seen.
+         */
+        private long valid;
+
+        public Window(int sequence) {
+            this.highest = sequence;
+            this.received = 1;
+            this.valid = 1;
+        }
+
+        /**
+         * Move the window forward by the given number of sequence numbers, mark
+         * the newest one as received and return the number of sequence numbers
+         * that left the window without having been received.
+         */
+        public long advance(int delta) {
+            long lost;
+
+            if (delta >= WINDOW_SIZE) {
+                lost = Long.bitCount(valid & ~received) + (delta - WINDOW_SIZE);
+                received = 1;
+                valid = ~0L;
+            } else {
+                long leaving = ~0L << (WINDOW_SIZE - delta);
+                lost = Long.bitCount(valid & ~received & leaving);
+                received = (received << delta) | 1;
+                valid = (valid << delta) | ((1L << delta) - 1);
+            }
+
+            return lost;
+        }
+    }
+}
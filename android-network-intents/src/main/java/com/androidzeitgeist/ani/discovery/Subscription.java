@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import java.net.InetAddress;
+
+/**
+ * A multicast group and port a {@link Discovery} listens to.
+ */
+public class Subscription {
+    private final InetAddress group;
+    private final int port;
+
+    /**
+     * Create a new {@link Subscription} for the given multicast group and port.
+     *
+     * @param group The multicast address to listen to.
+     * @param port The port to listen to.
+     * @throws IllegalArgumentException if the address is not a multicast address.
+     */
+    public Subscription(InetAddress group, int port) {
+        if (!group.isMulticastAddress()) {
+            throw new IllegalArgumentException("Not a multicast address: " + group);
+        }
+
+        this.group = group;
+        this.port = port;
+    }
+
+    /**
+     * Returns the multicast address of this {@link Subscription}.
+     */
+    public InetAddress getGroup() {
+        return group;
+    }
+
+    /**
+     * Returns the port of this {@link Subscription}.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+
+        if (!(object instanceof Subscription)) {
+            return false;
+        }
+
+        Subscription other = (Subscription) object;
+        return port == other.port && group.equals(other.group);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * group.hashCode() + port;
+    }
+
+    @Override
+    public String toString() {
+        return group.getHostAddress() + ":" + port;
+    }
+}
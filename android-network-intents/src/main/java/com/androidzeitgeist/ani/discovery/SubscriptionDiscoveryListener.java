@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import java.net.InetAddress;
+
+import android.content.Intent;
+
+/**
+ * A {@link DiscoveryListener} that is also told on which {@link Subscription} an
+ * {@link Intent} has been received. Useful if a single {@link Discovery} listens
+ * to multiple multicast groups or ports.
+ *
+ * If a listener implements this interface, {@link Discovery} calls
+ * {@link #onIntentDiscovered(Subscription, InetAddress, Intent)} instead of
+ * {@link #onIntentDiscovered(InetAddress, Intent)}.
+ */
+public interface SubscriptionDiscoveryListener extends DiscoveryListener {
+    /**
+     * Called when the {@link Discovery} has successfully received an {@link Intent}.
+     *
+     * @param subscription The {@link Subscription} the {@link Intent} has been received on.
+     * @param address The IP address of the sender of the {@link Intent}.
+     * @param intent The received {@link Intent}.
+     */
+    public void onIntentDiscovered(Subscription subscription, InetAddress address, Intent intent);
+}
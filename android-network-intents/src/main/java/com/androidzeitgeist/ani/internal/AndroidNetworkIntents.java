@@ -23,4 +23,24 @@ public class AndroidNetworkIntents {
     public static final String DEFAULT_MULTICAST_ADDRESS = "225.4.5.6";
 
     public static final int DEFAULT_PORT = 5775;
+
+    public static final int DEFAULT_MAXIMUM_PACKET_SIZE = 102400;
+
+    /**
+     * Largest UDP payload that fits into a single Ethernet frame (1500 bytes MTU
+     * minus 20 bytes IPv4 and 8 bytes UDP header).
+     */
+    public static final int DEFAULT_BATCH_PACKET_SIZE = 1472;
+
+    /**
+     * Maximum number of {@link android.content.Intent}s delivered to a
+     * {@link com.androidzeitgeist.ani.discovery.BatchDiscoveryListener} at once.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     * Time in milliseconds a batch of discovered {@link android.content.Intent}s
+     * is held before it is delivered, about the duration of one frame at 60 fps.
+     */
+    public static final long DEFAULT_BATCH_WINDOW = 16;
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.internal;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import android.util.Log;
+
+import com.androidzeitgeist.ani.OverflowPolicy;
+
+/**
+ * Internal {@link Executor} running tasks on a fixed number of worker threads
+ * that are fed by a {@link BoundedQueue}. If the queue is full the configured
+ * {@link OverflowPolicy} decides which task is dropped or whether the caller
+ * blocks.
+ *
+ * Dropped tasks that implement {@link Future} will be cancelled.
+ */
+public class BoundedExecutor implements Executor {
+    private static final String TAG = "ANI/BoundedExecutor";
+
+    private final BoundedQueue<Runnable> queue;
+    private final Thread[] workers;
+
+    /**
+     * Create a new {@link BoundedExecutor} and start its worker threads.
+     *
+     * @param name Name prefix of the worker threads.
+     * @param capacity Maximum number of queued tasks.
+     * @param threads Number of worker threads.
+     * @param policy What to do if the queue is full.
+     */
+    public BoundedExecutor(String name, int capacity, int threads, OverflowPolicy policy) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+
+        this.queue = new BoundedQueue<Runnable>(capacity, policy) {
+            @Override
+            protected void onDropped(Runnable task) {
+                if (task instanceof Future) {
+                    ((Future<?>) task).cancel(false);
+                }
+            }
+        };
+
+        this.workers = new Thread[threads];
+
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(name + "-" + i) {
+                @Override
+                public void run() {
+                    runTasks();
+                }
+            };
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queue the task for execution. Depending on the {@link OverflowPolicy} this
+     * may drop the task or an older one, or block until there is room.
+     *
+     * @throws RejectedExecutionException if the executor has been shut down.
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (queue.isClosed()) {
+            throw new RejectedExecutionException("Executor has been shut down");
+        }
+
+        queue.add(task);
+    }
+
+    /**
+     * Returns the number of tasks currently waiting in the queue.
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of tasks that have been dropped because the queue was
+     * full or the executor has been shut down.
+     */
+    public long getDroppedTaskCount() {
+        return queue.getDroppedCount();
+    }
+
+    /**
+     * Stop all worker threads. Queued tasks that have not been started yet are
+     * dropped.
+     */
+    public void shutdown() {
+        queue.close();
+
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    private void runTasks() {
+        while (!queue.isClosed()) {
+            Runnable task;
+
+            try {
+                task = queue.take();
+            } catch (InterruptedException exception) {
+                continue;
+            }
+
+            try {
+                task.run();
+            } catch (RuntimeException exception) {
+                Log.w(TAG, "Task threw exception", exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.internal;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.androidzeitgeist.ani.OverflowPolicy;
+
+/**
+ * Internal bounded queue that applies an {@link OverflowPolicy} when elements are
+ * added to a full queue. Subclasses can override {@link #onDropped(Object)} to be
+ * notified about elements that have been dropped.
+ */
+public class BoundedQueue<E> {
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final BlockingQueue<E> queue;
+    private final OverflowPolicy policy;
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile boolean closed;
+
+    public BoundedQueue(int capacity, OverflowPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        if (policy == null) {
+            throw new IllegalArgumentException("Overflow policy must not be null");
+        }
+
+        this.queue = new ArrayBlockingQueue<E>(capacity);
+        this.policy = policy;
+    }
+
+    /**
+     * Add an element to the queue. Depending on the {@link OverflowPolicy} this
+     * may drop the element or an older one, or block until there is room. Elements
+     * added after the queue has been closed are dropped.
+     *
+     * @return true if the element has been added to the queue.
+     */
+    public boolean add(E element) {
+        if (closed) {
+            drop(element);
+            return false;
+        }
+
+        switch (policy) {
+            case DROP_NEWEST:
+                if (!queue.offer(element)) {
+                    drop(element);
+                    return false;
+                }
+                return true;
+
+            case DROP_OLDEST:
+                while (!queue.offer(element)) {
+                    E oldest = queue.poll();
+                    if (oldest != null) {
+                        drop(oldest);
+                    }
+                }
+                return true;
+
+            case BLOCK:
+            default:
+                try {
+                    while (!queue.offer(element, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                        if (closed) {
+                            drop(element);
+                            return false;
+                        }
+                    }
+                    return true;
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    drop(element);
+                    return false;
+                }
+        }
+    }
+
+    /**
+     * Wait for the next element.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public E take() throws InterruptedException {
+        return queue.take();
+    }
+
+    /**
+     * Move all currently queued elements to the given collection.
+     */
+    public int drainTo(Collection<? super E> collection) {
+        return queue.drainTo(collection);
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of elements that have been dropped.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Close the queue and drop all queued elements. Callers blocked in
+     * {@link #add(Object)} will give up and drop their element.
+     */
+    public void close() {
+        closed = true;
+
+        E element;
+        while ((element = queue.poll()) != null) {
+            drop(element);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Called for every element that has been dropped.
+     */
+    protected void onDropped(E element) {
+        // Empty default implementation
+    }
+
+    private void drop(E element) {
+        droppedCount.incrementAndGet();
+        onDropped(element);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.internal;
+
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.codec.IntentCodec;
+import com.androidzeitgeist.ani.codec.IntentCodecException;
+
+/**
+ * Internal interface of the built-in {@link IntentCodec}s that can serialize an
+ * {@link Intent} into a buffer provided by the caller. The
+ * {@link com.androidzeitgeist.ani.transmitter.Transmitter} checks for it to encode
+ * into a buffer that is reused for every packet instead of allocating a new array
+ * per {@link Intent}. Custom codecs implement {@link IntentCodec} only.
+ */
+public interface BufferedIntentCodec extends IntentCodec {
+    /**
+     * Serialize the given {@link Intent} by appending it to the given writer.
+     *
+     * @param intent The {@link Intent} to serialize.
+     * @param writer The buffer to append the serialized {@link Intent} to.
+     * @throws IntentCodecException if the {@link Intent} could not be serialized.
+     */
+    public void encode(Intent intent, ByteWriter writer) throws IntentCodecException;
+}
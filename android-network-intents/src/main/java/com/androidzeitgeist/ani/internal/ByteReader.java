@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.internal;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Internal reader for binary packet data written by {@link ByteWriter}.
+ *
+ * Reads are bounds checked against the given range of the buffer and throw an
+ * {@link EOFException} if the data is truncated.
+ */
+public class ByteReader {
+    private byte[] data;
+    private int position;
+    private int limit;
+
+    public ByteReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public int remaining() {
+        return limit - position;
+    }
+
+    public void skip(int count) throws IOException {
+        require(count);
+        position += count;
+    }
+
+    public int readByte() throws IOException {
+        require(1);
+        return data[position++];
+    }
+
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xFF;
+    }
+
+    public int readShort() throws IOException {
+        require(2);
+        int value = ((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF);
+        position += 2;
+        return value;
+    }
+
+    public int readInt() throws IOException {
+        require(4);
+        int value = ((data[position] & 0xFF) << 24)
+                | ((data[position + 1] & 0xFF) << 16)
+                | ((data[position + 2] & 0xFF) << 8)
+                | (data[position + 3] & 0xFF);
+        position += 4;
+        return value;
+    }
+
+    public long readLong() throws IOException {
+        return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    public int readVarInt() throws IOException {
+        long value = readVarLong();
+
+        if (value > 0xFFFFFFFFL) {
+            throw new IOException("Variable length integer too large");
+        }
+
+        return (int) value;
+    }
+
+    public long readVarLong() throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed variable length integer");
+    }
+
+    /**
+     * Read a length written with {@link ByteWriter#writeVarInt(int)} and verify
+     * that at least this many bytes remain.
+     */
+    public int readLength() throws IOException {
+        int length = readVarInt();
+
+        if (length < 0 || length > remaining()) {
+            throw new EOFException("Length " + length + " exceeds remaining data");
+        }
+
+        return length;
+    }
+
+    public byte[] readBytes(int length) throws IOException {
+        require(length);
+        byte[] value = new byte[length];
+        System.arraycopy(data, position, value, 0, length);
+        position += length;
+        return value;
+    }
+
+    public String readString() throws IOException {
+        int length = readVarInt();
+
+        if (length == 0) {
+            return null;
+        }
+
+        length--;
+        require(length);
+
+        String value = new String(data, position, length, ByteWriter.UTF_8);
+        position += length;
+        return value;
+    }
+
+    /**
+     * Skip a string written by {@link ByteWriter#writeString(String)} without decoding it.
+     */
+    public void skipString() throws IOException {
+        int length = readVarInt();
+
+        if (length > 0) {
+            skip(length - 1);
+        }
+    }
+
+    private void require(int count) throws IOException {
+        if (count < 0 || count > limit - position) {
+            throw new EOFException("Unexpected end of data");
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.internal;
+
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+
+/**
+ * Internal growable byte buffer for writing binary packet data.
+ *
+ * Integers are written as fixed size big-endian values or as variable length
+ * values using 7 bits per byte. Strings are written as UTF-8 prefixed by their
+ * length. The buffer can be reset and reused to avoid allocating a new array for
+ * every packet.
+ */
+public class ByteWriter {
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private byte[] buffer;
+    private int size;
+
+    public ByteWriter() {
+        this(256);
+    }
+
+    public ByteWriter(int initialCapacity) {
+        buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Discard all written bytes but keep the allocated buffer.
+     */
+    public void reset() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the internal buffer. Only the first {@link #size()} bytes are valid.
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public byte[] toByteArray() {
+        byte[] data = new byte[size];
+        System.arraycopy(buffer, 0, data, 0, size);
+        return data;
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    public void writeShort(int value) {
+        ensureCapacity(2);
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte) value;
+    }
+
+    public void writeInt(int value) {
+        ensureCapacity(4);
+        buffer[size++] = (byte) (value >>> 24);
+        buffer[size++] = (byte) (value >>> 16);
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte) value;
+    }
+
+    public void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    /**
+     * Write an unsigned variable length integer. Values below 128 take a single byte.
+     */
+    public void writeVarInt(int value) {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the number of bytes {@link #writeVarInt(int)} needs for the given value.
+     */
+    public static int varIntSize(int value) {
+        int size = 1;
+
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+
+        return size;
+    }
+
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        buffer[size++] = (byte) value;
+    }
+
+    public void writeBytes(byte[] data) {
+        writeBytes(data, 0, data.length);
+    }
+
+    public void writeBytes(byte[] data, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(data, offset, buffer, size, length);
+        size += length;
+    }
+
+    /**
+     * Write a nullable string as variable length (UTF-8 length + 1) followed by
+     * the UTF-8 bytes of the string. A length of 0 marks a null string.
+     */
+    public void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+
+        int length = utf8Length(value);
+
+        writeVarInt(length + 1);
+        writeUtf8(value, length);
+    }
+
+    /**
+     * Write the UTF-8 bytes of a string without length prefix. Produces the same
+     * bytes as {@link String#getBytes(Charset)} with {@link #UTF_8}, without
+     * allocating a temporary array.
+     */
+    public void writeUtf8(String value) {
+        writeUtf8(value, utf8Length(value));
+    }
+
+    private void writeUtf8(String value, int length) {
+        ensureCapacity(length);
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c < 0x80) {
+                buffer[size++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[size++] = (byte) (0xC0 | (c >> 6));
+                buffer[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (isSurrogate(c)) {
+                buffer[size++] = (byte) '?'; // Unpaired surrogate
+            } else {
+                buffer[size++] = (byte) (0xE0 | (c >> 12));
+                buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Append the output of the given {@link Deflater}, whose input has been
+     * finished, directly to the buffer without an intermediate chunk.
+     */
+    /* package-private */ void writeDeflated(Deflater deflater, int chunkSize) {
+        while (!deflater.finished()) {
+            ensureCapacity(chunkSize);
+            size += deflater.deflate(buffer, size, buffer.length - size);
+        }
+    }
+
+    private static boolean isSurrogate(char c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    private void ensureCapacity(int additionalBytes) {
+        int required = size + additionalBytes;
+
+        if (required > buffer.length) {
+            byte[] newBuffer = new byte[Math.max(required, buffer.length * 2)];
+            System.arraycopy(buffer, 0, newBuffer, 0, size);
+            buffer = newBuffer;
+        }
+    }
+}
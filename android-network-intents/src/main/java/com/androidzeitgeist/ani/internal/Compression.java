@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.internal;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Internal helper to deflate and inflate packet payloads.
+ *
+ * Creating a {@link Deflater} or {@link Inflater} allocates native memory, so a small
+ * number of instances is kept in a pool and reused across packets and threads.
+ */
+public class Compression {
+    private static final int POOL_SIZE = 4;
+    private static final int CHUNK_SIZE = 512;
+
+    private static final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+    private static final AtomicInteger deflaterCount = new AtomicInteger();
+
+    private static final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<Inflater>();
+    private static final AtomicInteger inflaterCount = new AtomicInteger();
+
+    private Compression() {
+    }
+
+    /**
+     * Deflate the given range of bytes and append the result to the writer. The
+     * output is written straight into the writer's buffer, so a writer that is
+     * reused across packets avoids allocating per call.
+     */
+    public static void deflate(byte[] data, int offset, int length, ByteWriter out) {
+        Deflater deflater = deflaters.poll();
+        if (deflater != null) {
+            deflaterCount.decrementAndGet();
+        } else {
+            deflater = new Deflater();
+        }
+
+        try {
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+
+            out.writeDeflated(deflater, CHUNK_SIZE);
+        } finally {
+            deflater.reset();
+
+            if (deflaterCount.incrementAndGet() <= POOL_SIZE) {
+                deflaters.offer(deflater);
+            } else {
+                deflaterCount.decrementAndGet();
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Inflate the given range of bytes.
+     *
+     * @param inflatedLength The expected number of bytes after inflating.
+     * @throws IOException if the data is corrupt or does not inflate to exactly
+     *                     the expected number of bytes.
+     */
+    public static byte[] inflate(byte[] data, int offset, int length, int inflatedLength) throws IOException {
+        Inflater inflater = inflaters.poll();
+        if (inflater != null) {
+            inflaterCount.decrementAndGet();
+        } else {
+            inflater = new Inflater();
+        }
+
+        try {
+            byte[] result = new byte[inflatedLength];
+
+            inflater.setInput(data, offset, length);
+
+            int inflated = 0;
+            while (inflated < inflatedLength && !inflater.finished()) {
+                int count = inflater.inflate(result, inflated, inflatedLength - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+
+            if (inflated != inflatedLength || !inflater.finished()) {
+                throw new IOException("Compressed data does not match its length");
+            }
+
+            return result;
+        } catch (DataFormatException exception) {
+            IOException ioException = new IOException("Invalid compressed data");
+            ioException.initCause(exception);
+            throw ioException;
+        } finally {
+            inflater.reset();
+
+            if (inflaterCount.incrementAndGet() <= POOL_SIZE) {
+                inflaters.offer(inflater);
+            } else {
+                inflaterCount.decrementAndGet();
+                inflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.internal;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Internal {@link Executor} posting tasks to the message queue of a {@link Looper},
+ * e.g. the main thread.
+ */
+public class HandlerExecutor implements Executor {
+    private final Handler handler;
+
+    /**
+     * Create a new {@link HandlerExecutor} running tasks on the given {@link Looper}.
+     */
+    public HandlerExecutor(Looper looper) {
+        if (looper == null) {
+            throw new IllegalArgumentException("Looper must not be null");
+        }
+
+        this.handler = new Handler(looper);
+    }
+
+    /**
+     * Post the task to the message queue of the {@link Looper}.
+     *
+     * @throws RejectedExecutionException if the {@link Looper} is quitting.
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (!handler.post(task)) {
+            throw new RejectedExecutionException("Looper is quitting");
+        }
+    }
+}
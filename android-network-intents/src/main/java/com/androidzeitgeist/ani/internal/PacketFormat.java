@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.internal;
+
+import java.io.IOException;
+
+/**
+ * Internal constants and helpers for the frame format used by packets that carry
+ * more than a single serialized Intent.
+ *
+ * A frame starts with a magic number, a version byte and a byte of flags. Packets
+ * without this header contain exactly one Intent as written by the codec, which
+ * keeps single Intents compatible with receivers that do not know about frames.
+ *
+ * Batch frames (see {@link #FLAG_BATCH}) contain a sequence of serialized Intents,
+ * each prefixed by its length, until the end of the packet.
+ *
+ * Compressed frames (see {@link #FLAG_COMPRESSED}) contain the length of the
+ * uncompressed payload followed by the payload in zlib format. After inflating,
+ * the payload is read as if it followed the header directly.
+ *
+ * Fragment frames (see {@link #FLAG_FRAGMENT}) carry a part of a packet that was
+ * too large to be sent at once. They contain a message id shared by all fragments
+ * of the packet, the index of the fragment and the number of fragments. The
+ * reassembled packet is read like any other packet.
+ *
+ * Sequenced frames (see {@link #FLAG_SEQUENCED}) contain the random id of the
+ * sending {@link com.androidzeitgeist.ani.transmitter.Transmitter} and a sequence
+ * number directly after the header, allowing receivers to drop duplicates and
+ * detect lost packets. Reliable frames (see {@link #FLAG_RELIABLE}) additionally
+ * contain the port on which the sender accepts negative acknowledgements.
+ *
+ * NACK frames (see {@link #FLAG_NACK}) are sent by receivers directly to that port
+ * and contain the sender id, the first missing sequence number and the number of
+ * missing packets.
+ */
+public class PacketFormat {
+    public static final byte MAGIC_0 = (byte) 0xA7;
+    public static final byte MAGIC_1 = (byte) 'F';
+    public static final byte VERSION = 1;
+
+    public static final int HEADER_LENGTH = 4;
+
+    /**
+     * The frame contains multiple length-prefixed Intents.
+     */
+    public static final int FLAG_BATCH = 0x01;
+
+    /**
+     * The payload of the frame is compressed.
+     */
+    public static final int FLAG_COMPRESSED = 0x02;
+
+    /**
+     * The frame contains a fragment of a larger packet.
+     */
+    public static final int FLAG_FRAGMENT = 0x04;
+
+    /**
+     * The frame contains a sender id and a sequence number.
+     */
+    public static final int FLAG_SEQUENCED = 0x08;
+
+    /**
+     * The sequenced frame contains the port to send NACKs to.
+     */
+    public static final int FLAG_RELIABLE = 0x10;
+
+    /**
+     * The frame is a negative acknowledgement requesting missed packets.
+     */
+    public static final int FLAG_NACK = 0x20;
+
+    /**
+     * All flags understood by this version.
+     */
+    public static final int KNOWN_FLAGS = FLAG_BATCH | FLAG_COMPRESSED | FLAG_FRAGMENT | FLAG_SEQUENCED
+        | FLAG_RELIABLE | FLAG_NACK;
+
+    /**
+     * Size of the sequence header following the frame header: an eight byte
+     * sender id and a four byte sequence number.
+     */
+    public static final int SEQUENCE_HEADER_LENGTH = 8 + 4;
+
+    /**
+     * Size of the NACK port following the sequence header of reliable frames.
+     */
+    public static final int NACK_PORT_LENGTH = 2;
+
+    /**
+     * Maximum size of the fragment header following the frame header: a four byte
+     * message id and two varints for fragment index and count.
+     */
+    public static final int FRAGMENT_HEADER_LENGTH = 4 + 2 * 5;
+
+    /**
+     * Upper limit for the number of fragments of a single packet.
+     */
+    public static final int MAXIMUM_FRAGMENTS = 1024;
+
+    /**
+     * Upper limit for the uncompressed size of a compressed frame. Protects receivers
+     * from packets that inflate to huge amounts of memory.
+     */
+    public static final int MAXIMUM_INFLATED_SIZE = 1024 * 1024;
+
+    /**
+     * Returns true if the given range of bytes starts with a frame header.
+     */
+    public static boolean isFrame(byte[] data, int offset, int length) {
+        return length >= HEADER_LENGTH
+            && data[offset] == MAGIC_0
+            && data[offset + 1] == MAGIC_1;
+    }
+
+    /**
+     * Write a frame header with the given flags.
+     */
+    public static void writeHeader(ByteWriter writer, int flags) {
+        writer.writeByte(MAGIC_0);
+        writer.writeByte(MAGIC_1);
+        writer.writeByte(VERSION);
+        writer.writeByte(flags);
+    }
+
+    /**
+     * Read a frame header and return its flags.
+     *
+     * @throws IOException if the header is invalid or of an unsupported version.
+     */
+    public static int readHeader(ByteReader reader) throws IOException {
+        if (reader.readByte() != MAGIC_0 || reader.readByte() != MAGIC_1) {
+            throw new IOException("Not a frame");
+        }
+
+        int version = reader.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported frame version: " + version);
+        }
+
+        return reader.readUnsignedByte();
+    }
+}
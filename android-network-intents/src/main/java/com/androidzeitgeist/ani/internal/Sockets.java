@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.internal;
+
+import java.io.IOException;
+import java.net.MulticastSocket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+
+import android.annotation.TargetApi;
+
+import com.androidzeitgeist.ani.SocketOptions;
+
+/**
+ * Internal helper for applying {@link SocketOptions} to sockets and channels.
+ */
+public class Sockets {
+    /**
+     * Apply all options that have been set to the given {@link MulticastSocket}.
+     */
+    public static void apply(SocketOptions options, MulticastSocket socket) throws IOException {
+        if (options == null) {
+            return;
+        }
+
+        if (options.getReceiveBufferSize() != null) {
+            socket.setReceiveBufferSize(options.getReceiveBufferSize());
+        }
+
+        if (options.getSendBufferSize() != null) {
+            socket.setSendBufferSize(options.getSendBufferSize());
+        }
+
+        if (options.getTimeToLive() != null) {
+            socket.setTimeToLive(options.getTimeToLive());
+        }
+
+        if (options.getLoopbackEnabled() != null) {
+            // Note that MulticastSocket expects true to *disable* loopback.
+            socket.setLoopbackMode(!options.getLoopbackEnabled());
+        }
+
+        if (options.getTrafficClass() != null) {
+            socket.setTrafficClass(options.getTrafficClass());
+        }
+
+        if (options.getNetworkInterface() != null) {
+            socket.setNetworkInterface(options.getNetworkInterface());
+        }
+    }
+
+    /**
+     * Apply all options that have been set to the given {@link DatagramChannel}.
+     */
+    @TargetApi(24)
+    public static void apply(SocketOptions options, DatagramChannel channel) throws IOException {
+        if (options == null) {
+            return;
+        }
+
+        if (options.getReceiveBufferSize() != null) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, options.getReceiveBufferSize());
+        }
+
+        if (options.getSendBufferSize() != null) {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, options.getSendBufferSize());
+        }
+
+        if (options.getTimeToLive() != null) {
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, options.getTimeToLive());
+        }
+
+        if (options.getLoopbackEnabled() != null) {
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, options.getLoopbackEnabled());
+        }
+
+        if (options.getTrafficClass() != null) {
+            channel.setOption(StandardSocketOptions.IP_TOS, options.getTrafficClass());
+        }
+
+        if (options.getNetworkInterface() != null) {
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, options.getNetworkInterface());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free {@link MetricsRecorder} that keeps the number of recorded values, their
+ * total and their maximum for every {@link Metric}. Use {@link #snapshot()} to read
+ * the current values.
+ */
+public class CounterMetrics implements MetricsRecorder {
+    private static final int METRIC_COUNT = Metric.values().length;
+
+    private final AtomicLongArray counts = new AtomicLongArray(METRIC_COUNT);
+    private final AtomicLongArray totals = new AtomicLongArray(METRIC_COUNT);
+    private final AtomicLongArray maximums = new AtomicLongArray(METRIC_COUNT);
+
+    @Override
+    public void record(Metric metric, long value) {
+        int index = metric.ordinal();
+
+        counts.incrementAndGet(index);
+        totals.addAndGet(index, value);
+
+        long maximum;
+        while (value > (maximum = maximums.get(index))) {
+            if (maximums.compareAndSet(index, maximum, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the current values. Values recorded concurrently may or
+     * may not be included.
+     */
+    public MetricsSnapshot snapshot() {
+        long[] countValues = new long[METRIC_COUNT];
+        long[] totalValues = new long[METRIC_COUNT];
+        long[] maximumValues = new long[METRIC_COUNT];
+
+        for (int i = 0; i < METRIC_COUNT; i++) {
+            countValues[i] = counts.get(i);
+            totalValues[i] = totals.get(i);
+            maximumValues[i] = maximums.get(i);
+        }
+
+        return new MetricsSnapshot(countValues, totalValues, maximumValues);
+    }
+
+    /**
+     * Reset all values to zero.
+     */
+    public void reset() {
+        for (int i = 0; i < METRIC_COUNT; i++) {
+            counts.set(i, 0);
+            totals.set(i, 0);
+            maximums.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.metrics;
+
+/**
+ * Metrics recorded by {@link com.androidzeitgeist.ani.discovery.Discovery} and
+ * {@link com.androidzeitgeist.ani.transmitter.Transmitter}.
+ *
+ * Every metric is recorded as a single value: counters record the number of
+ * events or bytes, timings record nanoseconds and sizes record the current size.
+ */
+public enum Metric {
+    /**
+     * A packet has been received. Value: 1.
+     */
+    PACKETS_RECEIVED,
+
+    /**
+     * Bytes have been received. Value: size of the packet in bytes.
+     */
+    BYTES_RECEIVED,
+
+    /**
+     * A received packet has been dropped because the dispatch queue was full.
+     * Value: number of dropped packets.
+     */
+    PACKETS_DROPPED,
+
+    /**
+     * A received packet or Intent could not be parsed. Value: 1.
+     */
+    PARSE_FAILURES,
+
+    /**
+     * A received packet or Intent has been dropped because it did not match the
+     * filter of the {@link com.androidzeitgeist.ani.discovery.Discovery}. Value: 1.
+     */
+    PACKETS_FILTERED,
+
+    /**
+     * An Intent has been decoded. Value: time spent decoding in nanoseconds.
+     */
+    DECODE_TIME,
+
+    /**
+     * The listener has been notified about an Intent. Value: time spent in the
+     * listener in nanoseconds.
+     */
+    LISTENER_TIME,
+
+    /**
+     * A packet has been added to the dispatch queue. Value: number of packets
+     * waiting in the queue.
+     */
+    DISPATCH_QUEUE_SIZE,
+
+    /**
+     * A fragmented packet has been discarded because not all of its fragments
+     * arrived in time or the reassembly buffer was full. Value: 1.
+     */
+    INCOMPLETE_MESSAGES,
+
+    /**
+     * A packet has been received more than once and has been dropped. Value: 1.
+     */
+    DUPLICATES_DROPPED,
+
+    /**
+     * Gaps in the sequence numbers of a sender have been detected. Value: number
+     * of packets that never arrived.
+     */
+    PACKETS_LOST,
+
+    /**
+     * Retransmission of missed packets has been requested from a sender. Value:
+     * number of requested packets.
+     */
+    NACKS_SENT,
+
+    /**
+     * A packet has been sent. Value: 1.
+     */
+    PACKETS_SENT,
+
+    /**
+     * Bytes have been sent. Value: size of the packet in bytes.
+     */
+    BYTES_SENT,
+
+    /**
+     * A packet has been sent. Value: time spent sending in nanoseconds.
+     */
+    SEND_TIME,
+
+    /**
+     * Sending a packet has been delayed to stay within the configured rate.
+     * Value: delay in nanoseconds.
+     */
+    PACING_DELAY,
+
+    /**
+     * A call to transmit has failed. Value: 1.
+     */
+    SEND_FAILURES,
+
+    /**
+     * A packet has been sent again because a receiver missed it. Value: 1.
+     */
+    RETRANSMISSIONS,
+
+    /**
+     * An Intent has been added to the queue of an
+     * {@link com.androidzeitgeist.ani.transmitter.AsyncTransmitter}. Value: number
+     * of Intents waiting in the queue.
+     */
+    SEND_QUEUE_SIZE,
+
+    /**
+     * An Intent waiting in a {@link com.androidzeitgeist.ani.transmitter.ConflatingTransmitter}
+     * has been replaced by a newer one with the same key. Value: 1.
+     */
+    INTENTS_CONFLATED,
+
+    /**
+     * An Intent has been dropped from the queue of an
+     * {@link com.androidzeitgeist.ani.transmitter.AsyncTransmitter} or from the
+     * pending Intents without key of a
+     * {@link com.androidzeitgeist.ani.transmitter.ConflatingTransmitter}. Value: 1.
+     */
+    SEND_QUEUE_DROPPED
+}
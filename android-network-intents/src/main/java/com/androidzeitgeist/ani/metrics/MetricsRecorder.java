@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.metrics;
+
+/**
+ * A {@link MetricsRecorder} receives the {@link Metric}s recorded while sending and
+ * receiving Intents.
+ *
+ * Implementations are called on the networking threads of the library and must be
+ * thread-safe and fast. {@link CounterMetrics} is a lock-free default
+ * implementation.
+ */
+public interface MetricsRecorder {
+    /**
+     * Record a value for the given {@link Metric}.
+     *
+     * @param metric The {@link Metric} to record.
+     * @param value The value; see {@link Metric} for the meaning of the value.
+     */
+    public void record(Metric metric, long value);
+}
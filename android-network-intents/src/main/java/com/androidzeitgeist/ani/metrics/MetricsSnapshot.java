@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.metrics;
+
+/**
+ * Immutable copy of the values recorded by {@link CounterMetrics}.
+ */
+public class MetricsSnapshot {
+    private final long[] counts;
+    private final long[] totals;
+    private final long[] maximums;
+
+    /* package-private */ MetricsSnapshot(long[] counts, long[] totals, long[] maximums) {
+        this.counts = counts;
+        this.totals = totals;
+        this.maximums = maximums;
+    }
+
+    /**
+     * Returns how often the {@link Metric} has been recorded.
+     */
+    public long getCount(Metric metric) {
+        return counts[metric.ordinal()];
+    }
+
+    /**
+     * Returns the sum of all recorded values, e.g. the number of packets or bytes
+     * for counters or the total time for timings.
+     */
+    public long getTotal(Metric metric) {
+        return totals[metric.ordinal()];
+    }
+
+    /**
+     * Returns the largest recorded value.
+     */
+    public long getMaximum(Metric metric) {
+        return maximums[metric.ordinal()];
+    }
+
+    /**
+     * Returns the average of all recorded values or 0 if nothing has been recorded.
+     */
+    public double getAverage(Metric metric) {
+        long count = getCount(metric);
+        return count > 0 ? (double) getTotal(metric) / count : 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("MetricsSnapshot{");
+
+        boolean first = true;
+        for (Metric metric : Metric.values()) {
+            if (getCount(metric) == 0) {
+                continue;
+            }
+
+            if (!first) {
+                builder.append(", ");
+            }
+            first = false;
+
+            builder.append(metric.name())
+                .append("=[count=").append(getCount(metric))
+                .append(", total=").append(getTotal(metric))
+                .append(", max=").append(getMaximum(metric))
+                .append(']');
+        }
+
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.presence;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A peer known to a {@link Presence}, identified by its address and the sender id
+ * of its {@link Presence}. A restarted app on the same device uses a new sender
+ * id and is therefore a new peer.
+ *
+ * Instances are updated by the {@link Presence} while the peer is present and
+ * can be read from any thread.
+ */
+public class Peer {
+    /**
+     * Time constant of the packet rate estimate in milliseconds. Packets older
+     * than this contribute less than 37% of their original weight.
+     */
+    private static final double RATE_TIME_CONSTANT = 10000;
+
+    private final InetAddress address;
+    private final long senderId;
+    private final long joinedAt;
+
+    private volatile long lastSeen;
+    private volatile long lastSeenWallClock;
+
+    private long roundTripTime = -1;
+    private double rate;
+    private long rateUpdated;
+
+    // Latest heartbeat of the peer, to be echoed back for measuring the round trip time.
+    private long heartbeatTimestamp;
+    private long heartbeatReceivedAt;
+    /* package-private */ final AtomicBoolean echoPending = new AtomicBoolean();
+
+    /* package-private */ Peer(InetAddress address, long senderId, long now) {
+        this.address = address;
+        this.senderId = senderId;
+        this.joinedAt = now;
+        this.lastSeen = now;
+        this.lastSeenWallClock = System.currentTimeMillis();
+        this.rateUpdated = now;
+    }
+
+    /**
+     * Returns the address packets of this peer are sent from.
+     */
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the random id the {@link Presence} of this peer has chosen on creation.
+     */
+    public long getSenderId() {
+        return senderId;
+    }
+
+    /**
+     * Returns the time of the last packet from this peer as returned by
+     * {@link System#currentTimeMillis()}.
+     */
+    public long getLastSeen() {
+        return lastSeenWallClock;
+    }
+
+    /**
+     * Returns the smoothed round trip time to this peer in milliseconds or -1 if
+     * it has not been measured yet.
+     */
+    public synchronized long getRoundTripTime() {
+        return roundTripTime;
+    }
+
+    /**
+     * Returns the estimated number of packets per second received from this peer,
+     * including heartbeats. The estimate is an exponentially decaying average over
+     * roughly the last ten seconds.
+     */
+    public double getPacketRate() {
+        return getPacketRate(Presence.now());
+    }
+
+    /* package-private */ synchronized double getPacketRate(long now) {
+        return decayedRate(now);
+    }
+
+    /* package-private */ long getLastSeenMonotonic() {
+        return lastSeen;
+    }
+
+    /* package-private */ long getJoinedAt() {
+        return joinedAt;
+    }
+
+    /**
+     * Record a packet received from this peer.
+     */
+    /* package-private */ synchronized void recordPacket(long now) {
+        rate = decayedRate(now) + 1000 / RATE_TIME_CONSTANT;
+        rateUpdated = Math.max(now, rateUpdated);
+
+        lastSeen = Math.max(now, lastSeen);
+        lastSeenWallClock = System.currentTimeMillis();
+    }
+
+    /**
+     * Remember the timestamp of a heartbeat of this peer so that it can be echoed.
+     */
+    /* package-private */ synchronized void recordHeartbeat(long timestamp, long now) {
+        heartbeatTimestamp = timestamp;
+        heartbeatReceivedAt = now;
+    }
+
+    /* package-private */ synchronized long getHeartbeatTimestamp() {
+        return heartbeatTimestamp;
+    }
+
+    /**
+     * Returns how long the latest heartbeat of this peer has been held before it is echoed.
+     */
+    /* package-private */ synchronized long getHeartbeatHoldTime(long now) {
+        return Math.max(0, now - heartbeatReceivedAt);
+    }
+
+    /**
+     * Add a round trip time sample, smoothed like the TCP round trip time estimate
+     * (RFC 6298) with a gain of 1/8.
+     */
+    /* package-private */ synchronized void recordRoundTripTime(long sample) {
+        if (roundTripTime < 0) {
+            roundTripTime = sample;
+        } else {
+            roundTripTime = (7 * roundTripTime + sample) / 8;
+        }
+    }
+
+    private double decayedRate(long now) {
+        long elapsed = now - rateUpdated;
+        if (elapsed <= 0) {
+            return rate;
+        }
+
+        return rate * Math.exp(-elapsed / RATE_TIME_CONSTANT);
+    }
+
+    @Override
+    public String toString() {
+        return "Peer{" + address.getHostAddress() + ", " + Long.toHexString(senderId) + "}";
+    }
+}
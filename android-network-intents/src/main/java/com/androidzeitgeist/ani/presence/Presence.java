@@ -0,0 +1,481 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.presence;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.discovery.Discovery;
+import com.androidzeitgeist.ani.discovery.DiscoveryAdapter;
+import com.androidzeitgeist.ani.transmitter.Transmitter;
+import com.androidzeitgeist.ani.transmitter.TransmitterException;
+
+/**
+ * Keeps track of the peers around by sending and receiving periodic heartbeats.
+ *
+ * Heartbeats are small {@link Intent}s with the action {@link #ACTION_HEARTBEAT}
+ * sent using the given {@link Transmitter} and received using the given
+ * {@link Discovery}, which has to be enabled separately. Other listeners of the
+ * {@link Discovery} receive heartbeats as well and should ignore this action.
+ *
+ * Every peer is identified by its address and a random sender id, and is
+ * reported to the {@link PresenceListener} when its first heartbeat arrives.
+ * A peer leaves when it stops its {@link Presence} or when no packet has been
+ * received from it within the timeout. Timeouts are tracked with a single
+ * {@link TimerWheel} instead of a timer per peer, so that hundreds of peers cost
+ * no more than a few map entries each.
+ *
+ * The round trip time to a peer is measured by echoing the timestamp of its
+ * latest heartbeat in one of our own heartbeats. Each heartbeat carries a single
+ * echo for the peer that has waited longest, so with many peers every peer gets
+ * a new sample every few heartbeats.
+ */
+public class Presence {
+    /**
+     * Action of heartbeat {@link Intent}s.
+     */
+    public static final String ACTION_HEARTBEAT = "com.androidzeitgeist.ani.action.PRESENCE_HEARTBEAT";
+
+    /**
+     * Default interval between two heartbeats in milliseconds.
+     */
+    public static final long DEFAULT_HEARTBEAT_INTERVAL = 1000;
+
+    /**
+     * Default time in milliseconds after which a silent peer is considered gone.
+     */
+    public static final long DEFAULT_TIMEOUT = 3500;
+
+    /* package-private */ static final String EXTRA_SENDER_ID = "ani.id";
+    /* package-private */ static final String EXTRA_TIMESTAMP = "ani.t";
+    /* package-private */ static final String EXTRA_ECHO_SENDER_ID = "ani.ep";
+    /* package-private */ static final String EXTRA_ECHO_TIMESTAMP = "ani.et";
+    /* package-private */ static final String EXTRA_ECHO_HOLD_TIME = "ani.eh";
+    /* package-private */ static final String EXTRA_GOODBYE = "ani.bye";
+
+    private static final int WHEEL_SLOTS = 64;
+    private static final int TICKS_PER_TIMEOUT = 8;
+
+    private final Discovery discovery;
+    private final Transmitter transmitter;
+    private final long heartbeatInterval;
+    private final long timeout;
+    private final long senderId = new Random().nextLong();
+
+    private final ConcurrentHashMap<PeerKey, Peer> peers = new ConcurrentHashMap<PeerKey, Peer>();
+    private final ConcurrentHashMap<InetAddress, Peer> peersByAddress = new ConcurrentHashMap<InetAddress, Peer>();
+    private final Queue<Peer> echoQueue = new ConcurrentLinkedQueue<Peer>();
+    private final TimerWheel<Peer> wheel;
+    private final HeartbeatListener heartbeatListener = new HeartbeatListener();
+
+    private volatile PresenceListener listener;
+
+    private final Object lock = new Object();
+    private Thread thread;
+    private boolean running;
+    private boolean stopped;
+
+    /**
+     * Create a new {@link Presence} with the default heartbeat interval and timeout.
+     *
+     * @param discovery The {@link Discovery} to receive heartbeats with.
+     * @param transmitter The {@link Transmitter} to send heartbeats with.
+     */
+    public Presence(Discovery discovery, Transmitter transmitter) {
+        this(discovery, transmitter, DEFAULT_HEARTBEAT_INTERVAL, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Create a new {@link Presence}.
+     *
+     * @param discovery The {@link Discovery} to receive heartbeats with.
+     * @param transmitter The {@link Transmitter} to send heartbeats with.
+     * @param heartbeatInterval The interval between two heartbeats in milliseconds.
+     * @param timeout The time in milliseconds after which a peer that has not sent
+     *                any packet is considered gone. Should span multiple heartbeat
+     *                intervals, so that a single lost heartbeat does not evict a peer.
+     * @throws IllegalArgumentException if the interval is not positive or the
+     *                                  timeout is not longer than the interval.
+     */
+    public Presence(Discovery discovery, Transmitter transmitter, long heartbeatInterval, long timeout) {
+        this(discovery, transmitter, heartbeatInterval, timeout, now());
+    }
+
+    /* package-private */ Presence(Discovery discovery, Transmitter transmitter, long heartbeatInterval, long timeout, long now) {
+        if (heartbeatInterval <= 0) {
+            throw new IllegalArgumentException("Heartbeat interval must be positive");
+        }
+
+        if (timeout <= heartbeatInterval) {
+            throw new IllegalArgumentException("Timeout must be longer than the heartbeat interval");
+        }
+
+        this.discovery = discovery;
+        this.transmitter = transmitter;
+        this.heartbeatInterval = heartbeatInterval;
+        this.timeout = timeout;
+        this.wheel = new TimerWheel<Peer>(Math.max(1, timeout / TICKS_PER_TIMEOUT), WHEEL_SLOTS, now);
+    }
+
+    /**
+     * Set the {@link PresenceListener} notified about joining and leaving peers.
+     */
+    public void setPresenceListener(PresenceListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the random id identifying this {@link Presence} in its heartbeats.
+     */
+    public long getSenderId() {
+        return senderId;
+    }
+
+    /**
+     * Returns a snapshot of the currently present peers.
+     */
+    public List<Peer> getPeers() {
+        return new ArrayList<Peer>(peers.values());
+    }
+
+    /**
+     * Returns the most recently joined peer with the given address or null if
+     * there is none.
+     */
+    public Peer getPeer(InetAddress address) {
+        return peersByAddress.get(address);
+    }
+
+    /**
+     * Start sending heartbeats and tracking peers on a background thread.
+     *
+     * @throws IllegalStateException if this {@link Presence} is already running.
+     */
+    public void start() {
+        synchronized (lock) {
+            if (running) {
+                throw new IllegalStateException("Presence already started");
+            }
+
+            running = true;
+            stopped = false;
+
+            discovery.addDiscoveryListener(heartbeatListener);
+
+            thread = new Thread("ANI/Presence") {
+                @Override
+                public void run() {
+                    sendHeartbeats();
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop sending heartbeats, tell the peers that this {@link Presence} leaves and
+     * forget all peers. The {@link PresenceListener} is not notified about the
+     * forgotten peers.
+     */
+    public void stop() {
+        Thread thread;
+
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+
+            running = false;
+            stopped = true;
+            lock.notifyAll();
+
+            thread = this.thread;
+            this.thread = null;
+        }
+
+        discovery.removeDiscoveryListener(heartbeatListener);
+
+        try {
+            thread.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (lock) {
+            peers.clear();
+            peersByAddress.clear();
+            echoQueue.clear();
+        }
+    }
+
+    /**
+     * Handle an {@link Intent} received from the given address.
+     */
+    /* package-private */ void handleIntent(InetAddress address, Intent intent, long now) {
+        if (ACTION_HEARTBEAT.equals(intent.getAction())) {
+            handleHeartbeat(address, intent, now);
+            return;
+        }
+
+        Peer peer = peersByAddress.get(address);
+        if (peer != null) {
+            peer.recordPacket(now);
+        }
+    }
+
+    private void handleHeartbeat(InetAddress address, Intent intent, long now) {
+        if (!intent.hasExtra(EXTRA_SENDER_ID)) {
+            return;
+        }
+
+        long peerId = intent.getLongExtra(EXTRA_SENDER_ID, 0);
+        if (peerId == senderId) {
+            // Our own heartbeat, looped back by the network stack.
+            return;
+        }
+
+        PeerKey key = new PeerKey(address, peerId);
+
+        if (intent.getBooleanExtra(EXTRA_GOODBYE, false)) {
+            Peer peer = peers.get(key);
+            if (peer != null) {
+                removePeer(key, peer);
+            }
+            return;
+        }
+
+        boolean joined = false;
+
+        Peer peer = peers.get(key);
+        if (peer == null) {
+            // A heartbeat still being handled while stop() runs must not add the
+            // peer again after the peers have been cleared.
+            synchronized (lock) {
+                if (stopped) {
+                    return;
+                }
+
+                Peer created = new Peer(address, peerId, now);
+
+                peer = peers.putIfAbsent(key, created);
+                if (peer == null) {
+                    peer = created;
+                    joined = true;
+
+                    peersByAddress.put(address, peer);
+                    wheel.schedule(peer, now + timeout);
+                }
+            }
+        }
+
+        peer.recordPacket(now);
+        peer.recordHeartbeat(intent.getLongExtra(EXTRA_TIMESTAMP, 0), now);
+
+        if (peer.echoPending.compareAndSet(false, true)) {
+            synchronized (lock) {
+                if (!stopped) {
+                    echoQueue.add(peer);
+                }
+            }
+        }
+
+        if (intent.getLongExtra(EXTRA_ECHO_SENDER_ID, 0) == senderId && intent.hasExtra(EXTRA_ECHO_TIMESTAMP)) {
+            long sample = now
+                - intent.getLongExtra(EXTRA_ECHO_TIMESTAMP, now)
+                - intent.getLongExtra(EXTRA_ECHO_HOLD_TIME, 0);
+
+            if (sample >= 0) {
+                peer.recordRoundTripTime(sample);
+            }
+        }
+
+        PresenceListener listener = this.listener;
+        if (joined && listener != null) {
+            listener.onPeerJoined(peer);
+        }
+    }
+
+    /**
+     * Evict all peers whose timeout has passed. Peers that have been seen since
+     * they were scheduled are scheduled again for their new deadline.
+     */
+    /* package-private */ void expirePeers(long now, List<Peer> expired) {
+        expired.clear();
+        wheel.advance(now, expired);
+
+        for (Peer peer : expired) {
+            PeerKey key = new PeerKey(peer.getAddress(), peer.getSenderId());
+            if (peers.get(key) != peer) {
+                // Already left.
+                continue;
+            }
+
+            long deadline = peer.getLastSeenMonotonic() + timeout;
+            if (deadline > now) {
+                wheel.schedule(peer, deadline);
+            } else {
+                removePeer(key, peer);
+            }
+        }
+    }
+
+    /**
+     * Create the heartbeat {@link Intent} to send now.
+     */
+    /* package-private */ Intent createHeartbeat(long now, boolean goodbye) {
+        Intent intent = createIntent();
+        intent.setAction(ACTION_HEARTBEAT);
+        intent.putExtra(EXTRA_SENDER_ID, senderId);
+        intent.putExtra(EXTRA_TIMESTAMP, now);
+
+        if (goodbye) {
+            intent.putExtra(EXTRA_GOODBYE, true);
+            return intent;
+        }
+
+        Peer peer = nextEchoPeer();
+        if (peer != null) {
+            intent.putExtra(EXTRA_ECHO_SENDER_ID, peer.getSenderId());
+            intent.putExtra(EXTRA_ECHO_TIMESTAMP, peer.getHeartbeatTimestamp());
+            intent.putExtra(EXTRA_ECHO_HOLD_TIME, peer.getHeartbeatHoldTime(now));
+        }
+
+        return intent;
+    }
+
+    protected Intent createIntent() {
+        return new Intent();
+    }
+
+    /**
+     * Returns the present peer that has waited longest for an echo of its heartbeat.
+     */
+    private Peer nextEchoPeer() {
+        Peer peer;
+
+        while ((peer = echoQueue.poll()) != null) {
+            peer.echoPending.set(false);
+
+            if (peers.get(new PeerKey(peer.getAddress(), peer.getSenderId())) == peer) {
+                return peer;
+            }
+        }
+
+        return null;
+    }
+
+    private void removePeer(PeerKey key, Peer peer) {
+        if (!peers.remove(key, peer)) {
+            return;
+        }
+
+        peersByAddress.remove(peer.getAddress(), peer);
+
+        PresenceListener listener = this.listener;
+        if (listener != null) {
+            listener.onPeerLeft(peer);
+        }
+    }
+
+    private void sendHeartbeats() {
+        List<Peer> expired = new ArrayList<Peer>();
+        long nextHeartbeat = now();
+
+        while (true) {
+            long now = now();
+
+            if (now >= nextHeartbeat) {
+                sendHeartbeat(createHeartbeat(now, false));
+                nextHeartbeat = now + heartbeatInterval;
+            }
+
+            expirePeers(now, expired);
+
+            synchronized (lock) {
+                long wait = Math.min(nextHeartbeat, now + wheel.getTickMillis()) - now();
+
+                if (running && wait > 0) {
+                    try {
+                        lock.wait(wait);
+                    } catch (InterruptedException exception) {
+                        // Check whether we have been stopped.
+                    }
+                }
+
+                if (!running) {
+                    break;
+                }
+            }
+        }
+
+        sendHeartbeat(createHeartbeat(now(), true));
+    }
+
+    private void sendHeartbeat(Intent heartbeat) {
+        try {
+            transmitter.transmit(heartbeat);
+        } catch (TransmitterException exception) {
+            // Peers will time out if heartbeats keep failing; nothing else to do.
+        } catch (IllegalStateException exception) {
+            // The transmitter has been closed by someone else.
+        }
+    }
+
+    /* package-private */ static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private class HeartbeatListener extends DiscoveryAdapter {
+        @Override
+        public void onIntentDiscovered(InetAddress address, Intent intent) {
+            handleIntent(address, intent, now());
+        }
+    }
+
+    private static class PeerKey {
+        private final InetAddress address;
+        private final long senderId;
+
+        public PeerKey(InetAddress address, long senderId) {
+            this.address = address;
+            this.senderId = senderId;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof PeerKey)) {
+                return false;
+            }
+
+            PeerKey other = (PeerKey) object;
+            return senderId == other.senderId && address.equals(other.address);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * address.hashCode() + (int) (senderId ^ (senderId >>> 32));
+        }
+    }
+}
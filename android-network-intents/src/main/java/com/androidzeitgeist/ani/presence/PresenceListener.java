@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.presence;
+
+/**
+ * Listener notified by {@link Presence} when peers appear and disappear.
+ */
+public interface PresenceListener {
+    /**
+     * A heartbeat of a previously unknown peer has been received. Called on the
+     * thread delivering the heartbeat, i.e. the discovery thread or the dispatch
+     * executor of the {@link com.androidzeitgeist.ani.discovery.Discovery}.
+     *
+     * @param peer The new peer.
+     */
+    public void onPeerJoined(Peer peer);
+
+    /**
+     * A peer has said goodbye or has not sent a heartbeat within the timeout.
+     * Called on the presence thread or, for goodbyes, on the thread delivering
+     * the goodbye.
+     *
+     * @param peer The peer that has left.
+     */
+    public void onPeerLeft(Peer peer);
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.presence;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hashed timing wheel for deadlines of many items with a coarse resolution.
+ * Scheduling and expiring an item is O(1), independent of the number of items,
+ * and no timer or thread is needed per item.
+ *
+ * The wheel is a ring of slots, each covering one tick. An item is put into the
+ * slot of the tick its deadline falls into. {@link #advance(long, List)} moves
+ * the wheel forward to the given time and returns the items of all passed slots
+ * whose deadline has been reached. Items with a deadline more than one rotation
+ * away stay in their slot until the rotation they are due in. Deadlines are
+ * checked with the resolution of one tick.
+ *
+ * Items cannot be removed. Owners that extend a deadline should check the item
+ * when it expires and schedule it again if needed.
+ */
+/* package-private */ class TimerWheel<T> {
+    private final long tickMillis;
+    private final List<List<Entry<T>>> slots;
+    private final int mask;
+
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMillis The duration of a tick in milliseconds.
+     * @param slotCount The number of slots; rounded up to a power of two.
+     * @param now The current time in milliseconds.
+     */
+    /* package-private */ TimerWheel(long tickMillis, int slotCount, long now) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive");
+        }
+
+        if (slotCount <= 0) {
+            throw new IllegalArgumentException("Slot count must be positive");
+        }
+
+        int capacity = Integer.highestOneBit(slotCount);
+        if (capacity < slotCount) {
+            capacity <<= 1;
+        }
+
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<List<Entry<T>>>(capacity);
+        this.mask = capacity - 1;
+        this.currentTick = now / tickMillis;
+
+        for (int i = 0; i < capacity; i++) {
+            slots.add(new ArrayList<Entry<T>>());
+        }
+    }
+
+    /**
+     * Schedule an item to expire at the given deadline. Deadlines in the past
+     * expire on the next call to {@link #advance(long, List)}.
+     */
+    /* package-private */ synchronized void schedule(T item, long deadline) {
+        // The first tick at or after the deadline, so the item is due when its slot is visited.
+        long tick = Math.max((deadline + tickMillis - 1) / tickMillis, currentTick + 1);
+
+        slots.get((int) (tick & mask)).add(new Entry<T>(item, deadline));
+        size++;
+    }
+
+    /**
+     * Advance the wheel to the given time and add all items whose deadline has
+     * been reached to the given list.
+     *
+     * @return The number of expired items.
+     */
+    /* package-private */ synchronized int advance(long now, List<T> expired) {
+        long targetTick = now / tickMillis;
+        int count = 0;
+
+        // Visiting more than one rotation would visit slots twice.
+        long firstTick = Math.max(currentTick + 1, targetTick - mask);
+
+        for (long tick = firstTick; tick <= targetTick; tick++) {
+            Iterator<Entry<T>> iterator = slots.get((int) (tick & mask)).iterator();
+
+            while (iterator.hasNext()) {
+                Entry<T> entry = iterator.next();
+
+                if (entry.deadline <= now) {
+                    iterator.remove();
+                    expired.add(entry.item);
+                    size--;
+                    count++;
+                }
+            }
+        }
+
+        if (targetTick > currentTick) {
+            currentTick = targetTick;
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the number of scheduled items.
+     */
+    /* package-private */ synchronized int size() {
+        return size;
+    }
+
+    /* package-private */ long getTickMillis() {
+        return tickMillis;
+    }
+
+    private static class Entry<T> {
+        private final T item;
+        private final long deadline;
+
+        public Entry(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.transmitter;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import android.content.Intent;
+import android.util.Log;
+
+import com.androidzeitgeist.ani.OverflowPolicy;
+import com.androidzeitgeist.ani.codec.IntentCodecException;
+import com.androidzeitgeist.ani.internal.BoundedQueue;
+import com.androidzeitgeist.ani.metrics.Metric;
+
+/**
+ * Sends {@link Intent}s on a dedicated background thread, so that callers never
+ * block on the network. {@link Intent}s are queued in a bounded queue and sent in
+ * order by a single sender thread using the wrapped {@link Transmitter}.
+ *
+ * All {@link Intent}s that are waiting in the queue when the sender thread becomes
+ * available are sent together using {@link Transmitter#transmit(java.util.Collection)},
+ * so they share a socket and, if a batch packet size has been set on the
+ * {@link Transmitter}, a packet. If such a batch fails because one of its
+ * {@link Intent}s can't be serialized, the {@link Intent}s that have not been
+ * sent yet are sent again one by one, so that only the future of the offending
+ * {@link Intent} fails and no {@link Intent} is sent twice.
+ *
+ * The sender thread is started on creation and stopped by {@link #close()}, which
+ * also closes the wrapped {@link Transmitter}.
+ */
+public class AsyncTransmitter implements Closeable {
+    private static final String TAG = "ANI/AsyncTransmitter";
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private final Transmitter transmitter;
+    private final BoundedQueue<PendingTransmission> queue;
+    private final Thread senderThread;
+
+    /**
+     * Create a new {@link AsyncTransmitter} with a queue of 64 {@link Intent}s that
+     * drops new {@link Intent}s if the queue is full.
+     *
+     * @param transmitter The {@link Transmitter} used to send the {@link Intent}s.
+     */
+    public AsyncTransmitter(Transmitter transmitter) {
+        this(transmitter, DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DROP_NEWEST);
+    }
+
+    /**
+     * Create a new {@link AsyncTransmitter}.
+     *
+     * @param transmitter The {@link Transmitter} used to send the {@link Intent}s.
+     * @param capacity The maximum number of {@link Intent}s waiting to be sent.
+     * @param overflowPolicy What to do if the queue is full. With
+     *                       {@link OverflowPolicy#BLOCK} calls to
+     *                       {@link #transmit(Intent)} block until there is room.
+     */
+    public AsyncTransmitter(Transmitter transmitter, int capacity, OverflowPolicy overflowPolicy) {
+        this.transmitter = transmitter;
+
+        this.queue = new BoundedQueue<PendingTransmission>(capacity, overflowPolicy) {
+            @Override
+            protected void onDropped(PendingTransmission transmission) {
+                transmission.cancel(false);
+                AsyncTransmitter.this.transmitter.getMetricsRecorder().record(Metric.SEND_QUEUE_DROPPED, 1);
+            }
+        };
+
+        this.senderThread = new Thread("ANI/AsyncTransmitter") {
+            @Override
+            public void run() {
+                sendQueuedIntents();
+            }
+        };
+        this.senderThread.setDaemon(true);
+        this.senderThread.start();
+    }
+
+    /**
+     * Queue an {@link Intent} for sending.
+     *
+     * @param intent The {@link Intent} to send.
+     * @return A {@link Future} that completes once the {@link Intent} has been sent.
+     *         It throws an {@link ExecutionException} with the {@link TransmitterException}
+     *         as cause if sending failed. It is cancelled if the {@link Intent} has
+     *         been dropped.
+     */
+    public Future<Void> transmit(Intent intent) {
+        return transmit(intent, null);
+    }
+
+    /**
+     * Queue an {@link Intent} for sending and notify the given callback once it
+     * has been sent or could not be sent.
+     *
+     * @param intent The {@link Intent} to send.
+     * @param callback The {@link TransmitCallback} to notify or null.
+     * @return A {@link Future} that completes once the {@link Intent} has been sent.
+     * @see #transmit(Intent)
+     */
+    public Future<Void> transmit(Intent intent, TransmitCallback callback) {
+        PendingTransmission transmission = new PendingTransmission(intent, callback);
+        queue.add(transmission);
+        transmitter.getMetricsRecorder().record(Metric.SEND_QUEUE_SIZE, queue.size());
+        return transmission;
+    }
+
+    /**
+     * Returns the number of {@link Intent}s waiting to be sent.
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of {@link Intent}s that have been dropped.
+     */
+    public long getDroppedCount() {
+        return queue.getDroppedCount();
+    }
+
+    /**
+     * Stop the sender thread and close the wrapped {@link Transmitter}.
+     * {@link Intent}s still waiting in the queue are dropped.
+     */
+    @Override
+    public void close() {
+        queue.close();
+        senderThread.interrupt();
+    }
+
+    private void sendQueuedIntents() {
+        List<PendingTransmission> transmissions = new ArrayList<PendingTransmission>();
+        List<Intent> intents = new ArrayList<Intent>();
+
+        while (!queue.isClosed()) {
+            try {
+                transmissions.add(queue.take());
+            } catch (InterruptedException exception) {
+                continue;
+            }
+
+            queue.drainTo(transmissions);
+
+            for (PendingTransmission transmission : transmissions) {
+                intents.add(transmission.intent);
+            }
+
+            TransmitterException failure = send(intents);
+
+            if (failure != null && transmissions.size() > 1 && failure.getCause() instanceof IntentCodecException) {
+                // Send the remaining Intents one by one, so that an Intent that
+                // can't be serialized only fails its own future.
+                int transmitted = failure.getTransmittedCount();
+
+                for (int i = 0; i < transmissions.size(); i++) {
+                    PendingTransmission transmission = transmissions.get(i);
+
+                    if (i < transmitted) {
+                        complete(transmission, null);
+                    } else {
+                        complete(transmission, send(Collections.singletonList(transmission.intent)));
+                    }
+                }
+            } else {
+                for (PendingTransmission transmission : transmissions) {
+                    complete(transmission, failure);
+                }
+            }
+
+            transmissions.clear();
+            intents.clear();
+        }
+
+        transmitter.close();
+    }
+
+    /**
+     * Send the {@link Intent}s using the wrapped {@link Transmitter}.
+     *
+     * @return null if the {@link Intent}s have been sent or the reason they have not.
+     */
+    private TransmitterException send(List<Intent> intents) {
+        try {
+            transmitter.transmit(intents);
+            return null;
+        } catch (TransmitterException exception) {
+            return exception;
+        } catch (IllegalStateException exception) {
+            // The transmitter has been closed by someone else.
+            return new TransmitterException("Transmitter closed", exception);
+        } catch (RuntimeException exception) {
+            // Keep the sender thread alive; it is unknown which Intents have been sent.
+            return new TransmitterException("Could not transmit intent", exception);
+        }
+    }
+
+    private static void complete(PendingTransmission transmission, TransmitterException failure) {
+        try {
+            if (failure == null) {
+                transmission.setTransmitted();
+            } else {
+                transmission.setFailed(failure);
+            }
+        } catch (RuntimeException exception) {
+            Log.w(TAG, "Transmit callback failed", exception);
+        }
+    }
+
+    /**
+     * An {@link Intent} waiting to be sent. The {@link FutureTask} is never run;
+     * it is completed by the sender thread.
+     */
+    private static class PendingTransmission extends FutureTask<Void> {
+        private static final Callable<Void> NO_OP = new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        };
+
+        private final Intent intent;
+        private final TransmitCallback callback;
+
+        public PendingTransmission(Intent intent, TransmitCallback callback) {
+            super(NO_OP);
+
+            this.intent = intent;
+            this.callback = callback;
+        }
+
+        public void setTransmitted() {
+            set(null);
+        }
+
+        public void setFailed(TransmitterException exception) {
+            setException(exception);
+        }
+
+        @Override
+        protected void done() {
+            if (callback == null) {
+                return;
+            }
+
+            if (isCancelled()) {
+                callback.onTransmitFailed(intent, new TransmitterException("Intent dropped from queue", null));
+                return;
+            }
+
+            try {
+                get();
+                callback.onTransmitted(intent);
+            } catch (ExecutionException exception) {
+                callback.onTransmitFailed(intent, (TransmitterException) exception.getCause());
+            } catch (InterruptedException exception) {
+                // Not possible as the task is already done.
+            }
+        }
+    }
+}
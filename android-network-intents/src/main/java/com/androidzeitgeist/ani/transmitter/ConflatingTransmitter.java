@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.transmitter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.metrics.Metric;
+
+/**
+ * Sends only the latest {@link Intent} per key. Useful for state updates, e.g.
+ * a position or status, where a newer update makes older ones obsolete.
+ *
+ * {@link Intent}s passed to {@link #transmit(Intent)} are held until the next
+ * flush. An {@link Intent} replaces a pending {@link Intent} with the same
+ * {@link ConflationKey} and takes over its position, so superseded updates are
+ * dropped before they are serialized. Otherwise {@link Intent}s, with or without
+ * key, are sent in the order they have been passed to {@link #transmit(Intent)}.
+ * As {@link Intent}s without key are never replaced, only a limited number of
+ * them is kept; if there are more, the oldest ones are dropped.
+ *
+ * A background thread flushes all pending {@link Intent}s at a fixed interval
+ * using {@link Transmitter#transmit(java.util.Collection)}, so they share a
+ * socket and, if a batch packet size has been set on the {@link Transmitter},
+ * a packet.
+ *
+ * The flush thread is started on creation and stopped by {@link #close()}, which
+ * also closes the wrapped {@link Transmitter}.
+ */
+public class ConflatingTransmitter implements Closeable {
+    private static final int DEFAULT_MAX_UNKEYED_INTENTS = 64;
+
+    private final Transmitter transmitter;
+    private final long intervalMillis;
+    private final ConflationKey conflationKey;
+    private final int maxUnkeyedIntents;
+    private final Thread flushThread;
+
+    private final Object lock = new Object();
+    private Map<Object, Intent> pendingIntents = new LinkedHashMap<Object, Intent>();
+    private int pendingUnkeyedCount;
+    private boolean closed;
+
+    /**
+     * Create a new {@link ConflatingTransmitter} that uses the action of an
+     * {@link Intent} as key.
+     *
+     * @param transmitter The {@link Transmitter} used to send the {@link Intent}s.
+     * @param intervalMillis The interval in milliseconds at which pending
+     *                       {@link Intent}s are sent.
+     */
+    public ConflatingTransmitter(Transmitter transmitter, long intervalMillis) {
+        this(transmitter, intervalMillis, ConflationKey.ACTION);
+    }
+
+    /**
+     * Create a new {@link ConflatingTransmitter}.
+     *
+     * @param transmitter The {@link Transmitter} used to send the {@link Intent}s.
+     * @param intervalMillis The interval in milliseconds at which pending
+     *                       {@link Intent}s are sent.
+     * @param conflationKey The {@link ConflationKey} deciding which {@link Intent}s
+     *                      replace each other.
+     * @throws IllegalArgumentException if the interval is not positive.
+     */
+    public ConflatingTransmitter(Transmitter transmitter, long intervalMillis, ConflationKey conflationKey) {
+        this(transmitter, intervalMillis, conflationKey, DEFAULT_MAX_UNKEYED_INTENTS);
+    }
+
+    /**
+     * Create a new {@link ConflatingTransmitter}.
+     *
+     * @param transmitter The {@link Transmitter} used to send the {@link Intent}s.
+     * @param intervalMillis The interval in milliseconds at which pending
+     *                       {@link Intent}s are sent.
+     * @param conflationKey The {@link ConflationKey} deciding which {@link Intent}s
+     *                      replace each other.
+     * @param maxUnkeyedIntents The maximum number of pending {@link Intent}s without
+     *                          key. If there are more, the oldest ones are dropped.
+     * @throws IllegalArgumentException if the interval or the maximum number of
+     *                                  {@link Intent}s without key is not positive.
+     */
+    public ConflatingTransmitter(Transmitter transmitter, long intervalMillis, ConflationKey conflationKey, int maxUnkeyedIntents) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+
+        if (conflationKey == null) {
+            throw new IllegalArgumentException("Conflation key must not be null");
+        }
+
+        if (maxUnkeyedIntents <= 0) {
+            throw new IllegalArgumentException("Maximum number of Intents without key must be positive");
+        }
+
+        this.transmitter = transmitter;
+        this.intervalMillis = intervalMillis;
+        this.conflationKey = conflationKey;
+        this.maxUnkeyedIntents = maxUnkeyedIntents;
+
+        this.flushThread = new Thread("ANI/ConflatingTransmitter") {
+            @Override
+            public void run() {
+                flushPeriodically();
+            }
+        };
+        this.flushThread.setDaemon(true);
+        this.flushThread.start();
+    }
+
+    /**
+     * Queue an {@link Intent} for sending with the next flush, replacing a pending
+     * {@link Intent} with the same key. If the {@link Intent} has no key and the
+     * maximum number of pending {@link Intent}s without key has been reached, the
+     * oldest of them is dropped.
+     *
+     * @param intent The {@link Intent} to send.
+     * @throws IllegalStateException if this {@link ConflatingTransmitter} has been closed.
+     */
+    public void transmit(Intent intent) {
+        Object key = conflationKey.getKey(intent);
+
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Transmitter closed");
+            }
+
+            if (key == null) {
+                // A unique key keeps Intents without key in order with all others
+                pendingIntents.put(new UnkeyedIntent(), intent);
+                pendingUnkeyedCount++;
+                dropOldestUnkeyedIntents();
+            } else if (pendingIntents.put(key, intent) != null) {
+                transmitter.getMetricsRecorder().record(Metric.INTENTS_CONFLATED, 1);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of {@link Intent}s waiting for the next flush.
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pendingIntents.size();
+        }
+    }
+
+    /**
+     * Send all pending {@link Intent}s now instead of waiting for the next flush.
+     *
+     * If sending fails because of the network, the {@link Intent}s are kept for the
+     * next flush unless newer {@link Intent}s with the same key have been passed to
+     * {@link #transmit(Intent)} in the meantime or the maximum number of pending
+     * {@link Intent}s without key has been exceeded. {@link Intent}s that could not
+     * be serialized are dropped.
+     *
+     * @throws TransmitterException if the {@link Intent}s could not be transmitted.
+     */
+    public void flush() throws TransmitterException {
+        Map<Object, Intent> intents = takePendingIntents();
+
+        if (intents.isEmpty()) {
+            return;
+        }
+
+        try {
+            transmitter.transmit(new ArrayList<Intent>(intents.values()));
+        } catch (TransmitterException exception) {
+            if (exception.getCause() instanceof IOException) {
+                restorePendingIntents(intents);
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * Stop the flush thread after sending the pending {@link Intent}s a last time
+     * and close the wrapped {@link Transmitter}.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+    private Map<Object, Intent> takePendingIntents() {
+        synchronized (lock) {
+            Map<Object, Intent> intents = pendingIntents;
+            pendingIntents = new LinkedHashMap<Object, Intent>();
+            pendingUnkeyedCount = 0;
+
+            return intents;
+        }
+    }
+
+    /**
+     * Put Intents that could not be sent back in front of the pending Intents,
+     * keeping newer Intents with the same key.
+     */
+    private void restorePendingIntents(Map<Object, Intent> intents) {
+        synchronized (lock) {
+            for (Object key : intents.keySet()) {
+                if (key instanceof UnkeyedIntent) {
+                    pendingUnkeyedCount++;
+                }
+            }
+
+            intents.putAll(pendingIntents);
+            pendingIntents = intents;
+
+            dropOldestUnkeyedIntents();
+        }
+    }
+
+    /**
+     * Drop the oldest pending Intents without key until no more than the maximum
+     * number is left. Must be called while holding the lock.
+     */
+    private void dropOldestUnkeyedIntents() {
+        Iterator<Object> keys = pendingIntents.keySet().iterator();
+
+        while (pendingUnkeyedCount > maxUnkeyedIntents && keys.hasNext()) {
+            if (keys.next() instanceof UnkeyedIntent) {
+                keys.remove();
+                pendingUnkeyedCount--;
+                transmitter.getMetricsRecorder().record(Metric.SEND_QUEUE_DROPPED, 1);
+            }
+        }
+    }
+
+    private void flushPeriodically() {
+        boolean running = true;
+
+        while (running) {
+            synchronized (lock) {
+                long deadline = System.nanoTime() / 1000000 + intervalMillis;
+                long remaining = intervalMillis;
+
+                while (!closed && remaining > 0) {
+                    try {
+                        lock.wait(remaining);
+                    } catch (InterruptedException exception) {
+                        // Keep waiting until closed or the interval is over
+                    }
+                    remaining = deadline - System.nanoTime() / 1000000;
+                }
+
+                running = !closed;
+            }
+
+            try {
+                flush();
+            } catch (TransmitterException exception) {
+                // Failures are recorded by the transmitter; Intents that failed because
+                // of the network are kept for the next flush, all others are dropped.
+            } catch (IllegalStateException exception) {
+                // The transmitter has been closed by someone else.
+                break;
+            } catch (RuntimeException exception) {
+                // Keep the flush thread alive; the Intents of this flush are dropped.
+            }
+        }
+
+        transmitter.close();
+    }
+
+    /**
+     * Unique key of a pending Intent without {@link ConflationKey}.
+     */
+    private static final class UnkeyedIntent {
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.transmitter;
+
+import android.content.Intent;
+
+/**
+ * Determines which {@link Intent}s supersede each other in a {@link ConflatingTransmitter}.
+ * Of all pending {@link Intent}s with equal keys only the newest one is sent.
+ */
+public interface ConflationKey {
+    /**
+     * Uses the action of an {@link Intent} as key.
+     */
+    public static final ConflationKey ACTION = new ConflationKey() {
+        @Override
+        public Object getKey(Intent intent) {
+            return intent.getAction();
+        }
+    };
+
+    /**
+     * Returns the key of the given {@link Intent}. The key must implement
+     * {@link Object#equals(Object)} and {@link Object#hashCode()}.
+     *
+     * @param intent The {@link Intent} to return the key for.
+     * @return The key or null if the {@link Intent} should never be replaced
+     *         by another one.
+     */
+    public Object getKey(Intent intent);
+}
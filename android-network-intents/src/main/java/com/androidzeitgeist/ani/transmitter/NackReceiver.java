@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.transmitter;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+
+import com.androidzeitgeist.ani.internal.ByteReader;
+import com.androidzeitgeist.ani.internal.PacketFormat;
+
+/**
+ * Thread receiving NACKs from receivers of reliable packets and sending the
+ * requested packets again.
+ */
+/* package-private */ class NackReceiver extends Thread {
+    private static final int MAXIMUM_NACK_SIZE = 64;
+
+    /**
+     * Upper limit for the number of packets requested by a single NACK. Matches
+     * the window used by receivers to detect missing packets.
+     */
+    private static final int MAXIMUM_REQUESTED_PACKETS = 64;
+
+    private final Transmitter transmitter;
+    private final long senderId;
+    private final RetransmitBuffer retransmitBuffer;
+    private final DatagramSocket socket;
+
+    /**
+     * Create a new {@link NackReceiver} listening on an ephemeral port.
+     *
+     * @throws SocketException if the socket could not be created.
+     */
+    /* package-private */ NackReceiver(Transmitter transmitter, long senderId, RetransmitBuffer retransmitBuffer) throws SocketException {
+        super("ANI/NackReceiver");
+        setDaemon(true);
+
+        this.transmitter = transmitter;
+        this.senderId = senderId;
+        this.retransmitBuffer = retransmitBuffer;
+        this.socket = new DatagramSocket();
+    }
+
+    /**
+     * Returns the port NACKs should be sent to.
+     */
+    /* package-private */ int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Stop receiving NACKs and close the socket.
+     */
+    /* package-private */ void close() {
+        interrupt();
+        socket.close();
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = new byte[MAXIMUM_NACK_SIZE];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+        while (!isInterrupted()) {
+            try {
+                packet.setData(buffer);
+                socket.receive(packet);
+            } catch (IOException exception) {
+                // The socket has been closed
+                break;
+            }
+
+            try {
+                handleNack(buffer, packet.getLength());
+            } catch (IOException exception) {
+                // Ignore invalid NACKs
+            }
+        }
+    }
+
+    /* package-private */ void handleNack(byte[] data, int length) throws IOException {
+        ByteReader reader = new ByteReader(data, 0, length);
+
+        if (PacketFormat.readHeader(reader) != PacketFormat.FLAG_NACK || reader.readLong() != senderId) {
+            return;
+        }
+
+        int firstSequence = reader.readInt();
+        int count = Math.min(reader.readVarInt(), MAXIMUM_REQUESTED_PACKETS);
+        long now = System.nanoTime() / 1000000;
+
+        for (int i = 0; i < count; i++) {
+            byte[] missed = retransmitBuffer.getForRetransmission(firstSequence + i, now);
+
+            if (missed != null) {
+                transmitter.retransmit(missed);
+            }
+        }
+    }
+}
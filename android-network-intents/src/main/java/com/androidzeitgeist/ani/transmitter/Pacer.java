@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.transmitter;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Token bucket limiting the rate of sent packets and bytes. Every packet takes
+ * one packet token and one token per byte. Tokens are refilled continuously at
+ * the configured rates up to the burst size. If there are not enough tokens, the
+ * sender waits until the missing tokens have been refilled.
+ */
+/* package-private */ class Pacer {
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    private final double packetsPerNano;
+    private final double bytesPerNano;
+    private final double burstPackets;
+    private final double burstBytes;
+
+    private double packetTokens;
+    private double byteTokens;
+    private long lastRefill;
+
+    /**
+     * @param packetsPerSecond The maximum number of packets per second or 0 for no limit.
+     * @param bytesPerSecond The maximum number of bytes per second or 0 for no limit.
+     * @param burstPackets The number of packets that can be sent at once after a pause.
+     * @param burstBytes The number of bytes that can be sent at once after a pause.
+     * @param now The current time in nanoseconds.
+     */
+    /* package-private */ Pacer(double packetsPerSecond, long bytesPerSecond, int burstPackets, int burstBytes, long now) {
+        this.packetsPerNano = packetsPerSecond / NANOS_PER_SECOND;
+        this.bytesPerNano = bytesPerSecond / NANOS_PER_SECOND;
+        this.burstPackets = burstPackets;
+        this.burstBytes = burstBytes;
+
+        this.packetTokens = burstPackets;
+        this.byteTokens = burstBytes;
+        this.lastRefill = now;
+    }
+
+    /**
+     * Wait until a packet of the given size may be sent.
+     *
+     * @return The time in nanoseconds the caller has been delayed.
+     * @throws InterruptedIOException if the thread has been interrupted while waiting.
+     */
+    /* package-private */ long acquire(int bytes) throws InterruptedIOException {
+        long delay = reserve(bytes, System.nanoTime());
+
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while pacing");
+            }
+        }
+
+        return delay;
+    }
+
+    /**
+     * Take the tokens for a packet of the given size and return how long the
+     * caller has to wait before sending it. Tokens may be taken in advance, so
+     * that concurrent callers queue up behind each other.
+     *
+     * @param now The current time in nanoseconds.
+     * @return The time in nanoseconds to wait.
+     */
+    /* package-private */ synchronized long reserve(int bytes, long now) {
+        long elapsed = now - lastRefill;
+        lastRefill = now;
+
+        long delay = 0;
+
+        if (packetsPerNano > 0) {
+            packetTokens = Math.min(burstPackets, packetTokens + elapsed * packetsPerNano) - 1;
+            if (packetTokens < 0) {
+                delay = (long) Math.ceil(-packetTokens / packetsPerNano);
+            }
+        }
+
+        if (bytesPerNano > 0) {
+            byteTokens = Math.min(burstBytes, byteTokens + elapsed * bytesPerNano) - bytes;
+            if (byteTokens < 0) {
+                delay = Math.max(delay, (long) Math.ceil(-byteTokens / bytesPerNano));
+            }
+        }
+
+        return delay;
+    }
+}
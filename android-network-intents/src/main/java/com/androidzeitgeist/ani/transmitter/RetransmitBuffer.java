@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.transmitter;
+
+/**
+ * Ring buffer of recently sent reliable packets, indexed by their sequence number.
+ * Packets are kept until they are overwritten by newer packets or until they
+ * are older than the retention time.
+ */
+/* package-private */ class RetransmitBuffer {
+    /**
+     * Minimum time between two retransmissions of the same packet. Multiple
+     * receivers missing the same packet will all send a NACK for it, but a
+     * single retransmission to the group is enough.
+     */
+    private static final long RETRANSMIT_HOLDOFF_MILLIS = 20;
+
+    private final int capacity;
+    private final long retentionMillis;
+
+    private final int[] sequences;
+    private final byte[][] packets;
+    private final long[] sentTimes;
+    private final long[] retransmitTimes;
+
+    /**
+     * @param capacity The maximum number of packets to keep.
+     * @param retentionMillis The time in milliseconds to keep a packet.
+     */
+    /* package-private */ RetransmitBuffer(int capacity, long retentionMillis) {
+        this.capacity = capacity;
+        this.retentionMillis = retentionMillis;
+
+        this.sequences = new int[capacity];
+        this.packets = new byte[capacity][];
+        this.sentTimes = new long[capacity];
+        this.retransmitTimes = new long[capacity];
+    }
+
+    /**
+     * Keep a sent packet.
+     */
+    /* package-private */ synchronized void add(int sequence, byte[] packet, long now) {
+        int slot = slot(sequence);
+
+        sequences[slot] = sequence;
+        packets[slot] = packet;
+        sentTimes[slot] = now;
+        retransmitTimes[slot] = Long.MIN_VALUE;
+    }
+
+    /**
+     * Returns the packet with the given sequence number if it should be sent again
+     * or null if it is not available anymore or has just been sent again.
+     */
+    /* package-private */ synchronized byte[] getForRetransmission(int sequence, long now) {
+        int slot = slot(sequence);
+
+        if (packets[slot] == null || sequences[slot] != sequence) {
+            return null;
+        }
+
+        if (now - sentTimes[slot] > retentionMillis) {
+            packets[slot] = null;
+            return null;
+        }
+
+        if (retransmitTimes[slot] != Long.MIN_VALUE && now - retransmitTimes[slot] < RETRANSMIT_HOLDOFF_MILLIS) {
+            return null;
+        }
+
+        retransmitTimes[slot] = now;
+        return packets[slot];
+    }
+
+    private int slot(int sequence) {
+        int slot = sequence % capacity;
+        return slot < 0 ? slot + capacity : slot;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.transmitter;
+
+import android.content.Intent;
+
+/**
+ * A {@link TransmitCallback} is notified by an {@link AsyncTransmitter} once an
+ * {@link Intent} has been sent or could not be sent.
+ *
+ * Callbacks are invoked on the sender thread of the {@link AsyncTransmitter}, or
+ * on the calling thread if the {@link Intent} has been dropped right away.
+ */
+public interface TransmitCallback {
+    /**
+     * The {@link Intent} has been sent.
+     *
+     * @param intent The sent {@link Intent}.
+     */
+    public void onTransmitted(Intent intent);
+
+    /**
+     * The {@link Intent} could not be sent, either because of a network error or
+     * because it has been dropped from the queue.
+     *
+     * @param intent The {@link Intent} that has not been sent.
+     * @param exception The reason why the {@link Intent} has not been sent.
+     */
+    public void onTransmitFailed(Intent intent, TransmitterException exception);
+}
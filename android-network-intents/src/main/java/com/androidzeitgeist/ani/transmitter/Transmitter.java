@@ -16,24 +16,83 @@
 
 package com.androidzeitgeist.ani.transmitter;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.content.Intent;
 
+import com.androidzeitgeist.ani.SocketOptions;
+import com.androidzeitgeist.ani.codec.IntentCodec;
+import com.androidzeitgeist.ani.codec.IntentCodecException;
+import com.androidzeitgeist.ani.codec.UriIntentCodec;
 import com.androidzeitgeist.ani.discovery.Discovery;
 import com.androidzeitgeist.ani.internal.AndroidNetworkIntents;
+import com.androidzeitgeist.ani.internal.BufferedIntentCodec;
+import com.androidzeitgeist.ani.internal.ByteWriter;
+import com.androidzeitgeist.ani.internal.Compression;
+import com.androidzeitgeist.ani.internal.PacketFormat;
+import com.androidzeitgeist.ani.internal.Sockets;
+import com.androidzeitgeist.ani.metrics.CounterMetrics;
+import com.androidzeitgeist.ani.metrics.Metric;
+import com.androidzeitgeist.ani.metrics.MetricsRecorder;
 
 /**
  * Transmitter class for sending {@link Intent}s through network.
+ *
+ * By default every call to {@link #transmit(Intent)} opens and closes its own
+ * socket. Callers sending many {@link Intent}s can keep sockets open between
+ * calls by setting a socket pool size with {@link #setSocketPoolSize(int)}. In
+ * this case the {@link Transmitter} should be closed with {@link #close()} once
+ * it is no longer needed.
+ *
+ * {@link Intent}s are sent to the multicast group unless they are sent to specific
+ * peers using {@link #transmit(Collection, Collection)}.
  */
-public class Transmitter {
+public class Transmitter implements Closeable {
+    private static final byte[] EMPTY = new byte[0];
+
     private String multicastAddress;
     private int port;
+    private volatile InetSocketAddress destination;
+    private IntentCodec codec = new UriIntentCodec();
+    private int batchPacketSize;
+    private int compressionThreshold;
+    private int fragmentSize;
+    private final AtomicInteger nextMessageId = new AtomicInteger(new Random().nextInt());
+    private volatile boolean sequenced;
+    private final long senderId = new Random().nextLong();
+    private final AtomicInteger nextSequence = new AtomicInteger();
+    private volatile RetransmitBuffer retransmitBuffer;
+    private NackReceiver nackReceiver;
+    private volatile Pacer pacer;
+    private volatile SocketOptions socketOptions;
+    private volatile MetricsRecorder metrics = new CounterMetrics();
+
+    private final Queue<MulticastSocket> idleSockets = new ConcurrentLinkedQueue<MulticastSocket>();
+    private final AtomicInteger idleSocketCount = new AtomicInteger();
+    private volatile int socketPoolSize;
+    private volatile boolean closed;
+
+    private final ThreadLocal<SendBuffers> sendBuffers = new ThreadLocal<SendBuffers>() {
+        @Override
+        protected SendBuffers initialValue() {
+            return new SendBuffers();
+        }
+    };
 
     /**
      * Creates a new {@link Transmitter} instance that will sent {@link Intent}s to
@@ -71,19 +130,381 @@ public class Transmitter {
         this.port = port;
     }
 
+    /**
+     * Creates a new {@link Transmitter} instance that will sent {@link Intent}s to
+     * the given, already resolved multicast address and port.
+     *
+     * @param multicastAddress The destination multicast address.
+     * @param port The destination network port.
+     */
+    public Transmitter(InetAddress multicastAddress, int port) {
+        this(new InetSocketAddress(multicastAddress, port));
+    }
+
+    /**
+     * Creates a new {@link Transmitter} instance that will sent {@link Intent}s to
+     * the given, already resolved multicast address and port.
+     *
+     * @param destination The destination multicast address and port.
+     * @throws IllegalArgumentException if the address of the destination is unresolved.
+     */
+    public Transmitter(InetSocketAddress destination) {
+        if (destination.isUnresolved()) {
+            throw new IllegalArgumentException("Destination address is unresolved");
+        }
+
+        this.multicastAddress = destination.getAddress().getHostAddress();
+        this.port = destination.getPort();
+        this.destination = destination;
+    }
+
+    /**
+     * Set the {@link IntentCodec} used to serialize {@link Intent}s. The default
+     * {@link UriIntentCodec} is understood by all receivers. Use a
+     * {@link com.androidzeitgeist.ani.codec.BinaryIntentCodec} for smaller packets
+     * if all receivers support it.
+     *
+     * @param codec The {@link IntentCodec} to use.
+     */
+    public void setIntentCodec(IntentCodec codec) {
+        if (codec == null) {
+            throw new IllegalArgumentException("Codec must not be null");
+        }
+
+        this.codec = codec;
+    }
+
+    /**
+     * Set the {@link SocketOptions} applied to the sockets sending packets, e.g.
+     * to change the time-to-live or the outgoing network interface. The options
+     * are applied whenever a new socket is created.
+     *
+     * @param socketOptions The {@link SocketOptions} to apply or null for the
+     *                      system defaults.
+     */
+    public void setSocketOptions(SocketOptions socketOptions) {
+        this.socketOptions = socketOptions;
+    }
+
+    /**
+     * Pack multiple {@link Intent}s passed to {@link #transmit(Collection)} into
+     * a single packet of up to the given size. An {@link Intent} that does not
+     * fit into a packet together with others is sent on its own.
+     *
+     * Older versions of this library can not receive packets containing multiple
+     * {@link Intent}s. The default size of 0 disables packing and sends every
+     * {@link Intent} in its own packet.
+     *
+     * @param batchPacketSize The maximum size of a packet in bytes, e.g.
+     *                        {@link AndroidNetworkIntents#DEFAULT_BATCH_PACKET_SIZE}
+     *                        to stay below the MTU of most networks.
+     * @throws IllegalArgumentException if the size is negative.
+     */
+    public void setBatchPacketSize(int batchPacketSize) {
+        if (batchPacketSize < 0) {
+            throw new IllegalArgumentException("Batch packet size must not be negative");
+        }
+
+        this.batchPacketSize = batchPacketSize;
+    }
+
+    /**
+     * Compress packets of at least the given size before sending them. Large
+     * {@link Intent}s, e.g. with long string extras, will then need fewer IP
+     * fragments and are less likely to get lost. A packet is only sent compressed
+     * if compressing actually made it smaller.
+     *
+     * Older versions of this library can not receive compressed packets. The
+     * default threshold of 0 disables compression.
+     *
+     * @param compressionThreshold The minimum size of a packet in bytes to compress it.
+     * @throws IllegalArgumentException if the threshold is negative.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        if (compressionThreshold < 0) {
+            throw new IllegalArgumentException("Compression threshold must not be negative");
+        }
+
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Stamp every packet with the id of this {@link Transmitter} and a sequence
+     * number. Receiving {@link Discovery} instances use them to drop packets they
+     * have already seen, e.g. if a packet arrives on multiple interfaces, and to
+     * count lost packets. All {@link Intent}s of a batch share a sequence number.
+     *
+     * Older versions of this library can not receive sequenced packets. Sequencing
+     * is disabled by default.
+     *
+     * @param sequenced True to stamp packets with a sequence number.
+     */
+    public void setSequenced(boolean sequenced) {
+        this.sequenced = sequenced;
+    }
+
+    /**
+     * Enable reliable mode: every packet is stamped with a sequence number (see
+     * {@link #setSequenced(boolean)}) and kept for retransmission. Receivers that
+     * detect a gap in the sequence numbers send a negative acknowledgement (NACK)
+     * to this {@link Transmitter}, which then sends only the missed packets again.
+     * Packets are kept until they are older than the retention time or have been
+     * overwritten by newer packets.
+     *
+     * NACKs are received on a separate socket bound to an ephemeral port, which
+     * is opened with the first reliable packet and closed by {@link #close()}.
+     * A packet can only be recovered once a later packet has arrived, so the
+     * last packet of a burst is not protected.
+     *
+     * Older versions of this library can not receive reliable packets. Reliable
+     * mode is disabled by default.
+     *
+     * @param capacity The maximum number of packets to keep or 0 to disable
+     *                 reliable mode.
+     * @param retentionMillis The time in milliseconds to keep a packet.
+     * @throws IllegalArgumentException if capacity or retention time are negative.
+     */
+    public synchronized void setRetransmitBuffer(int capacity, long retentionMillis) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+
+        if (retentionMillis < 0) {
+            throw new IllegalArgumentException("Retention time must not be negative");
+        }
+
+        if (capacity == 0) {
+            retransmitBuffer = null;
+            stopNackReceiver();
+            return;
+        }
+
+        RetransmitBuffer buffer = new RetransmitBuffer(capacity, retentionMillis);
+        retransmitBuffer = buffer;
+
+        // Let a running receiver use the new buffer
+        stopNackReceiver();
+    }
+
+    /**
+     * Limit the rate at which packets are sent. See
+     * {@link #setPacing(double, long, int, int)}. The burst allows a single packet
+     * of up to {@link AndroidNetworkIntents#DEFAULT_BATCH_PACKET_SIZE} bytes.
+     *
+     * @param packetsPerSecond The maximum number of packets per second or 0 for no limit.
+     * @param bytesPerSecond The maximum number of bytes per second or 0 for no limit.
+     */
+    public void setPacing(double packetsPerSecond, long bytesPerSecond) {
+        setPacing(packetsPerSecond, bytesPerSecond, 1, AndroidNetworkIntents.DEFAULT_BATCH_PACKET_SIZE);
+    }
+
+    /**
+     * Limit the rate at which packets are sent using a token bucket. Bursty callers
+     * otherwise easily overflow the receive buffers of other devices or the
+     * multicast queue of the access point, which causes mass drops.
+     *
+     * Calls to {@link #transmit(Intent)} block until the packet may be sent. The
+     * time calls have been delayed is recorded as {@link Metric#PACING_DELAY}.
+     * After a pause up to the given burst may be sent without delay.
+     *
+     * Pacing is disabled by default.
+     *
+     * @param packetsPerSecond The maximum number of packets per second or 0 for no limit.
+     * @param bytesPerSecond The maximum number of bytes per second or 0 for no limit.
+     * @param burstPackets The number of packets that may be sent at once.
+     * @param burstBytes The number of bytes that may be sent at once.
+     * @throws IllegalArgumentException if a rate or burst is negative or the
+     *                                  packet burst is 0 while packets are limited.
+     */
+    public void setPacing(double packetsPerSecond, long bytesPerSecond, int burstPackets, int burstBytes) {
+        if (packetsPerSecond < 0 || bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Rate must not be negative");
+        }
+
+        if (burstPackets < 0 || burstBytes < 0) {
+            throw new IllegalArgumentException("Burst must not be negative");
+        }
+
+        if (packetsPerSecond > 0 && burstPackets == 0) {
+            throw new IllegalArgumentException("Packet burst must be at least 1");
+        }
+
+        if (packetsPerSecond == 0 && bytesPerSecond == 0) {
+            this.pacer = null;
+        } else {
+            this.pacer = new Pacer(packetsPerSecond, bytesPerSecond, burstPackets, burstBytes, System.nanoTime());
+        }
+    }
+
+    /**
+     * Split packets larger than the given size into multiple fragments that are
+     * reassembled by the receiving {@link Discovery}. Only complete packets are
+     * delivered to the listener. This avoids relying on IP fragmentation and
+     * allows sending {@link Intent}s larger than the maximum packet size of the
+     * receiver.
+     *
+     * Older versions of this library can not receive fragmented packets. The
+     * default size of 0 disables fragmentation.
+     *
+     * @param fragmentSize The maximum size of a packet in bytes, e.g.
+     *                     {@link AndroidNetworkIntents#DEFAULT_BATCH_PACKET_SIZE}
+     *                     to stay below the MTU of most networks.
+     * @throws IllegalArgumentException if the size is negative or too small to
+     *                                  hold the fragment header.
+     */
+    public void setFragmentSize(int fragmentSize) {
+        if (fragmentSize < 0) {
+            throw new IllegalArgumentException("Fragment size must not be negative");
+        }
+
+        if (fragmentSize > 0 && fragmentSize <= PacketFormat.HEADER_LENGTH + PacketFormat.FRAGMENT_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Fragment size too small: " + fragmentSize);
+        }
+
+        this.fragmentSize = fragmentSize;
+    }
+
+    /**
+     * Set the maximum number of idle sockets this {@link Transmitter} keeps open
+     * between calls to {@link #transmit(Intent)}. Concurrent callers each use
+     * their own socket, so the pool size should match the number of threads
+     * transmitting at the same time. A socket that fails while sending is closed
+     * and replaced by a new one on the next call.
+     *
+     * The default size is 0, which opens and closes a socket for every
+     * {@link Intent}.
+     *
+     * @param socketPoolSize The number of sockets to keep open.
+     * @throws IllegalArgumentException if the size is negative.
+     */
+    public void setSocketPoolSize(int socketPoolSize) {
+        if (socketPoolSize < 0) {
+            throw new IllegalArgumentException("Socket pool size must not be negative");
+        }
+
+        this.socketPoolSize = socketPoolSize;
+
+        trimIdleSockets();
+    }
+
+    /**
+     * Set the {@link MetricsRecorder} that receives metrics about sent packets,
+     * send latency and send failures. The default recorder is a {@link CounterMetrics}
+     * instance.
+     *
+     * @param metrics The {@link MetricsRecorder} to use.
+     */
+    public void setMetricsRecorder(MetricsRecorder metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("Metrics recorder must not be null");
+        }
+
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the {@link MetricsRecorder} of this {@link Transmitter}. Unless replaced
+     * by {@link #setMetricsRecorder(MetricsRecorder)} this is a {@link CounterMetrics}
+     * instance that can be used to take a snapshot of the recorded metrics.
+     */
+    public MetricsRecorder getMetricsRecorder() {
+        return metrics;
+    }
+
     /**
      * Sends an {@link Intent} through the network to any listening {@link Discovery}
      * instance.
      *
      * @param intent The intent to send.
      * @throws TransmitterException if intent could not be transmitted.
+     * @throws IllegalStateException if this {@link Transmitter} has been closed.
      */
     public void transmit(Intent intent) throws TransmitterException {
+        transmit(Collections.singletonList(intent));
+    }
+
+    /**
+     * Sends multiple {@link Intent}s through the network to any listening
+     * {@link Discovery} instance. All {@link Intent}s are sent using the same
+     * socket and, if a batch packet size has been set, packed into as few packets
+     * as possible.
+     *
+     * @param intents The intents to send.
+     * @throws TransmitterException if the intents could not be transmitted. Some
+     *                              of the intents might have been sent already.
+     * @throws IllegalStateException if this {@link Transmitter} has been closed.
+     * @see #setBatchPacketSize(int)
+     */
+    public void transmit(Collection<Intent> intents) throws TransmitterException {
+        transmitTo(intents, null);
+    }
+
+    /**
+     * Sends an {@link Intent} directly to a single peer instead of the multicast
+     * group, e.g. to answer a peer whose address has been passed to
+     * {@link com.androidzeitgeist.ani.discovery.DiscoveryListener#onIntentDiscovered(InetAddress, Intent)}.
+     * The {@link Intent} is sent to the port of this {@link Transmitter}, where it
+     * is received by the {@link Discovery} of the peer like any multicast {@link Intent}.
+     *
+     * @param intent The intent to send.
+     * @param peer The address of the receiving peer.
+     * @throws TransmitterException if intent could not be transmitted.
+     * @throws IllegalStateException if this {@link Transmitter} has been closed.
+     * @see #transmit(Collection, Collection)
+     */
+    public void transmit(Intent intent, InetAddress peer) throws TransmitterException {
+        transmit(Collections.singletonList(intent), Collections.singletonList(peer));
+    }
+
+    /**
+     * Sends multiple {@link Intent}s directly to a set of peers instead of the
+     * multicast group. Every {@link Intent} is serialized once and the resulting
+     * packets are sent to each peer in turn, so on Wi-Fi every packet is sent at
+     * the unicast rate of the peer instead of the lowest basic rate used for
+     * multicast.
+     *
+     * Packets sent to peers are never sequenced (see {@link #setSequenced(boolean)})
+     * because every peer only receives its own subset of the packets of this
+     * {@link Transmitter}. Batching, compression, fragmentation and pacing apply
+     * as for multicast packets, with pacing counting every copy of a packet.
+     *
+     * @param intents The intents to send.
+     * @param peers The addresses of the receiving peers.
+     * @throws TransmitterException if the intents could not be transmitted. Some
+     *                              of the intents might have been sent already.
+     * @throws IllegalStateException if this {@link Transmitter} has been closed.
+     */
+    public void transmit(Collection<Intent> intents, Collection<InetAddress> peers) throws TransmitterException {
+        List<InetSocketAddress> destinations = new ArrayList<InetSocketAddress>(peers.size());
+        for (InetAddress peer : peers) {
+            destinations.add(new InetSocketAddress(peer, port));
+        }
+
+        transmitTo(intents, destinations);
+    }
+
+    /**
+     * Sends the {@link Intent}s to the given peers or, if null, to the multicast group.
+     */
+    private void transmitTo(Collection<Intent> intents, List<InetSocketAddress> peers) throws TransmitterException {
+        if (closed) {
+            throw new IllegalStateException("Transmitter closed");
+        }
+
+        if (peers != null && peers.isEmpty()) {
+            return;
+        }
+
         MulticastSocket socket = null;
+        boolean reusable = false;
 
         try {
-            socket = createSocket();
-            transmit(socket, intent);
+            socket = acquireSocket();
+            transmit(socket, intents, peers);
+            reusable = true;
+        } catch (IntentCodecException exception) {
+            throw new TransmitterException("Could not serialize intent", exception,
+                    sendBuffers.get().transmittedCount);
         } catch (UnknownHostException exception) {
             throw new TransmitterException("Unknown host", exception);
         } catch (SocketException exception) {
@@ -91,31 +512,441 @@ public class Transmitter {
         } catch (IOException exception) {
             throw new TransmitterException("IOException during sending intent", exception);
         } finally {
+            if (!reusable) {
+                metrics.record(Metric.SEND_FAILURES, 1);
+            }
+
             if (socket != null) {
-                socket.close();
+                releaseSocket(socket, reusable);
             }
         }
     }
 
+    /**
+     * Closes all sockets kept open by this {@link Transmitter}. Any further call
+     * to {@link #transmit(Intent)} will throw an {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        trimIdleSockets();
+
+        synchronized (this) {
+            stopNackReceiver();
+        }
+    }
+
+    /**
+     * Send an already serialized packet again. Called by the {@link NackReceiver}
+     * for packets requested by receivers.
+     */
+    /* package-private */ void retransmit(byte[] data) {
+        if (closed) {
+            return;
+        }
+
+        MulticastSocket socket = null;
+        boolean reusable = false;
+
+        try {
+            socket = acquireSocket();
+
+            SendBuffers buffers = sendBuffers.get();
+            buffers.packets = buffers.getGroupPackets(getDestination());
+            sendPacket(socket, buffers, data, 0, data.length);
+
+            metrics.record(Metric.RETRANSMISSIONS, 1);
+            reusable = true;
+        } catch (IOException exception) {
+            metrics.record(Metric.SEND_FAILURES, 1);
+        } finally {
+            if (socket != null) {
+                releaseSocket(socket, reusable);
+            }
+        }
+    }
+
+    /**
+     * Returns the running {@link NackReceiver}, starting it if needed.
+     *
+     * @throws IllegalStateException if this {@link Transmitter} has been closed
+     *         while sending, as a receiver started now would never be closed.
+     */
+    private synchronized NackReceiver getNackReceiver(RetransmitBuffer buffer) throws SocketException {
+        if (closed) {
+            throw new IllegalStateException("Transmitter closed");
+        }
+
+        if (nackReceiver == null) {
+            nackReceiver = new NackReceiver(this, senderId, buffer);
+            nackReceiver.start();
+        }
+
+        return nackReceiver;
+    }
+
+    private void stopNackReceiver() {
+        if (nackReceiver != null) {
+            nackReceiver.close();
+            nackReceiver = null;
+        }
+    }
+
     protected MulticastSocket createSocket() throws IOException {
-        return new MulticastSocket();
+        MulticastSocket socket = new MulticastSocket();
+
+        try {
+            Sockets.apply(socketOptions, socket);
+        } catch (IOException exception) {
+            socket.close();
+            throw exception;
+        }
+
+        return socket;
     }
 
     /**
-     * Actual (private) implementation that serializes the {@link Intent} and sends
-     * it as {@link DatagramPacket}. Used to separate the implementation from the
-     * error handling code.
+     * Returns the destination of all packets. The multicast address is resolved
+     * on first use and then reused for the lifetime of this {@link Transmitter}.
      */
-    private void transmit(MulticastSocket socket, Intent intent) throws IOException {
-        byte[] data = intent.toUri(0).getBytes();
+    private InetSocketAddress getDestination() throws UnknownHostException {
+        InetSocketAddress destination = this.destination;
 
-        DatagramPacket packet = new DatagramPacket(
-            data,
-            data.length,
-            InetAddress.getByName(multicastAddress),
-            port
-        );
+        if (destination == null) {
+            destination = new InetSocketAddress(InetAddress.getByName(multicastAddress), port);
+            this.destination = destination;
+        }
+
+        return destination;
+    }
+
+    private MulticastSocket acquireSocket() throws IOException {
+        MulticastSocket socket = idleSockets.poll();
+
+        if (socket != null) {
+            idleSocketCount.decrementAndGet();
+
+            if (!socket.isClosed()) {
+                return socket;
+            }
+        }
+
+        return createSocket();
+    }
+
+    /**
+     * Returns the socket to the pool if it can be used again and the pool is not
+     * full. Otherwise the socket will be closed.
+     */
+    private void releaseSocket(MulticastSocket socket, boolean reusable) {
+        if (reusable && !closed) {
+            if (idleSocketCount.incrementAndGet() <= socketPoolSize) {
+                idleSockets.offer(socket);
+
+                if (closed) {
+                    // close() might have drained the pool before the socket was added.
+                    trimIdleSockets();
+                }
+
+                return;
+            }
+
+            idleSocketCount.decrementAndGet();
+        }
+
+        socket.close();
+    }
+
+    /**
+     * Closes idle sockets until the pool is within its size limit, or empty if
+     * this {@link Transmitter} has been closed.
+     */
+    private void trimIdleSockets() {
+        while (closed || idleSocketCount.get() > socketPoolSize) {
+            MulticastSocket socket = idleSockets.poll();
+
+            if (socket == null) {
+                return;
+            }
+
+            idleSocketCount.decrementAndGet();
+            socket.close();
+        }
+    }
+
+    /**
+     * Actual (private) implementation that serializes the {@link Intent}s and sends
+     * them as {@link DatagramPacket}s. Used to separate the implementation from the
+     * error handling code. Every packet is sent to each of the given peers or, if
+     * null, to the multicast group.
+     */
+    private void transmit(MulticastSocket socket, Collection<Intent> intents, List<InetSocketAddress> peers) throws IOException, IntentCodecException {
+        boolean directed = peers != null;
+        SendBuffers buffers = sendBuffers.get();
+
+        if (directed) {
+            buffers.packets = new DatagramPacket[peers.size()];
+            for (int i = 0; i < peers.size(); i++) {
+                buffers.packets[i] = new DatagramPacket(EMPTY, 0, peers.get(i));
+            }
+        } else {
+            buffers.packets = buffers.getGroupPackets(getDestination());
+        }
+
+        ByteWriter data = buffers.intent;
+        buffers.transmittedCount = 0;
+
+        int batchPacketSize = this.batchPacketSize;
+        if (batchPacketSize == 0 || intents.size() == 1) {
+            for (Intent intent : intents) {
+                data.reset();
+                encode(intent, data);
+                sendPayload(socket, buffers, data.getBuffer(), 0, data.size(), false, directed);
+                buffers.transmittedCount++;
+            }
+            return;
+        }
+
+        ByteWriter frame = buffers.batch;
+        int firstOffset = 0;
+        int firstLength = 0;
+        int count = 0;
 
-        socket.send(packet);
+        for (Intent intent : intents) {
+            data.reset();
+            encode(intent, data);
+
+            int length = data.size();
+            int entrySize = ByteWriter.varIntSize(length) + length;
+
+            if (count > 0 && frame.size() + entrySize > batchPacketSize) {
+                sendBatch(socket, buffers, frame, firstOffset, firstLength, count, directed);
+                count = 0;
+            }
+
+            if (count == 0) {
+                frame.reset();
+                PacketFormat.writeHeader(frame, PacketFormat.FLAG_BATCH);
+                firstOffset = frame.size() + ByteWriter.varIntSize(length);
+                firstLength = length;
+            }
+
+            frame.writeVarInt(length);
+            frame.writeBytes(data.getBuffer(), 0, length);
+            count++;
+        }
+
+        if (count > 0) {
+            sendBatch(socket, buffers, frame, firstOffset, firstLength, count, directed);
+        }
+    }
+
+    /**
+     * Serialize the {@link Intent} into the given buffer, without an intermediate
+     * array if the codec supports it. Runtime exceptions thrown by the codec, e.g.
+     * for invalid extras, are reported as {@link IntentCodecException}.
+     */
+    private void encode(Intent intent, ByteWriter writer) throws IntentCodecException {
+        try {
+            if (codec instanceof BufferedIntentCodec) {
+                ((BufferedIntentCodec) codec).encode(intent, writer);
+            } else {
+                writer.writeBytes(codec.encode(intent));
+            }
+        } catch (RuntimeException exception) {
+            throw new IntentCodecException("Could not serialize intent", exception);
+        }
+    }
+
+    /**
+     * Send a batch frame. A frame containing a single {@link Intent} is sent
+     * without frame header, so that any receiver can read it.
+     */
+    private void sendBatch(MulticastSocket socket, SendBuffers buffers, ByteWriter frame, int firstOffset, int firstLength, int count, boolean directed) throws IOException {
+        if (count == 1) {
+            sendPayload(socket, buffers, frame.getBuffer(), firstOffset, firstLength, false, directed);
+        } else {
+            sendPayload(socket, buffers, frame.getBuffer(), 0, frame.size(), true, directed);
+        }
+
+        buffers.transmittedCount += count;
+    }
+
+    /**
+     * Send a single serialized {@link Intent} or a batch frame, stamped with a
+     * sequence number if enabled and compressed if it reaches the compression
+     * threshold. Directed packets are never sequenced.
+     */
+    private void sendPayload(MulticastSocket socket, SendBuffers buffers, byte[] data, int offset, int length, boolean batch, boolean directed) throws IOException {
+        int compressionThreshold = this.compressionThreshold;
+        RetransmitBuffer retransmitBuffer = directed ? null : this.retransmitBuffer;
+        boolean sequenced = !directed && (this.sequenced || retransmitBuffer != null);
+        boolean compress = compressionThreshold > 0 && length >= compressionThreshold;
+
+        if (!sequenced && !compress) {
+            sendPacket(socket, buffers, data, offset, length);
+            return;
+        }
+
+        int nackPort = retransmitBuffer != null ? getNackReceiver(retransmitBuffer).getPort() : 0;
+
+        int payloadOffset = batch ? offset + PacketFormat.HEADER_LENGTH : offset;
+        int payloadLength = batch ? length - PacketFormat.HEADER_LENGTH : length;
+        int flags = batch ? PacketFormat.FLAG_BATCH : 0;
+        int sequence = sequenced ? nextSequence.getAndIncrement() : 0;
+
+        int uncompressedSize = length;
+        if (sequenced) {
+            uncompressedSize = PacketFormat.HEADER_LENGTH + PacketFormat.SEQUENCE_HEADER_LENGTH + payloadLength;
+            if (nackPort != 0) {
+                uncompressedSize += PacketFormat.NACK_PORT_LENGTH;
+            }
+        }
+
+        ByteWriter frame = buffers.frame;
+        frame.reset();
+
+        if (compress) {
+            writeFrameHeader(frame, flags | PacketFormat.FLAG_COMPRESSED, sequenced, sequence, nackPort);
+            frame.writeVarInt(payloadLength);
+            Compression.deflate(data, payloadOffset, payloadLength, frame);
+
+            if (frame.size() < uncompressedSize) {
+                sendFrame(socket, buffers, frame, sequence, retransmitBuffer);
+                return;
+            }
+
+            if (!sequenced) {
+                sendPacket(socket, buffers, data, offset, length);
+                return;
+            }
+
+            frame.reset();
+        }
+
+        writeFrameHeader(frame, flags, true, sequence, nackPort);
+        frame.writeBytes(data, payloadOffset, payloadLength);
+        sendFrame(socket, buffers, frame, sequence, retransmitBuffer);
+    }
+
+    private void writeFrameHeader(ByteWriter frame, int flags, boolean sequenced, int sequence, int nackPort) {
+        if (!sequenced) {
+            PacketFormat.writeHeader(frame, flags);
+            return;
+        }
+
+        if (nackPort != 0) {
+            PacketFormat.writeHeader(frame, flags | PacketFormat.FLAG_SEQUENCED | PacketFormat.FLAG_RELIABLE);
+        } else {
+            PacketFormat.writeHeader(frame, flags | PacketFormat.FLAG_SEQUENCED);
+        }
+
+        frame.writeLong(senderId);
+        frame.writeInt(sequence);
+
+        if (nackPort != 0) {
+            frame.writeShort(nackPort);
+        }
+    }
+
+    /**
+     * Send a sequenced frame and keep it for retransmission if reliable mode is enabled.
+     */
+    private void sendFrame(MulticastSocket socket, SendBuffers buffers, ByteWriter frame, int sequence, RetransmitBuffer retransmitBuffer) throws IOException {
+        if (retransmitBuffer != null) {
+            retransmitBuffer.add(sequence, frame.toByteArray(), System.nanoTime() / 1000000);
+        }
+
+        sendPacket(socket, buffers, frame.getBuffer(), 0, frame.size());
+    }
+
+    /**
+     * Send a packet, split into fragments if it exceeds the fragment size.
+     */
+    private void sendPacket(MulticastSocket socket, SendBuffers buffers, byte[] data, int offset, int length) throws IOException {
+        int fragmentSize = this.fragmentSize;
+
+        if (fragmentSize == 0 || length <= fragmentSize) {
+            send(socket, buffers, data, offset, length);
+            return;
+        }
+
+        int chunkSize = fragmentSize - PacketFormat.HEADER_LENGTH - PacketFormat.FRAGMENT_HEADER_LENGTH;
+        int count = (length + chunkSize - 1) / chunkSize;
+
+        if (count > PacketFormat.MAXIMUM_FRAGMENTS) {
+            throw new IOException("Packet too large to be fragmented: " + length + " bytes");
+        }
+
+        int messageId = nextMessageId.getAndIncrement();
+        ByteWriter fragment = buffers.fragment;
+
+        for (int index = 0; index < count; index++) {
+            int position = index * chunkSize;
+
+            fragment.reset();
+            PacketFormat.writeHeader(fragment, PacketFormat.FLAG_FRAGMENT);
+            fragment.writeInt(messageId);
+            fragment.writeVarInt(index);
+            fragment.writeVarInt(count);
+            fragment.writeBytes(data, offset + position, Math.min(chunkSize, length - position));
+
+            send(socket, buffers, fragment.getBuffer(), 0, fragment.size());
+        }
+    }
+
+    /**
+     * Send the data to the destination of every packet.
+     */
+    private void send(MulticastSocket socket, SendBuffers buffers, byte[] data, int offset, int length) throws IOException {
+        for (DatagramPacket packet : buffers.packets) {
+            packet.setData(data, offset, length);
+
+            Pacer pacer = this.pacer;
+            if (pacer != null) {
+                long delay = pacer.acquire(length);
+                if (delay > 0) {
+                    metrics.record(Metric.PACING_DELAY, delay);
+                }
+            }
+
+            long start = System.nanoTime();
+            socket.send(packet);
+
+            MetricsRecorder metrics = this.metrics;
+            metrics.record(Metric.SEND_TIME, System.nanoTime() - start);
+            metrics.record(Metric.PACKETS_SENT, 1);
+            metrics.record(Metric.BYTES_SENT, length);
+        }
+    }
+
+    /**
+     * Buffers and packets reused by a thread for every packet it sends, so that
+     * sending does not allocate per packet once the buffers have grown to the
+     * largest packet size. Every thread keeps its own buffers, so concurrent
+     * calls never share them.
+     */
+    private static class SendBuffers {
+        private final ByteWriter intent = new ByteWriter();
+        private final ByteWriter batch = new ByteWriter();
+        private final ByteWriter frame = new ByteWriter();
+        private final ByteWriter fragment = new ByteWriter();
+
+        private DatagramPacket[] groupPackets;
+        private DatagramPacket[] packets;
+
+        /**
+         * The number of {@link Intent}s of the current call that have been sent.
+         */
+        private int transmittedCount;
+
+        private DatagramPacket[] getGroupPackets(InetSocketAddress destination) {
+            if (groupPackets == null) {
+                groupPackets = new DatagramPacket[] { new DatagramPacket(EMPTY, 0, destination) };
+            }
+
+            return groupPackets;
+        }
     }
 }
@@ -22,6 +22,8 @@ package com.androidzeitgeist.ani.transmitter;
  */
 @SuppressWarnings("serial")
 public class TransmitterException extends Exception {
+    private final int transmittedCount;
+
     /**
      * Constructs a new {@link TransmitterException} with the current stack trace, the
      * specified detail message and the specified cause.
@@ -30,6 +32,27 @@ public class TransmitterException extends Exception {
      * @param cause the cause of this exception.
      */
     public TransmitterException(String detailMessage, Throwable cause) {
+        this(detailMessage, cause, 0);
+    }
+
+    /**
+     * Constructs a new {@link TransmitterException} for a call that failed after
+     * the first {@link android.content.Intent}s have already been sent.
+     *
+     * @param transmittedCount the number of Intents sent before the failure.
+     */
+    /* package-private */ TransmitterException(String detailMessage, Throwable cause, int transmittedCount) {
         super(detailMessage, cause);
+
+        this.transmittedCount = transmittedCount;
+    }
+
+    /**
+     * Returns the number of {@link android.content.Intent}s, in the order they
+     * have been passed to the {@link Transmitter}, that have been sent before
+     * the failure.
+     */
+    /* package-private */ int getTransmittedCount() {
+        return transmittedCount;
     }
 }
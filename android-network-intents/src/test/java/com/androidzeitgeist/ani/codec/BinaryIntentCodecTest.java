@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.codec;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import android.content.Intent;
+
+/**
+ * Unit tests for the {@link BinaryIntentCodec} class.
+ */
+public class BinaryIntentCodecTest {
+    /**
+     * Calling {@link BinaryIntentCodec#encode(Intent)} returns bytes that start with
+     * the header of the binary format.
+     */
+    @Test
+    public void testEncodedIntentStartsWithHeader() throws Exception {
+        BinaryIntentCodec codec = new BinaryIntentCodec();
+
+        byte[] data = codec.encode(mock(Intent.class));
+
+        Assert.assertTrue(BinaryIntentCodec.isBinary(data, 0, data.length));
+        Assert.assertEquals(BinaryIntentCodec.VERSION, data[2]);
+    }
+
+    /**
+     * Legacy URI packets are not detected as binary packets.
+     */
+    @Test
+    public void testUriIsNotDetectedAsBinary() {
+        byte[] data = "#Intent;action=test;end".getBytes();
+
+        Assert.assertFalse(BinaryIntentCodec.isBinary(data, 0, data.length));
+    }
+
+    /**
+     * An {@link Intent} encoded with {@link BinaryIntentCodec#encode(Intent)} can
+     * be decoded again with {@link BinaryIntentCodec#decode(byte[], int, int)}.
+     */
+    @Test
+    public void testEncodedIntentCanBeDecoded() throws Exception {
+        Intent intent = mock(Intent.class);
+        when(intent.getAction()).thenReturn("com.example.ACTION_TEST");
+        when(intent.getFlags()).thenReturn(42);
+        when(intent.getCategories()).thenReturn(Collections.singleton("com.example.CATEGORY"));
+
+        Intent decodedIntent = mock(Intent.class);
+
+        BinaryIntentCodec codec = spy(new BinaryIntentCodec());
+        doReturn(decodedIntent).when(codec).createIntent();
+
+        byte[] data = codec.encode(intent);
+        Intent result = codec.decode(data, 0, data.length);
+
+        Assert.assertSame(decodedIntent, result);
+
+        verify(decodedIntent).setAction("com.example.ACTION_TEST");
+        verify(decodedIntent).setFlags(42);
+        verify(decodedIntent).addCategory("com.example.CATEGORY");
+    }
+
+    /**
+     * Decoding a truncated binary packet throws an {@link IntentCodecException}.
+     */
+    @Test(expected=IntentCodecException.class)
+    public void testDecodingTruncatedPacketThrowsException() throws Exception {
+        Intent intent = mock(Intent.class);
+        when(intent.getAction()).thenReturn("com.example.ACTION_TEST");
+
+        BinaryIntentCodec codec = spy(new BinaryIntentCodec());
+        doReturn(mock(Intent.class)).when(codec).createIntent();
+
+        byte[] data = codec.encode(intent);
+        codec.decode(data, 0, data.length - 1);
+    }
+
+    /**
+     * The header of an encoded {@link Intent} can be read without decoding it.
+     */
+    @Test
+    public void testDecodeHeader() throws Exception {
+        Intent intent = mock(Intent.class);
+        when(intent.getAction()).thenReturn("com.example.ACTION_TEST");
+        when(intent.getDataString()).thenReturn("http://example.com/");
+        when(intent.getType()).thenReturn("text/plain");
+        when(intent.getCategories()).thenReturn(Collections.singleton("com.example.CATEGORY"));
+
+        BinaryIntentCodec codec = new BinaryIntentCodec();
+        byte[] data = codec.encode(intent);
+
+        IntentHeader header = codec.decodeHeader(data, 0, data.length);
+
+        Assert.assertEquals("com.example.ACTION_TEST", header.getAction());
+        Assert.assertEquals("http", header.getScheme());
+        Assert.assertEquals(Collections.singleton("com.example.CATEGORY"), header.getCategories());
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.codec;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import android.content.Intent;
+
+/**
+ * Unit tests for the {@link CachingIntentCodec} class.
+ */
+public class CachingIntentCodecTest {
+    private static final byte[] PACKET_A = new byte[] { 1, 2, 3, 4 };
+    private static final byte[] PACKET_B = new byte[] { 5, 6, 7, 8 };
+
+    /**
+     * A repeated packet is decoded only once and every call returns a new copy.
+     */
+    @Test
+    public void testRepeatedPacketIsDecodedOnce() throws Exception {
+        IntentCodec delegate = mock(IntentCodec.class);
+        Intent decoded = mock(Intent.class);
+        when(delegate.decode(any(byte[].class), anyInt(), anyInt())).thenReturn(decoded);
+
+        TestCachingIntentCodec codec = new TestCachingIntentCodec(delegate, 4);
+
+        Intent first = codec.decode(PACKET_A, 0, PACKET_A.length);
+        Intent second = codec.decode(PACKET_A.clone(), 0, PACKET_A.length);
+
+        verify(delegate, times(1)).decode(any(byte[].class), anyInt(), anyInt());
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(2, codec.copies);
+        Assert.assertEquals(1, codec.getHitCount());
+        Assert.assertEquals(1, codec.getMissCount());
+    }
+
+    /**
+     * The packet is looked up by the given range only.
+     */
+    @Test
+    public void testPacketIsLookedUpByRange() throws Exception {
+        IntentCodec delegate = mock(IntentCodec.class);
+        when(delegate.decode(any(byte[].class), anyInt(), anyInt())).thenReturn(mock(Intent.class));
+
+        CachingIntentCodec codec = new TestCachingIntentCodec(delegate, 4);
+
+        codec.decode(PACKET_A, 0, PACKET_A.length);
+        codec.decode(new byte[] { 9, 1, 2, 3, 4, 9 }, 1, 4);
+
+        Assert.assertEquals(1, codec.getHitCount());
+    }
+
+    /**
+     * Different packets are decoded separately.
+     */
+    @Test
+    public void testDifferentPacketsAreDecodedSeparately() throws Exception {
+        IntentCodec delegate = mock(IntentCodec.class);
+        when(delegate.decode(any(byte[].class), anyInt(), anyInt())).thenReturn(mock(Intent.class));
+
+        CachingIntentCodec codec = new TestCachingIntentCodec(delegate, 4);
+
+        codec.decode(PACKET_A, 0, PACKET_A.length);
+        codec.decode(PACKET_B, 0, PACKET_B.length);
+
+        verify(delegate, times(2)).decode(any(byte[].class), anyInt(), anyInt());
+        Assert.assertEquals(0, codec.getHitCount());
+        Assert.assertEquals(2, codec.size());
+    }
+
+    /**
+     * The least recently used entry is evicted once the entry limit is reached.
+     */
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+        IntentCodec delegate = mock(IntentCodec.class);
+        when(delegate.decode(any(byte[].class), anyInt(), anyInt())).thenReturn(mock(Intent.class));
+
+        CachingIntentCodec codec = new TestCachingIntentCodec(delegate, 2);
+        byte[] packetC = new byte[] { 9 };
+
+        codec.decode(PACKET_A, 0, PACKET_A.length);
+        codec.decode(PACKET_B, 0, PACKET_B.length);
+        codec.decode(PACKET_A, 0, PACKET_A.length);
+        codec.decode(packetC, 0, packetC.length);
+
+        Assert.assertEquals(2, codec.size());
+        Assert.assertEquals(1, codec.getEvictionCount());
+
+        codec.decode(PACKET_A, 0, PACKET_A.length);
+        Assert.assertEquals(2, codec.getHitCount());
+
+        codec.decode(PACKET_B, 0, PACKET_B.length);
+        Assert.assertEquals(4, codec.getMissCount());
+    }
+
+    /**
+     * Entries are evicted to stay within the byte limit and packets larger than
+     * the limit are not cached at all.
+     */
+    @Test
+    public void testByteLimit() throws Exception {
+        IntentCodec delegate = mock(IntentCodec.class);
+        when(delegate.decode(any(byte[].class), anyInt(), anyInt())).thenReturn(mock(Intent.class));
+
+        CachingIntentCodec codec = new TestCachingIntentCodec(delegate, 10, 6);
+
+        codec.decode(PACKET_A, 0, PACKET_A.length);
+        codec.decode(PACKET_B, 0, PACKET_B.length);
+        Assert.assertEquals(1, codec.size());
+
+        codec.decode(new byte[7], 0, 7);
+        Assert.assertEquals(1, codec.size());
+    }
+
+    /**
+     * A large number of entries does not overflow the default byte limit.
+     */
+    @Test
+    public void testLargeEntryLimit() throws Exception {
+        IntentCodec delegate = mock(IntentCodec.class);
+        when(delegate.decode(any(byte[].class), anyInt(), anyInt())).thenReturn(mock(Intent.class));
+
+        CachingIntentCodec codec = new TestCachingIntentCodec(delegate, 4 * 1024 * 1024);
+
+        codec.decode(PACKET_A, 0, PACKET_A.length);
+        Assert.assertEquals(1, codec.size());
+    }
+
+    /**
+     * The header of a cached packet is taken from the cached {@link Intent}.
+     */
+    @Test
+    public void testHeaderOfCachedPacket() throws Exception {
+        IntentCodec delegate = mock(IntentCodec.class);
+        Intent decoded = mock(Intent.class);
+        when(decoded.getAction()).thenReturn("com.example.BEACON");
+        when(decoded.getCategories()).thenReturn(Collections.singleton("com.example.CATEGORY"));
+        when(delegate.decode(any(byte[].class), anyInt(), anyInt())).thenReturn(decoded);
+
+        CachingIntentCodec codec = new TestCachingIntentCodec(delegate, 4);
+
+        IntentHeader header = codec.decodeHeader(PACKET_A, 0, PACKET_A.length);
+        Assert.assertEquals("com.example.BEACON", header.getAction());
+
+        header = codec.decodeHeader(PACKET_A, 0, PACKET_A.length);
+        Assert.assertTrue(header.getCategories().contains("com.example.CATEGORY"));
+
+        verify(delegate, times(1)).decode(any(byte[].class), anyInt(), anyInt());
+    }
+
+    /**
+     * Decoding the header of a packet that is not cached counts as a miss if the
+     * wrapped codec has no header decoder, and the categories of the cached
+     * {@link Intent} can't be modified through the header.
+     */
+    @Test
+    public void testHeaderOfUncachedPacketCountsMiss() throws Exception {
+        IntentCodec delegate = mock(IntentCodec.class);
+        Intent decoded = mock(Intent.class);
+        Set<String> categories = new HashSet<String>(Collections.singleton("com.example.CATEGORY"));
+        when(decoded.getCategories()).thenReturn(categories);
+        when(delegate.decode(any(byte[].class), anyInt(), anyInt())).thenReturn(decoded);
+
+        CachingIntentCodec codec = new TestCachingIntentCodec(delegate, 4);
+
+        IntentHeader header = codec.decodeHeader(PACKET_A, 0, PACKET_A.length);
+        Assert.assertEquals(0, codec.getHitCount());
+        Assert.assertEquals(1, codec.getMissCount());
+
+        try {
+            header.getCategories().clear();
+            Assert.fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException exception) {
+            // Expected
+        }
+
+        codec.decodeHeader(PACKET_A, 0, PACKET_A.length);
+        Assert.assertEquals(1, codec.getHitCount());
+        Assert.assertEquals(1, codec.getMissCount());
+        Assert.assertEquals(1, categories.size());
+    }
+
+    /**
+     * The hash depends on every byte of the range.
+     */
+    @Test
+    public void testHashDependsOnContent() {
+        Assert.assertEquals(CachingIntentCodec.hash(PACKET_A, 0, 4), CachingIntentCodec.hash(PACKET_A.clone(), 0, 4));
+        Assert.assertNotEquals(CachingIntentCodec.hash(PACKET_A, 0, 4), CachingIntentCodec.hash(PACKET_B, 0, 4));
+        Assert.assertNotEquals(CachingIntentCodec.hash(PACKET_A, 0, 4), CachingIntentCodec.hash(PACKET_A, 0, 3));
+    }
+
+    /**
+     * Copying the {@link Intent} relies on the Android copy constructor, which is
+     * not available in unit tests.
+     */
+    private static class TestCachingIntentCodec extends CachingIntentCodec {
+        private int copies;
+
+        public TestCachingIntentCodec(IntentCodec codec, int maximumEntries) {
+            super(codec, maximumEntries);
+        }
+
+        public TestCachingIntentCodec(IntentCodec codec, int maximumEntries, int maximumBytes) {
+            super(codec, maximumEntries, maximumBytes);
+        }
+
+        @Override
+        protected Intent copy(Intent intent) {
+            copies++;
+            return mock(Intent.class);
+        }
+    }
+}
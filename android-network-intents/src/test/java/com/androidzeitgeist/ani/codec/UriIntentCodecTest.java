@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.codec;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.internal.ByteWriter;
+
+/**
+ * Unit tests for the {@link UriIntentCodec} class.
+ */
+public class UriIntentCodecTest {
+    /**
+     * Action, categories and data scheme are read from the Intent URI.
+     */
+    @Test
+    public void testDecodeHeader() throws Exception {
+        byte[] data = ("geo:0,0?q=test#Intent;action=com.example.ACTION_TEST;"
+            + "category=com.example.ONE;category=com.example.TWO;S.text=a%3Bb;end").getBytes();
+
+        IntentHeader header = new UriIntentCodec().decodeHeader(data, 0, data.length);
+
+        Assert.assertEquals("com.example.ACTION_TEST", header.getAction());
+        Assert.assertEquals("geo", header.getScheme());
+        Assert.assertEquals(2, header.getCategories().size());
+        Assert.assertTrue(header.getCategories().contains("com.example.TWO"));
+    }
+
+    /**
+     * Percent-encoded values are decoded and missing parts are reported as null.
+     */
+    @Test
+    public void testDecodeHeaderWithEncodedActionAndNoData() throws Exception {
+        byte[] data = "#Intent;action=caf%C3%A9%3B;end".getBytes();
+
+        IntentHeader header = new UriIntentCodec().decodeHeader(data, 0, data.length);
+
+        Assert.assertEquals("caf\u00e9;", header.getAction());
+        Assert.assertNull(header.getScheme());
+        Assert.assertTrue(header.getCategories().isEmpty());
+    }
+
+    /**
+     * Bytes that are not an Intent URI are rejected.
+     */
+    @Test(expected = IntentCodecException.class)
+    public void testDecodeHeaderOfInvalidDataThrowsException() throws Exception {
+        byte[] data = "garbage".getBytes();
+
+        new UriIntentCodec().decodeHeader(data, 0, data.length);
+    }
+
+    /**
+     * The URI is written as UTF-8, both into a new array and into a reused
+     * {@link ByteWriter}, independent of the platform's default charset.
+     */
+    @Test
+    public void testEncodeWritesUtf8() throws Exception {
+        String uri = "#Intent;action=caf\u00e9.\u20ac.\ud83d\ude00;end";
+
+        Intent intent = mock(Intent.class);
+        doReturn(uri).when(intent).toUri(0);
+
+        UriIntentCodec codec = new UriIntentCodec();
+        byte[] expected = uri.getBytes("UTF-8");
+
+        Assert.assertArrayEquals(expected, codec.encode(intent));
+
+        ByteWriter writer = new ByteWriter(4);
+        writer.writeByte(42);
+        codec.encode(intent, writer);
+
+        byte[] written = writer.toByteArray();
+        Assert.assertEquals(expected.length + 1, written.length);
+        Assert.assertEquals(uri, new String(written, 1, expected.length, "UTF-8"));
+    }
+
+    /**
+     * Non-ASCII characters that are not percent-encoded are decoded as UTF-8.
+     */
+    @Test
+    public void testDecodeHeaderReadsUtf8() throws Exception {
+        byte[] data = "#Intent;action=caf\u00e9;end".getBytes("UTF-8");
+
+        IntentHeader header = new UriIntentCodec().decodeHeader(data, 0, data.length);
+
+        Assert.assertEquals("caf\u00e9", header.getAction());
+    }
+}
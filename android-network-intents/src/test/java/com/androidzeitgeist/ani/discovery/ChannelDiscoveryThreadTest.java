@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.net.InetAddress;
+import java.nio.channels.DatagramChannel;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.androidzeitgeist.ani.internal.AndroidNetworkIntents;
+
+/**
+ * Unit tests for the {@link ChannelDiscoveryThread} class.
+ */
+public class ChannelDiscoveryThreadTest {
+    /**
+     * Calling {@link ChannelDiscoveryThread#stopDiscovery()} wakes up the selector
+     * and stops the thread without reporting an error.
+     */
+    @Test
+    public void testStopDiscoveryStopsThreadWithoutError() throws Exception {
+        DiscoveryListener listener = mock(DiscoveryListener.class);
+
+        ChannelDiscoveryThread thread = spy(new ChannelDiscoveryThread(
+            AndroidNetworkIntents.DEFAULT_MULTICAST_ADDRESS,
+            AndroidNetworkIntents.DEFAULT_PORT,
+            AndroidNetworkIntents.DEFAULT_MAXIMUM_PACKET_SIZE,
+            listener
+        ));
+
+        DatagramChannel channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        doReturn(channel).when(thread).createChannel(any(Subscription.class));
+
+        thread.start();
+
+        verify(listener, timeout(5000)).onDiscoveryStarted();
+        verify(thread, timeout(5000)).createChannel(any(Subscription.class));
+
+        thread.stopDiscovery();
+        thread.join(5000);
+
+        Assert.assertFalse(thread.isAlive());
+        Assert.assertFalse(channel.isOpen());
+
+        verify(listener).onDiscoveryStopped();
+        verify(listener, never()).onDiscoveryError(any(Exception.class));
+    }
+
+    /**
+     * A {@link Subscription} added while the thread is running will be registered
+     * by the selector thread.
+     */
+    @Test
+    public void testSubscriptionAddedAtRuntimeWillBeRegistered() throws Exception {
+        DiscoveryListener listener = mock(DiscoveryListener.class);
+
+        ChannelDiscoveryThread thread = spy(new ChannelDiscoveryThread(
+            AndroidNetworkIntents.DEFAULT_MULTICAST_ADDRESS,
+            AndroidNetworkIntents.DEFAULT_PORT,
+            AndroidNetworkIntents.DEFAULT_MAXIMUM_PACKET_SIZE,
+            listener
+        ));
+
+        DatagramChannel channel1 = DatagramChannel.open();
+        channel1.configureBlocking(false);
+        DatagramChannel channel2 = DatagramChannel.open();
+        channel2.configureBlocking(false);
+
+        Subscription subscription = new Subscription(InetAddress.getByName("225.4.5.7"), 5776);
+
+        doReturn(channel1).when(thread).createChannel(any(Subscription.class));
+        doReturn(channel2).when(thread).createChannel(subscription);
+
+        thread.start();
+
+        verify(listener, timeout(5000)).onDiscoveryStarted();
+
+        thread.addSubscription(subscription);
+
+        verify(thread, timeout(5000)).createChannel(subscription);
+
+        thread.stopDiscovery();
+        thread.join(5000);
+
+        Assert.assertFalse(channel1.isOpen());
+        Assert.assertFalse(channel2.isOpen());
+    }
+}
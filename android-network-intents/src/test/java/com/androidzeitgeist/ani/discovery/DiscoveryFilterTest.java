@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import java.net.InetAddress;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.androidzeitgeist.ani.codec.IntentHeader;
+
+/**
+ * Unit tests for the {@link DiscoveryFilter} class.
+ */
+public class DiscoveryFilterTest {
+    /**
+     * An empty filter accepts everything.
+     */
+    @Test
+    public void testEmptyFilterMatchesEverything() throws Exception {
+        DiscoveryFilter filter = new DiscoveryFilter();
+
+        Assert.assertTrue(filter.matchesSender(InetAddress.getByName("10.0.0.1")));
+        Assert.assertTrue(filter.matches(new IntentHeader("action", Collections.singleton("category"), "http")));
+        Assert.assertFalse(filter.hasIntentConditions());
+    }
+
+    /**
+     * Actions and data schemes have to be one of the added ones.
+     */
+    @Test
+    public void testActionAndScheme() {
+        DiscoveryFilter filter = new DiscoveryFilter();
+        filter.addAction("com.example.CHAT");
+        filter.addDataScheme("http");
+
+        Assert.assertTrue(filter.matches(new IntentHeader("com.example.CHAT", null, "http")));
+        Assert.assertFalse(filter.matches(new IntentHeader("com.example.OTHER", null, "http")));
+        Assert.assertFalse(filter.matches(new IntentHeader("com.example.CHAT", null, null)));
+        Assert.assertFalse(filter.matches(new IntentHeader(null, null, "http")));
+    }
+
+    /**
+     * All categories of an {@link android.content.Intent} have to be in the filter.
+     */
+    @Test
+    public void testCategories() {
+        DiscoveryFilter filter = new DiscoveryFilter();
+        filter.addCategory("com.example.ONE");
+
+        Assert.assertTrue(filter.matches(new IntentHeader(null, Collections.singleton("com.example.ONE"), null)));
+        Assert.assertTrue(filter.matches(new IntentHeader(null, null, null)));
+        Assert.assertFalse(filter.matches(new IntentHeader(null, Collections.singleton("com.example.TWO"), null)));
+    }
+
+    /**
+     * Senders are matched by address and subnet.
+     */
+    @Test
+    public void testSenderSubnet() throws Exception {
+        DiscoveryFilter filter = new DiscoveryFilter();
+        filter.addSenderSubnet(InetAddress.getByName("192.168.1.0"), 23);
+        filter.addSender(InetAddress.getByName("10.0.0.1"));
+
+        Assert.assertTrue(filter.matchesSender(InetAddress.getByName("192.168.0.17")));
+        Assert.assertTrue(filter.matchesSender(InetAddress.getByName("192.168.1.200")));
+        Assert.assertFalse(filter.matchesSender(InetAddress.getByName("192.168.2.1")));
+        Assert.assertTrue(filter.matchesSender(InetAddress.getByName("10.0.0.1")));
+        Assert.assertFalse(filter.matchesSender(InetAddress.getByName("10.0.0.2")));
+        Assert.assertFalse(filter.matchesSender(InetAddress.getByName("::1")));
+    }
+
+    /**
+     * A prefix length larger than the address is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPrefixLengthThrowsException() throws Exception {
+        new DiscoveryFilter().addSenderSubnet(InetAddress.getByName("10.0.0.0"), 33);
+    }
+}
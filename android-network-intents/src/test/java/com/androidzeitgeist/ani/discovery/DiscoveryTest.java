@@ -22,6 +22,8 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 
+import java.util.concurrent.Executor;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -140,4 +142,53 @@ public class DiscoveryTest {
 
         Assert.assertNotSame(thread1, thread2);
     }
+
+    /**
+     * Calling {@link Discovery#setMaximumPacketSize(int)} with a size that is not
+     * positive throws an {@link IllegalArgumentException}.
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testSettingInvalidMaximumPacketSizeThrowsException() {
+        Discovery discovery = new Discovery();
+        discovery.setMaximumPacketSize(0);
+    }
+
+    /**
+     * A {@link BatchDiscoveryListener} counts as listener for enabling the discovery
+     * and can be removed again.
+     */
+    @Test
+    public void testBatchDiscoveryListenerCanBeAddedAndRemoved() throws Exception {
+        DiscoveryThread thread = mock(DiscoveryThread.class);
+        BatchDiscoveryListener listener = mock(BatchDiscoveryListener.class);
+
+        Discovery discovery = spy(new Discovery());
+        doReturn(thread).when(discovery).createDiscoveryThread();
+
+        discovery.addBatchDiscoveryListener(listener, null, mock(Executor.class), 10, 16);
+        discovery.enable();
+        discovery.disable();
+
+        discovery.removeBatchDiscoveryListener(listener);
+
+        try {
+            discovery.enable();
+            Assert.fail("Expected IllegalStateException");
+        } catch (IllegalStateException exception) {
+            // Expected: no listener left
+        }
+    }
+
+    /**
+     * Registering the same {@link BatchDiscoveryListener} twice throws an
+     * {@link IllegalArgumentException}.
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testAddingBatchDiscoveryListenerTwiceThrowsException() {
+        BatchDiscoveryListener listener = mock(BatchDiscoveryListener.class);
+
+        Discovery discovery = new Discovery();
+        discovery.addBatchDiscoveryListener(listener, null, mock(Executor.class), 10, 16);
+        discovery.addBatchDiscoveryListener(listener, null, mock(Executor.class), 10, 16);
+    }
 }
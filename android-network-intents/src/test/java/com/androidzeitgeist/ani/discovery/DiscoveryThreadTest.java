@@ -16,20 +16,36 @@
 
 package com.androidzeitgeist.ani.discovery;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
 import java.net.MulticastSocket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.codec.IntentCodec;
 import com.androidzeitgeist.ani.internal.AndroidNetworkIntents;
 
 /**
@@ -128,4 +144,122 @@ public class DiscoveryThreadTest {
 
         Assert.assertNotSame(socket1, socket2);
     }
+
+    /**
+     * The packet passed to {@link MulticastSocket#receive(DatagramPacket)} uses a
+     * buffer of the configured maximum packet size.
+     */
+    @Test
+    public void testReceiveBufferHasMaximumPacketSize() throws Exception {
+        DiscoveryListener listener = mock(DiscoveryListener.class);
+
+        final DiscoveryThread thread = spy(new DiscoveryThread(
+            AndroidNetworkIntents.DEFAULT_MULTICAST_ADDRESS,
+            AndroidNetworkIntents.DEFAULT_PORT,
+            512,
+            listener
+        ));
+
+        final int[] bufferSize = new int[1];
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                DatagramPacket packet = (DatagramPacket) invocation.getArguments()[0];
+                bufferSize[0] = packet.getData().length;
+
+                thread.stopDiscovery();
+                throw new SocketException("Socket closed");
+            }
+        }).when(socket).receive(any(DatagramPacket.class));
+
+        doReturn(socket).when(thread).createSocket();
+
+        thread.run();
+
+        Assert.assertEquals(512, bufferSize[0]);
+    }
+
+    /**
+     * Packets of different lengths are received into the same buffer and packet,
+     * and each is decoded with its own length.
+     */
+    @Test
+    public void testReceiveBufferIsReusedForPacketsOfDifferentLengths() throws Exception {
+        DiscoveryListener listener = mock(DiscoveryListener.class);
+
+        final DiscoveryThread thread = spy(new DiscoveryThread(
+            AndroidNetworkIntents.DEFAULT_MULTICAST_ADDRESS,
+            AndroidNetworkIntents.DEFAULT_PORT,
+            512,
+            listener
+        ));
+
+        final InetAddress sender = InetAddress.getByName("192.168.0.2");
+        final String[] payloads = { "a longer first packet", "second" };
+        final List<DatagramPacket> packets = new ArrayList<DatagramPacket>();
+        final List<byte[]> buffers = new ArrayList<byte[]>();
+        final List<Integer> capacities = new ArrayList<Integer>();
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                DatagramPacket packet = (DatagramPacket) invocation.getArguments()[0];
+                packets.add(packet);
+                buffers.add(packet.getData());
+                capacities.add(packet.getLength());
+
+                int index = packets.size() - 1;
+                if (index == payloads.length) {
+                    thread.stopDiscovery();
+                    throw new SocketException("Socket closed");
+                }
+
+                byte[] payload = payloads[index].getBytes("UTF-8");
+                System.arraycopy(payload, 0, packet.getData(), packet.getOffset(), payload.length);
+                packet.setLength(payload.length);
+                packet.setAddress(sender);
+                return null;
+            }
+        }).when(socket).receive(any(DatagramPacket.class));
+
+        final List<String> decoded = new ArrayList<String>();
+        final List<byte[]> decodedBuffers = new ArrayList<byte[]>();
+
+        IntentCodec codec = mock(IntentCodec.class);
+        doAnswer(new Answer<Intent>() {
+            @Override
+            public Intent answer(InvocationOnMock invocation) throws Throwable {
+                byte[] data = (byte[]) invocation.getArguments()[0];
+                int offset = (Integer) invocation.getArguments()[1];
+                int length = (Integer) invocation.getArguments()[2];
+
+                decodedBuffers.add(data);
+                decoded.add(new String(data, offset, length, "UTF-8"));
+                return mock(Intent.class);
+            }
+        }).when(codec).decode(any(byte[].class), anyInt(), anyInt());
+
+        thread.setIntentCodec(codec);
+        doReturn(socket).when(thread).createSocket();
+
+        thread.run();
+
+        Assert.assertEquals(Arrays.asList(payloads), decoded);
+        Assert.assertEquals(3, packets.size());
+
+        // The same packet and buffer are used for every receive ...
+        Assert.assertSame(packets.get(0), packets.get(1));
+        Assert.assertSame(packets.get(0), packets.get(2));
+        Assert.assertSame(buffers.get(0), buffers.get(1));
+        Assert.assertSame(buffers.get(0), decodedBuffers.get(0));
+        Assert.assertSame(buffers.get(0), decodedBuffers.get(1));
+
+        // ... and its full capacity is restored before each of them.
+        Assert.assertEquals(Arrays.asList(512, 512, 512), capacities);
+
+        verify(listener, times(2)).onIntentDiscovered(eq(sender), any(Intent.class));
+    }
 }
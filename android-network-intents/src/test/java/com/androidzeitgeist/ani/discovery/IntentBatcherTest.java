@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import android.content.Intent;
+
+/**
+ * Unit tests for the {@link IntentBatcher} class.
+ */
+public class IntentBatcherTest {
+    private static final long LONG_WINDOW = 60000;
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+    };
+
+    /**
+     * A batch is delivered as soon as it reaches the maximum batch size, with the
+     * {@link Intent}s in the order they have been received.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFullBatchIsDeliveredImmediately() throws Exception {
+        BatchDiscoveryListener listener = mock(BatchDiscoveryListener.class);
+        IntentBatcher batcher = new IntentBatcher(listener, DIRECT_EXECUTOR, 3, LONG_WINDOW);
+
+        InetAddress address = InetAddress.getByName("192.168.1.10");
+        Intent first = mock(Intent.class);
+        Intent second = mock(Intent.class);
+        Intent third = mock(Intent.class);
+
+        batcher.onIntentDiscovered(address, first);
+        batcher.onIntentDiscovered(address, second);
+
+        verify(listener, never()).onIntentsDiscovered(anyListOf(DiscoveredIntent.class));
+        Assert.assertEquals(2, batcher.getPendingCount());
+
+        batcher.onIntentDiscovered(address, third);
+
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(listener).onIntentsDiscovered(captor.capture());
+
+        List<DiscoveredIntent> intents = captor.getValue();
+        Assert.assertEquals(3, intents.size());
+        Assert.assertSame(first, intents.get(0).getIntent());
+        Assert.assertSame(third, intents.get(2).getIntent());
+        Assert.assertEquals(address, intents.get(0).getAddress());
+        Assert.assertEquals(0, batcher.getPendingCount());
+
+        batcher.close();
+    }
+
+    /**
+     * A batch that does not fill up is delivered once the time window has passed.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPartialBatchIsDeliveredAfterWindow() throws Exception {
+        BatchDiscoveryListener listener = mock(BatchDiscoveryListener.class);
+        IntentBatcher batcher = new IntentBatcher(listener, DIRECT_EXECUTOR, 100, 10);
+
+        Subscription subscription = new Subscription(InetAddress.getByName("225.4.5.7"), 5776);
+        batcher.onIntentDiscovered(subscription, InetAddress.getByName("192.168.1.10"), mock(Intent.class));
+
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(listener, timeout(2000)).onIntentsDiscovered(captor.capture());
+
+        List<DiscoveredIntent> intents = captor.getValue();
+        Assert.assertEquals(1, intents.size());
+        Assert.assertSame(subscription, intents.get(0).getSubscription());
+
+        batcher.close();
+    }
+
+    /**
+     * Pending {@link Intent}s are delivered before the listener is told that the
+     * discovery has stopped.
+     */
+    @Test
+    public void testPendingIntentsAreDeliveredBeforeStop() throws Exception {
+        BatchDiscoveryListener listener = mock(BatchDiscoveryListener.class);
+        IntentBatcher batcher = new IntentBatcher(listener, DIRECT_EXECUTOR, 100, LONG_WINDOW);
+
+        batcher.onDiscoveryStarted();
+        batcher.onIntentDiscovered(InetAddress.getByName("192.168.1.10"), mock(Intent.class));
+        batcher.onDiscoveryStopped();
+
+        InOrder order = inOrder(listener);
+        order.verify(listener).onDiscoveryStarted();
+        order.verify(listener).onIntentsDiscovered(anyListOf(DiscoveredIntent.class));
+        order.verify(listener).onDiscoveryStopped();
+
+        Assert.assertEquals(0, batcher.getPendingCount());
+    }
+
+    /**
+     * After closing, pending and new {@link Intent}s are dropped.
+     */
+    @Test
+    public void testClosedBatcherDropsIntents() throws Exception {
+        BatchDiscoveryListener listener = mock(BatchDiscoveryListener.class);
+        IntentBatcher batcher = new IntentBatcher(listener, DIRECT_EXECUTOR, 1, LONG_WINDOW);
+
+        batcher.close();
+        batcher.onIntentDiscovered(InetAddress.getByName("192.168.1.10"), mock(Intent.class));
+        batcher.onDiscoveryStopped();
+
+        verify(listener, never()).onIntentsDiscovered(anyListOf(DiscoveredIntent.class));
+        verify(listener, never()).onDiscoveryStopped();
+    }
+
+    /**
+     * Batch size and time window must be positive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveBatchSizeIsRejected() {
+        new IntentBatcher(mock(BatchDiscoveryListener.class), DIRECT_EXECUTOR, 0, LONG_WINDOW);
+    }
+}
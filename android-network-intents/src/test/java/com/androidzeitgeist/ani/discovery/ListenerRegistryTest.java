@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.InetAddress;
+import java.util.concurrent.Executor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.codec.IntentHeader;
+
+/**
+ * Unit tests for the {@link ListenerRegistry} class.
+ */
+public class ListenerRegistryTest {
+    /**
+     * Every listener is only notified about {@link Intent}s matching its filter.
+     */
+    @Test
+    public void testDispatchUsesFilterOfListener() throws Exception {
+        DiscoveryListener chatListener = mock(DiscoveryListener.class);
+        DiscoveryListener otherListener = mock(DiscoveryListener.class);
+
+        ListenerRegistry registry = new ListenerRegistry();
+        registry.add(chatListener, createActionFilter("com.example.CHAT"), null);
+        registry.add(otherListener, createActionFilter("com.example.OTHER"), null);
+
+        Intent intent = mock(Intent.class);
+        when(intent.getAction()).thenReturn("com.example.CHAT");
+
+        InetAddress sender = InetAddress.getByName("192.168.0.2");
+        int notified = registry.dispatch(null, sender, intent, null);
+
+        Assert.assertEquals(1, notified);
+        verify(chatListener).onIntentDiscovered(sender, intent);
+        verify(otherListener, never()).onIntentDiscovered(any(InetAddress.class), any(Intent.class));
+    }
+
+    /**
+     * A listener registered with an {@link Executor} is notified on that executor.
+     */
+    @Test
+    public void testDispatchUsesExecutorOfListener() throws Exception {
+        DiscoveryListener listener = mock(DiscoveryListener.class);
+        Executor executor = mock(Executor.class);
+
+        ListenerRegistry registry = new ListenerRegistry();
+        registry.add(listener, null, executor);
+
+        registry.dispatch(null, InetAddress.getByName("192.168.0.2"), mock(Intent.class), null);
+
+        verify(executor).execute(any(Runnable.class));
+        verify(listener, never()).onIntentDiscovered(any(InetAddress.class), any(Intent.class));
+    }
+
+    /**
+     * Headers are only accepted if at least one listener is interested and a
+     * primary listener is interested in everything.
+     */
+    @Test
+    public void testAcceptsHeader() throws Exception {
+        InetAddress sender = InetAddress.getByName("192.168.0.2");
+
+        ListenerRegistry registry = new ListenerRegistry();
+        registry.add(mock(DiscoveryListener.class), createActionFilter("com.example.CHAT"), null);
+
+        Assert.assertTrue(registry.hasIntentConditions());
+        Assert.assertTrue(registry.accepts(sender, new IntentHeader("com.example.CHAT", null, null)));
+        Assert.assertFalse(registry.accepts(sender, new IntentHeader("com.example.OTHER", null, null)));
+
+        registry.setPrimaryListener(mock(DiscoveryListener.class));
+
+        Assert.assertFalse(registry.hasIntentConditions());
+        Assert.assertTrue(registry.accepts(sender, new IntentHeader("com.example.OTHER", null, null)));
+    }
+
+    /**
+     * Removed listeners are not notified anymore.
+     */
+    @Test
+    public void testRemovedListenerIsNotNotified() throws Exception {
+        DiscoveryListener listener = mock(DiscoveryListener.class);
+
+        ListenerRegistry registry = new ListenerRegistry();
+        registry.add(listener, null, null);
+
+        Assert.assertTrue(registry.remove(listener));
+        Assert.assertTrue(registry.isEmpty());
+        Assert.assertEquals(0, registry.dispatch(null, InetAddress.getByName("192.168.0.2"), mock(Intent.class), null));
+    }
+
+    private static DiscoveryFilter createActionFilter(String action) {
+        DiscoveryFilter filter = new DiscoveryFilter();
+        filter.addAction(action);
+        return filter;
+    }
+}
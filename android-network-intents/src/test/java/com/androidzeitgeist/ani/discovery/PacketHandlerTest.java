@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.OverflowPolicy;
+import com.androidzeitgeist.ani.codec.IntentCodec;
+import com.androidzeitgeist.ani.codec.UriIntentCodec;
+import com.androidzeitgeist.ani.internal.BoundedExecutor;
+import com.androidzeitgeist.ani.internal.ByteReader;
+import com.androidzeitgeist.ani.internal.ByteWriter;
+import com.androidzeitgeist.ani.internal.Compression;
+import com.androidzeitgeist.ani.internal.PacketFormat;
+import com.androidzeitgeist.ani.metrics.CounterMetrics;
+import com.androidzeitgeist.ani.metrics.Metric;
+import com.androidzeitgeist.ani.metrics.MetricsSnapshot;
+
+/**
+ * Unit tests for the {@link PacketHandler} class.
+ */
+public class PacketHandlerTest {
+    /**
+     * A {@link SubscriptionDiscoveryListener} will be told on which {@link Subscription}
+     * an {@link Intent} has been received.
+     */
+    @Test
+    public void testSubscriptionListenerReceivesSubscription() throws Exception {
+        Intent intent = mock(Intent.class);
+        byte[] data = "intent".getBytes();
+
+        IntentCodec codec = mock(IntentCodec.class);
+        when(codec.decode(eq(data), anyInt(), anyInt())).thenReturn(intent);
+
+        SubscriptionDiscoveryListener listener = mock(SubscriptionDiscoveryListener.class);
+
+        Subscription subscription = new Subscription(InetAddress.getByName("225.4.5.6"), 5775);
+        InetAddress sender = InetAddress.getByName("192.168.0.2");
+
+        PacketHandler handler = new PacketHandler(codec, listener, null, new CounterMetrics());
+        handler.handle(subscription, sender, data, 0, data.length);
+
+        verify(listener).onIntentDiscovered(subscription, sender, intent);
+    }
+
+    /**
+     * A plain {@link DiscoveryListener} will be notified with the sender and the
+     * received {@link Intent}.
+     */
+    @Test
+    public void testListenerReceivesIntent() throws Exception {
+        Intent intent = mock(Intent.class);
+        byte[] data = "intent".getBytes();
+
+        IntentCodec codec = mock(IntentCodec.class);
+        when(codec.decode(eq(data), anyInt(), anyInt())).thenReturn(intent);
+
+        DiscoveryListener listener = mock(DiscoveryListener.class);
+
+        Subscription subscription = new Subscription(InetAddress.getByName("225.4.5.6"), 5775);
+        InetAddress sender = InetAddress.getByName("192.168.0.2");
+
+        PacketHandler handler = new PacketHandler(codec, listener, null, new CounterMetrics());
+        handler.handle(subscription, sender, data, 0, data.length);
+
+        verify(listener).onIntentDiscovered(sender, intent);
+    }
+
+    /**
+     * Received packets and the time spent decoding and notifying the listener are
+     * recorded to the {@link com.androidzeitgeist.ani.metrics.MetricsRecorder}.
+     */
+    @Test
+    public void testRecordsMetrics() throws Exception {
+        Intent intent = mock(Intent.class);
+        byte[] data = "intent".getBytes();
+
+        IntentCodec codec = mock(IntentCodec.class);
+        when(codec.decode(eq(data), anyInt(), anyInt())).thenReturn(intent);
+
+        DiscoveryListener listener = mock(DiscoveryListener.class);
+        CounterMetrics metrics = new CounterMetrics();
+
+        Subscription subscription = new Subscription(InetAddress.getByName("225.4.5.6"), 5775);
+        InetAddress sender = InetAddress.getByName("192.168.0.2");
+
+        PacketHandler handler = new PacketHandler(codec, listener, null, metrics);
+        handler.handle(subscription, sender, data, 0, data.length);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getCount(Metric.PACKETS_RECEIVED));
+        assertEquals(data.length, snapshot.getTotal(Metric.BYTES_RECEIVED));
+        assertEquals(1, snapshot.getCount(Metric.DECODE_TIME));
+        assertEquals(1, snapshot.getCount(Metric.LISTENER_TIME));
+        assertEquals(0, snapshot.getCount(Metric.PARSE_FAILURES));
+    }
+
+    /**
+     * Compressed frames are inflated before the {@link Intent} is decoded.
+     */
+    @Test
+    public void testCompressedFrameIsInflated() throws Exception {
+        byte[] payload = "intent intent intent intent".getBytes();
+
+        ByteWriter frame = new ByteWriter();
+        PacketFormat.writeHeader(frame, PacketFormat.FLAG_COMPRESSED);
+        frame.writeVarInt(payload.length);
+        Compression.deflate(payload, 0, payload.length, frame);
+
+        Intent intent = mock(Intent.class);
+        IntentCodec codec = mock(IntentCodec.class);
+        when(codec.decode(any(byte[].class), anyInt(), anyInt())).thenReturn(intent);
+
+        DiscoveryListener listener = mock(DiscoveryListener.class);
+
+        Subscription subscription = new Subscription(InetAddress.getByName("225.4.5.6"), 5775);
+        InetAddress sender = InetAddress.getByName("192.168.0.2");
+
+        PacketHandler handler = new PacketHandler(codec, listener, null, new CounterMetrics());
+        handler.handle(subscription, sender, frame.getBuffer(), 0, frame.size());
+
+        ArgumentCaptor<byte[]> data = ArgumentCaptor.forClass(byte[].class);
+        ArgumentCaptor<Integer> offset = ArgumentCaptor.forClass(Integer.class);
+        ArgumentCaptor<Integer> length = ArgumentCaptor.forClass(Integer.class);
+        verify(codec).decode(data.capture(), offset.capture(), length.capture());
+
+        assertEquals(new String(payload), new String(data.getValue(), offset.getValue(), length.getValue()));
+        verify(listener).onIntentDiscovered(sender, intent);
+    }
+
+    /**
+     * A sequenced packet that is received twice is only delivered once.
+     */
+    @Test
+    public void testDuplicateSequencedPacketIsDropped() throws Exception {
+        byte[] payload = "intent".getBytes();
+
+        ByteWriter frame = new ByteWriter();
+        PacketFormat.writeHeader(frame, PacketFormat.FLAG_SEQUENCED);
+        frame.writeLong(42);
+        frame.writeInt(1);
+        frame.writeBytes(payload);
+
+        Intent intent = mock(Intent.class);
+        IntentCodec codec = mock(IntentCodec.class);
+        when(codec.decode(any(byte[].class), anyInt(), anyInt())).thenReturn(intent);
+
+        DiscoveryListener listener = mock(DiscoveryListener.class);
+        CounterMetrics metrics = new CounterMetrics();
+
+        Subscription subscription = new Subscription(InetAddress.getByName("225.4.5.6"), 5775);
+        InetAddress sender = InetAddress.getByName("192.168.0.2");
+
+        PacketHandler handler = new PacketHandler(codec, listener, null, metrics);
+        handler.handle(subscription, sender, frame.getBuffer(), 0, frame.size());
+        handler.handle(subscription, sender, frame.getBuffer(), 0, frame.size());
+
+        verify(codec).decode(any(byte[].class), eq(PacketFormat.HEADER_LENGTH + PacketFormat.SEQUENCE_HEADER_LENGTH), eq(payload.length));
+        verify(listener).onIntentDiscovered(sender, intent);
+        assertEquals(1, metrics.snapshot().getCount(Metric.DUPLICATES_DROPPED));
+    }
+
+    /**
+     * A gap in the sequence numbers of reliable packets is reported to the sender
+     * with a NACK.
+     */
+    @Test
+    public void testGapInReliablePacketsSendsNack() throws Exception {
+        IntentCodec codec = mock(IntentCodec.class);
+        when(codec.decode(any(byte[].class), anyInt(), anyInt())).thenReturn(mock(Intent.class));
+
+        DatagramSocket nackSocket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        nackSocket.setSoTimeout(5000);
+
+        Subscription subscription = new Subscription(InetAddress.getByName("225.4.5.6"), 5775);
+        PacketHandler handler = new PacketHandler(codec, mock(DiscoveryListener.class), null, new CounterMetrics());
+
+        try {
+            ByteWriter frame = new ByteWriter();
+            for (int sequence : new int[] { 1, 4 }) {
+                frame.reset();
+                PacketFormat.writeHeader(frame, PacketFormat.FLAG_SEQUENCED | PacketFormat.FLAG_RELIABLE);
+                frame.writeLong(42);
+                frame.writeInt(sequence);
+                frame.writeShort(nackSocket.getLocalPort());
+                frame.writeBytes("intent".getBytes());
+
+                handler.handle(subscription, nackSocket.getLocalAddress(), frame.getBuffer(), 0, frame.size());
+            }
+
+            DatagramPacket packet = new DatagramPacket(new byte[64], 64);
+            nackSocket.receive(packet);
+
+            ByteReader reader = new ByteReader(packet.getData(), 0, packet.getLength());
+            assertEquals(PacketFormat.FLAG_NACK, PacketFormat.readHeader(reader));
+            assertEquals(42, reader.readLong());
+            assertEquals(2, reader.readInt());
+            assertEquals(2, reader.readVarInt());
+        } finally {
+            handler.shutdown();
+            nackSocket.close();
+        }
+    }
+
+    /**
+     * With more than one dispatch thread, reliable packets received in order are
+     * not reported as lost and no NACKs are sent.
+     */
+    @Test
+    public void testMultipleDispatchThreadsDoNotCauseFalseGaps() throws Exception {
+        IntentCodec codec = mock(IntentCodec.class);
+        when(codec.decode(any(byte[].class), anyInt(), anyInt())).thenReturn(mock(Intent.class));
+
+        DatagramSocket nackSocket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        nackSocket.setSoTimeout(200);
+
+        DiscoveryListener listener = mock(DiscoveryListener.class);
+        CounterMetrics metrics = new CounterMetrics();
+        BoundedExecutor executor = new BoundedExecutor("ANI/Test", 16, 4, OverflowPolicy.BLOCK);
+
+        Subscription subscription = new Subscription(InetAddress.getByName("225.4.5.6"), 5775);
+        PacketHandler handler = new PacketHandler(codec, listener, executor, metrics);
+
+        int count = 500;
+
+        try {
+            ByteWriter frame = new ByteWriter();
+            for (int sequence = 1; sequence <= count; sequence++) {
+                frame.reset();
+                PacketFormat.writeHeader(frame, PacketFormat.FLAG_SEQUENCED | PacketFormat.FLAG_RELIABLE);
+                frame.writeLong(42);
+                frame.writeInt(sequence);
+                frame.writeShort(nackSocket.getLocalPort());
+                frame.writeBytes("intent".getBytes());
+
+                handler.handle(subscription, nackSocket.getLocalAddress(), frame.getBuffer(), 0, frame.size());
+            }
+
+            verify(listener, timeout(5000).times(count)).onIntentDiscovered(any(InetAddress.class), any(Intent.class));
+
+            MetricsSnapshot snapshot = metrics.snapshot();
+            assertEquals(0, snapshot.getCount(Metric.PACKETS_LOST));
+            assertEquals(0, snapshot.getCount(Metric.NACKS_SENT));
+
+            try {
+                nackSocket.receive(new DatagramPacket(new byte[64], 64));
+                fail("Expected no NACK");
+            } catch (SocketTimeoutException exception) {
+                // Expected
+            }
+        } finally {
+            handler.shutdown();
+            nackSocket.close();
+        }
+    }
+
+    /**
+     * Packets not matching the filter are dropped before the {@link Intent} is decoded.
+     */
+    @Test
+    public void testFilteredPacketsAreNotDecoded() throws Exception {
+        byte[] data = "#Intent;action=com.example.OTHER;end".getBytes();
+
+        UriIntentCodec codec = spy(new UriIntentCodec());
+        DiscoveryListener listener = mock(DiscoveryListener.class);
+        CounterMetrics metrics = new CounterMetrics();
+
+        DiscoveryFilter filter = new DiscoveryFilter();
+        filter.addAction("com.example.CHAT");
+
+        Subscription subscription = new Subscription(InetAddress.getByName("225.4.5.6"), 5775);
+        InetAddress sender = InetAddress.getByName("192.168.0.2");
+
+        PacketHandler handler = new PacketHandler(codec, listener, null, metrics);
+        handler.setFilter(filter);
+        handler.handle(subscription, sender, data, 0, data.length);
+
+        filter.addSender(InetAddress.getByName("192.168.0.3"));
+        handler.handle(subscription, sender, data, 0, data.length);
+
+        verify(codec).decodeHeader(data, 0, data.length);
+        verify(codec, never()).decode(any(byte[].class), anyInt(), anyInt());
+        verifyZeroInteractions(listener);
+        assertEquals(2, metrics.snapshot().getCount(Metric.PACKETS_FILTERED));
+    }
+}
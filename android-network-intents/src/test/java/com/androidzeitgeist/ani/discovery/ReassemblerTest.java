@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.androidzeitgeist.ani.metrics.CounterMetrics;
+import com.androidzeitgeist.ani.metrics.Metric;
+
+/**
+ * Unit tests for the {@link Reassembler} class.
+ */
+public class ReassemblerTest {
+    /**
+     * A packet is returned once all fragments arrived, in any order.
+     */
+    @Test
+    public void testReassemblesFragmentsInAnyOrder() throws Exception {
+        Reassembler reassembler = new Reassembler(8, 1024, 1000, new CounterMetrics());
+        InetAddress sender = InetAddress.getByName("192.168.0.2");
+
+        byte[] data = "abcdef".getBytes();
+
+        Assert.assertNull(reassembler.add(sender, 7, 2, 3, data, 4, 2, 0));
+        Assert.assertNull(reassembler.add(sender, 7, 0, 3, data, 0, 2, 0));
+        Assert.assertNull(reassembler.add(sender, 7, 0, 3, data, 0, 2, 0));
+
+        byte[] packet = reassembler.add(sender, 7, 1, 3, data, 2, 2, 0);
+
+        Assert.assertArrayEquals(data, packet);
+        Assert.assertEquals(0, reassembler.getIncompleteCount());
+    }
+
+    /**
+     * Fragments of different senders with the same message id are kept apart.
+     */
+    @Test
+    public void testSeparatesSenders() throws Exception {
+        Reassembler reassembler = new Reassembler(8, 1024, 1000, new CounterMetrics());
+        InetAddress sender1 = InetAddress.getByName("192.168.0.2");
+        InetAddress sender2 = InetAddress.getByName("192.168.0.3");
+
+        byte[] data = "abcd".getBytes();
+
+        Assert.assertNull(reassembler.add(sender1, 1, 0, 2, data, 0, 2, 0));
+        Assert.assertNull(reassembler.add(sender2, 1, 1, 2, data, 2, 2, 0));
+        Assert.assertEquals(2, reassembler.getIncompleteCount());
+    }
+
+    /**
+     * Incomplete packets are discarded after the timeout.
+     */
+    @Test
+    public void testEvictsExpiredPackets() throws Exception {
+        CounterMetrics metrics = new CounterMetrics();
+        Reassembler reassembler = new Reassembler(8, 1024, 1000, metrics);
+        InetAddress sender = InetAddress.getByName("192.168.0.2");
+
+        byte[] data = "abcd".getBytes();
+
+        Assert.assertNull(reassembler.add(sender, 1, 0, 2, data, 0, 2, 0));
+        Assert.assertNull(reassembler.add(sender, 1, 1, 2, data, 2, 2, 1000));
+
+        Assert.assertEquals(1, reassembler.getIncompleteCount());
+        Assert.assertEquals(1, metrics.snapshot().getCount(Metric.INCOMPLETE_MESSAGES));
+    }
+
+    /**
+     * The oldest incomplete packet is discarded if the buffer is full.
+     */
+    @Test
+    public void testEvictsOldestPacketIfFull() throws Exception {
+        Reassembler reassembler = new Reassembler(2, 1024, 1000, new CounterMetrics());
+        InetAddress sender = InetAddress.getByName("192.168.0.2");
+
+        byte[] data = "abcd".getBytes();
+
+        reassembler.add(sender, 1, 0, 2, data, 0, 2, 0);
+        reassembler.add(sender, 2, 0, 2, data, 0, 2, 0);
+        reassembler.add(sender, 3, 0, 2, data, 0, 2, 0);
+
+        Assert.assertEquals(2, reassembler.getIncompleteCount());
+        Assert.assertNull(reassembler.add(sender, 1, 1, 2, data, 2, 2, 0));
+        Assert.assertNotNull(reassembler.add(sender, 3, 1, 2, data, 2, 2, 0));
+    }
+
+    /**
+     * A fragment with an index outside of the fragment count is rejected.
+     */
+    @Test(expected = IOException.class)
+    public void testInvalidFragmentThrowsException() throws Exception {
+        Reassembler reassembler = new Reassembler(8, 1024, 1000, new CounterMetrics());
+
+        byte[] data = "abcd".getBytes();
+        reassembler.add(InetAddress.getByName("192.168.0.2"), 1, 2, 2, data, 0, 2, 0);
+    }
+}
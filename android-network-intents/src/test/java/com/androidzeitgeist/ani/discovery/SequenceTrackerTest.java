@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.androidzeitgeist.ani.metrics.CounterMetrics;
+import com.androidzeitgeist.ani.metrics.Metric;
+
+/**
+ * Unit tests for the {@link SequenceTracker} class.
+ */
+public class SequenceTrackerTest {
+    /**
+     * A sequence number is only accepted once, even if it arrives out of order.
+     */
+    @Test
+    public void testDropsDuplicates() {
+        SequenceTracker tracker = new SequenceTracker(8, new CounterMetrics());
+
+        Assert.assertEquals(0, tracker.accept(1, 10));
+        Assert.assertEquals(SequenceTracker.DUPLICATE, tracker.accept(1, 10));
+
+        Assert.assertEquals(1, tracker.accept(1, 12));
+        Assert.assertEquals(0, tracker.accept(1, 11));
+        Assert.assertEquals(SequenceTracker.DUPLICATE, tracker.accept(1, 11));
+        Assert.assertEquals(SequenceTracker.DUPLICATE, tracker.accept(1, 12));
+    }
+
+    /**
+     * Sequence numbers of different senders are tracked separately.
+     */
+    @Test
+    public void testTracksSendersSeparately() {
+        SequenceTracker tracker = new SequenceTracker(8, new CounterMetrics());
+
+        Assert.assertEquals(0, tracker.accept(1, 10));
+        Assert.assertEquals(0, tracker.accept(2, 10));
+    }
+
+    /**
+     * Sequence numbers that left the window without being received are counted
+     * as lost, packets arriving late are not.
+     */
+    @Test
+    public void testRecordsLostPackets() {
+        CounterMetrics metrics = new CounterMetrics();
+        SequenceTracker tracker = new SequenceTracker(8, metrics);
+
+        tracker.accept(1, 0);
+        tracker.accept(1, 3);
+        tracker.accept(1, 2);
+
+        Assert.assertEquals(0, metrics.snapshot().getTotal(Metric.PACKETS_LOST));
+
+        tracker.accept(1, 100);
+
+        Assert.assertEquals(1 + (100 - 3 - 64), metrics.snapshot().getTotal(Metric.PACKETS_LOST));
+    }
+
+    /**
+     * The window keeps working when the sequence number wraps around.
+     */
+    @Test
+    public void testSequenceNumberWrapsAround() {
+        SequenceTracker tracker = new SequenceTracker(8, new CounterMetrics());
+
+        Assert.assertEquals(0, tracker.accept(1, Integer.MAX_VALUE));
+        Assert.assertEquals(0, tracker.accept(1, Integer.MIN_VALUE));
+        Assert.assertEquals(SequenceTracker.DUPLICATE, tracker.accept(1, Integer.MAX_VALUE));
+    }
+}
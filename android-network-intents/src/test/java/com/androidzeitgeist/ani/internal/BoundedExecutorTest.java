@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.internal;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.androidzeitgeist.ani.OverflowPolicy;
+
+/**
+ * Unit tests for the {@link BoundedExecutor} class.
+ */
+public class BoundedExecutorTest {
+    /**
+     * Executed tasks will be run on a worker thread.
+     */
+    @Test
+    public void testTaskWillBeExecuted() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor("Test", 1, 1, OverflowPolicy.BLOCK);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        executor.shutdown();
+    }
+
+    /**
+     * With {@link OverflowPolicy#DROP_NEWEST} a task added to a full queue will
+     * be dropped.
+     */
+    @Test
+    public void testDropNewestDropsNewTask() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        BoundedExecutor executor = createBlockedExecutor(OverflowPolicy.DROP_NEWEST, blocker);
+
+        FutureTask<Void> queuedTask = new FutureTask<Void>(new NoOp(), null);
+        FutureTask<Void> newTask = new FutureTask<Void>(new NoOp(), null);
+
+        executor.execute(queuedTask);
+        executor.execute(newTask);
+
+        Assert.assertEquals(1, executor.getDroppedTaskCount());
+        Assert.assertFalse(queuedTask.isCancelled());
+        Assert.assertTrue(newTask.isCancelled());
+
+        blocker.countDown();
+        executor.shutdown();
+    }
+
+    /**
+     * With {@link OverflowPolicy#DROP_OLDEST} the oldest task in a full queue will
+     * be dropped to make room for the new task.
+     */
+    @Test
+    public void testDropOldestDropsQueuedTask() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        BoundedExecutor executor = createBlockedExecutor(OverflowPolicy.DROP_OLDEST, blocker);
+
+        FutureTask<Void> queuedTask = new FutureTask<Void>(new NoOp(), null);
+        FutureTask<Void> newTask = new FutureTask<Void>(new NoOp(), null);
+
+        executor.execute(queuedTask);
+        executor.execute(newTask);
+
+        Assert.assertEquals(1, executor.getDroppedTaskCount());
+        Assert.assertTrue(queuedTask.isCancelled());
+        Assert.assertFalse(newTask.isCancelled());
+
+        blocker.countDown();
+        newTask.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+
+    /**
+     * A shut down executor rejects new tasks with a {@link RejectedExecutionException},
+     * like the executors of the JDK.
+     */
+    @Test(expected = RejectedExecutionException.class)
+    public void testShutDownExecutorRejectsTasks() {
+        BoundedExecutor executor = new BoundedExecutor("Test", 1, 1, OverflowPolicy.DROP_NEWEST);
+        executor.shutdown();
+
+        executor.execute(new NoOp());
+    }
+
+    /**
+     * Create an executor with a queue of size 1 whose only worker thread is
+     * blocked until the given latch is released.
+     */
+    private BoundedExecutor createBlockedExecutor(OverflowPolicy policy, final CountDownLatch blocker) throws Exception {
+        BoundedExecutor executor = new BoundedExecutor("Test", 1, 1, policy);
+
+        final CountDownLatch started = new CountDownLatch(1);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+
+                try {
+                    blocker.await();
+                } catch (InterruptedException exception) {
+                    // Executor shut down
+                }
+            }
+        });
+
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        return executor;
+    }
+
+    private static class NoOp implements Runnable {
+        @Override
+        public void run() {
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.internal;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link Compression} class.
+ */
+public class CompressionTest {
+    /**
+     * Inflating deflated data returns the original bytes.
+     */
+    @Test
+    public void testDeflateAndInflate() throws Exception {
+        byte[] data = "compress me, compress me, compress me, compress me".getBytes();
+
+        ByteWriter writer = new ByteWriter();
+        writer.writeByte(42);
+        Compression.deflate(data, 0, data.length, writer);
+
+        Assert.assertTrue(writer.size() - 1 < data.length);
+
+        byte[] inflated = Compression.inflate(writer.getBuffer(), 1, writer.size() - 1, data.length);
+        Assert.assertArrayEquals(data, inflated);
+    }
+
+    /**
+     * Output that does not fit into the writer's buffer grows it, also when the
+     * data does not compress.
+     */
+    @Test
+    public void testDeflateGrowsSmallWriter() throws Exception {
+        byte[] data = new byte[4096];
+        new Random(42).nextBytes(data);
+
+        ByteWriter writer = new ByteWriter(8);
+        Compression.deflate(data, 0, data.length, writer);
+
+        byte[] inflated = Compression.inflate(writer.getBuffer(), 0, writer.size(), data.length);
+        Assert.assertArrayEquals(data, inflated);
+    }
+
+    /**
+     * Data that does not inflate to the expected length is rejected.
+     */
+    @Test(expected = IOException.class)
+    public void testInflateWithWrongLengthThrowsException() throws Exception {
+        byte[] data = "compress me".getBytes();
+
+        ByteWriter writer = new ByteWriter();
+        Compression.deflate(data, 0, data.length, writer);
+
+        Compression.inflate(writer.getBuffer(), 0, writer.size(), data.length + 1);
+    }
+
+    /**
+     * Data that is not compressed is rejected.
+     */
+    @Test(expected = IOException.class)
+    public void testInflateInvalidDataThrowsException() throws Exception {
+        byte[] data = "not compressed".getBytes();
+
+        Compression.inflate(data, 0, data.length, 100);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.internal;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.net.MulticastSocket;
+
+import org.junit.Test;
+
+import com.androidzeitgeist.ani.SocketOptions;
+
+/**
+ * Unit tests for the {@link Sockets} class.
+ */
+public class SocketsTest {
+    /**
+     * Options that have been set will be applied to the {@link MulticastSocket}.
+     */
+    @Test
+    public void testOptionsWillBeAppliedToSocket() throws Exception {
+        SocketOptions options = new SocketOptions();
+        options.setReceiveBufferSize(262144);
+        options.setTimeToLive(4);
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+
+        Sockets.apply(options, socket);
+
+        verify(socket).setReceiveBufferSize(262144);
+        verify(socket).setTimeToLive(4);
+        verify(socket, never()).setSendBufferSize(anyInt());
+        verify(socket, never()).setTrafficClass(anyInt());
+    }
+
+    /**
+     * Disabling loopback in the {@link SocketOptions} calls
+     * {@link MulticastSocket#setLoopbackMode(boolean)} with true, which disables
+     * loopback on the socket.
+     */
+    @Test
+    public void testDisablingLoopbackSetsLoopbackModeToTrue() throws Exception {
+        SocketOptions options = new SocketOptions();
+        options.setLoopbackEnabled(false);
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+
+        Sockets.apply(options, socket);
+
+        verify(socket).setLoopbackMode(true);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link CounterMetrics} class.
+ */
+public class CounterMetricsTest {
+    /**
+     * Recorded values are summed up and the largest value is kept.
+     */
+    @Test
+    public void testRecord() {
+        CounterMetrics metrics = new CounterMetrics();
+
+        metrics.record(Metric.BYTES_SENT, 100);
+        metrics.record(Metric.BYTES_SENT, 300);
+        metrics.record(Metric.BYTES_SENT, 200);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+
+        assertEquals(3, snapshot.getCount(Metric.BYTES_SENT));
+        assertEquals(600, snapshot.getTotal(Metric.BYTES_SENT));
+        assertEquals(300, snapshot.getMaximum(Metric.BYTES_SENT));
+        assertEquals(200.0, snapshot.getAverage(Metric.BYTES_SENT), 0.0);
+
+        assertEquals(0, snapshot.getCount(Metric.BYTES_RECEIVED));
+        assertEquals(0.0, snapshot.getAverage(Metric.BYTES_RECEIVED), 0.0);
+    }
+
+    /**
+     * A snapshot is not changed by values recorded later and reset clears all values.
+     */
+    @Test
+    public void testSnapshotAndReset() {
+        CounterMetrics metrics = new CounterMetrics();
+        metrics.record(Metric.PACKETS_RECEIVED, 1);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+
+        metrics.record(Metric.PACKETS_RECEIVED, 1);
+        metrics.reset();
+
+        assertEquals(1, snapshot.getCount(Metric.PACKETS_RECEIVED));
+        assertEquals(0, metrics.snapshot().getCount(Metric.PACKETS_RECEIVED));
+        assertEquals(0, metrics.snapshot().getMaximum(Metric.PACKETS_RECEIVED));
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.presence;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.discovery.Discovery;
+import com.androidzeitgeist.ani.transmitter.Transmitter;
+
+/**
+ * Unit tests for the {@link Presence} class.
+ */
+public class PresenceTest {
+    private static final long PEER_ID = 0x1234L;
+
+    /**
+     * The first heartbeat of a peer adds it to the peer table and notifies the listener.
+     */
+    @Test
+    public void testHeartbeatOfNewPeerJoins() throws Exception {
+        Presence presence = createPresence();
+        PresenceListener listener = mock(PresenceListener.class);
+        presence.setPresenceListener(listener);
+
+        InetAddress address = InetAddress.getByName("192.168.1.10");
+        presence.handleIntent(address, createHeartbeat(PEER_ID, 100), 1000);
+        presence.handleIntent(address, createHeartbeat(PEER_ID, 200), 2000);
+
+        Assert.assertEquals(1, presence.getPeers().size());
+
+        Peer peer = presence.getPeer(address);
+        Assert.assertEquals(PEER_ID, peer.getSenderId());
+        Assert.assertEquals(2000, peer.getLastSeenMonotonic());
+
+        verify(listener).onPeerJoined(peer);
+    }
+
+    /**
+     * Heartbeats sent by the {@link Presence} itself are ignored.
+     */
+    @Test
+    public void testOwnHeartbeatIsIgnored() throws Exception {
+        Presence presence = createPresence();
+        PresenceListener listener = mock(PresenceListener.class);
+        presence.setPresenceListener(listener);
+
+        presence.handleIntent(InetAddress.getByName("192.168.1.10"),
+                createHeartbeat(presence.getSenderId(), 100), 1000);
+
+        Assert.assertTrue(presence.getPeers().isEmpty());
+        verifyZeroInteractions(listener);
+    }
+
+    /**
+     * A peer that stays silent for longer than the timeout is evicted.
+     */
+    @Test
+    public void testSilentPeerIsEvictedAfterTimeout() throws Exception {
+        Presence presence = createPresence();
+        PresenceListener listener = mock(PresenceListener.class);
+        presence.setPresenceListener(listener);
+
+        InetAddress address = InetAddress.getByName("192.168.1.10");
+        presence.handleIntent(address, createHeartbeat(PEER_ID, 100), 1000);
+        Peer peer = presence.getPeer(address);
+
+        List<Peer> expired = new ArrayList<Peer>();
+
+        // Seen again at 3000, so the first deadline at 4500 is extended to 6500.
+        presence.handleIntent(address, createHeartbeat(PEER_ID, 200), 3000);
+        presence.expirePeers(5000, expired);
+        Assert.assertEquals(1, presence.getPeers().size());
+        verify(listener, never()).onPeerLeft(peer);
+
+        presence.expirePeers(7000, expired);
+        Assert.assertTrue(presence.getPeers().isEmpty());
+        Assert.assertNull(presence.getPeer(address));
+        verify(listener).onPeerLeft(peer);
+    }
+
+    /**
+     * Any packet from the address of a peer counts as sign of life.
+     */
+    @Test
+    public void testOtherIntentsKeepPeerAlive() throws Exception {
+        Presence presence = createPresence();
+
+        InetAddress address = InetAddress.getByName("192.168.1.10");
+        presence.handleIntent(address, createHeartbeat(PEER_ID, 100), 1000);
+
+        Intent intent = mock(Intent.class);
+        when(intent.getAction()).thenReturn("com.example.MESSAGE");
+        presence.handleIntent(address, intent, 4000);
+
+        presence.expirePeers(5000, new ArrayList<Peer>());
+        Assert.assertEquals(1, presence.getPeers().size());
+    }
+
+    /**
+     * A goodbye heartbeat removes the peer immediately.
+     */
+    @Test
+    public void testGoodbyeLeavesImmediately() throws Exception {
+        Presence presence = createPresence();
+        PresenceListener listener = mock(PresenceListener.class);
+        presence.setPresenceListener(listener);
+
+        InetAddress address = InetAddress.getByName("192.168.1.10");
+        presence.handleIntent(address, createHeartbeat(PEER_ID, 100), 1000);
+        Peer peer = presence.getPeer(address);
+
+        Intent goodbye = createHeartbeat(PEER_ID, 200);
+        when(goodbye.getBooleanExtra(Presence.EXTRA_GOODBYE, false)).thenReturn(true);
+        presence.handleIntent(address, goodbye, 1500);
+
+        Assert.assertTrue(presence.getPeers().isEmpty());
+        verify(listener).onPeerLeft(peer);
+    }
+
+    /**
+     * An echo of our own heartbeat yields a round trip time sample, excluding
+     * the time the peer held the heartbeat before echoing it.
+     */
+    @Test
+    public void testEchoMeasuresRoundTripTime() throws Exception {
+        Presence presence = createPresence();
+
+        InetAddress address = InetAddress.getByName("192.168.1.10");
+
+        Intent heartbeat = createHeartbeat(PEER_ID, 100);
+        when(heartbeat.getLongExtra(Presence.EXTRA_ECHO_SENDER_ID, 0)).thenReturn(presence.getSenderId());
+        when(heartbeat.hasExtra(Presence.EXTRA_ECHO_TIMESTAMP)).thenReturn(true);
+        when(heartbeat.getLongExtra(Presence.EXTRA_ECHO_TIMESTAMP, 1000)).thenReturn(900L);
+        when(heartbeat.getLongExtra(Presence.EXTRA_ECHO_HOLD_TIME, 0)).thenReturn(60L);
+
+        presence.handleIntent(address, heartbeat, 1000);
+
+        Assert.assertEquals(40, presence.getPeer(address).getRoundTripTime());
+    }
+
+    /**
+     * Our heartbeat echoes the latest heartbeat of a peer together with the
+     * time it has been held.
+     */
+    @Test
+    public void testHeartbeatEchoesPeerHeartbeat() throws Exception {
+        final Intent created = mock(Intent.class);
+        Presence presence = new Presence(mock(Discovery.class), mock(Transmitter.class)) {
+            @Override
+            protected Intent createIntent() {
+                return created;
+            }
+        };
+
+        presence.handleIntent(InetAddress.getByName("192.168.1.10"), createHeartbeat(PEER_ID, 4711), 1000);
+
+        Assert.assertSame(created, presence.createHeartbeat(1025, false));
+
+        verify(created).setAction(Presence.ACTION_HEARTBEAT);
+        verify(created).putExtra(Presence.EXTRA_SENDER_ID, presence.getSenderId());
+        verify(created).putExtra(Presence.EXTRA_TIMESTAMP, 1025L);
+        verify(created).putExtra(Presence.EXTRA_ECHO_SENDER_ID, PEER_ID);
+        verify(created).putExtra(Presence.EXTRA_ECHO_TIMESTAMP, 4711L);
+        verify(created).putExtra(Presence.EXTRA_ECHO_HOLD_TIME, 25L);
+    }
+
+    /**
+     * The packet rate estimate follows the rate of received packets and decays
+     * once the peer stops sending.
+     */
+    @Test
+    public void testPacketRateEstimate() throws Exception {
+        Peer peer = new Peer(InetAddress.getByName("192.168.1.10"), PEER_ID, 0);
+
+        for (long now = 0; now < 60000; now += 100) {
+            peer.recordPacket(now);
+        }
+
+        Assert.assertEquals(10.0, peer.getPacketRate(60000), 0.5);
+        Assert.assertTrue(peer.getPacketRate(90000) < 1.0);
+    }
+
+    /**
+     * A timeout not longer than the heartbeat interval is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testTimeoutShorterThanIntervalThrowsException() {
+        new Presence(mock(Discovery.class), mock(Transmitter.class), 1000, 1000);
+    }
+
+    /**
+     * Heartbeats handled after {@link Presence#stop()} do not add peers again.
+     */
+    @Test
+    public void testHeartbeatAfterStopDoesNotAddPeer() throws Exception {
+        Presence presence = new Presence(mock(Discovery.class), mock(Transmitter.class), 1000, 3500, 0) {
+            @Override
+            protected Intent createIntent() {
+                return mock(Intent.class);
+            }
+        };
+
+        InetAddress address = InetAddress.getByName("192.168.1.10");
+
+        presence.start();
+        presence.handleIntent(address, createHeartbeat(PEER_ID, 100), 1000);
+        Assert.assertEquals(1, presence.getPeers().size());
+
+        presence.stop();
+        Assert.assertTrue(presence.getPeers().isEmpty());
+
+        presence.handleIntent(address, createHeartbeat(PEER_ID, 200), 2000);
+        Assert.assertTrue(presence.getPeers().isEmpty());
+        Assert.assertNull(presence.getPeer(address));
+    }
+
+    private static Presence createPresence() {
+        return new Presence(mock(Discovery.class), mock(Transmitter.class), 1000, 3500, 0);
+    }
+
+    private static Intent createHeartbeat(long senderId, long timestamp) {
+        Intent intent = mock(Intent.class);
+        when(intent.getAction()).thenReturn(Presence.ACTION_HEARTBEAT);
+        when(intent.hasExtra(Presence.EXTRA_SENDER_ID)).thenReturn(true);
+        when(intent.getLongExtra(Presence.EXTRA_SENDER_ID, 0)).thenReturn(senderId);
+        when(intent.getLongExtra(Presence.EXTRA_TIMESTAMP, 0)).thenReturn(timestamp);
+        return intent;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.presence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link TimerWheel} class.
+ */
+public class TimerWheelTest {
+    /**
+     * Items expire once the wheel has been advanced to their deadline.
+     */
+    @Test
+    public void testItemsExpireAtDeadline() {
+        TimerWheel<String> wheel = new TimerWheel<String>(100, 8, 0);
+        wheel.schedule("a", 250);
+        wheel.schedule("b", 500);
+
+        List<String> expired = new ArrayList<String>();
+
+        Assert.assertEquals(0, wheel.advance(200, expired));
+        Assert.assertEquals(1, wheel.advance(300, expired));
+        Assert.assertEquals(Arrays.asList("a"), expired);
+
+        Assert.assertEquals(1, wheel.advance(500, expired));
+        Assert.assertEquals(Arrays.asList("a", "b"), expired);
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    /**
+     * Items with a deadline more than one rotation away stay scheduled until
+     * the rotation they are due in.
+     */
+    @Test
+    public void testItemsBeyondOneRotationExpireInTheirRotation() {
+        TimerWheel<String> wheel = new TimerWheel<String>(100, 4, 0);
+        wheel.schedule("far", 1000);
+
+        List<String> expired = new ArrayList<String>();
+
+        for (long now = 100; now < 1000; now += 100) {
+            wheel.advance(now, expired);
+        }
+        Assert.assertTrue(expired.isEmpty());
+
+        wheel.advance(1000, expired);
+        Assert.assertEquals(Arrays.asList("far"), expired);
+    }
+
+    /**
+     * Advancing the wheel by more than a rotation expires all due items.
+     */
+    @Test
+    public void testLargeAdvanceExpiresAllDueItems() {
+        TimerWheel<String> wheel = new TimerWheel<String>(10, 4, 0);
+        wheel.schedule("a", 15);
+        wheel.schedule("b", 27);
+        wheel.schedule("c", 1000);
+
+        List<String> expired = new ArrayList<String>();
+        wheel.advance(500, expired);
+
+        Assert.assertEquals(2, expired.size());
+        Assert.assertTrue(expired.containsAll(Arrays.asList("a", "b")));
+        Assert.assertEquals(1, wheel.size());
+    }
+
+    /**
+     * Deadlines in the past expire on the next advance.
+     */
+    @Test
+    public void testPastDeadlineExpiresOnNextAdvance() {
+        TimerWheel<String> wheel = new TimerWheel<String>(100, 8, 1000);
+        wheel.schedule("late", 500);
+
+        List<String> expired = new ArrayList<String>();
+        wheel.advance(1100, expired);
+
+        Assert.assertEquals(Arrays.asList("late"), expired);
+    }
+}
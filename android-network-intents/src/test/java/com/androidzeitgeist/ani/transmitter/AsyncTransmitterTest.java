@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.transmitter;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.DatagramPacket;
+import java.net.MulticastSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.codec.IntentCodec;
+import com.androidzeitgeist.ani.codec.IntentCodecException;
+import com.androidzeitgeist.ani.metrics.CounterMetrics;
+import com.androidzeitgeist.ani.test.DummyTestValues;
+
+/**
+ * Unit tests for the {@link AsyncTransmitter} class.
+ */
+public class AsyncTransmitterTest {
+    /**
+     * Calling {@link AsyncTransmitter#transmit(Intent)} will send the {@link Intent}
+     * using the wrapped {@link Transmitter} and complete the returned {@link Future}.
+     */
+    @Test
+    public void testTransmitWillSendIntentOnBackgroundThread() throws Exception {
+        Transmitter transmitter = mockTransmitter();
+        AsyncTransmitter asyncTransmitter = new AsyncTransmitter(transmitter);
+
+        Future<Void> future = asyncTransmitter.transmit(DummyTestValues.createMockedIntent());
+        future.get(5, TimeUnit.SECONDS);
+
+        verify(transmitter).transmit(anyCollectionOf(Intent.class));
+
+        asyncTransmitter.close();
+    }
+
+    /**
+     * If the {@link Transmitter} fails the returned {@link Future} fails and the
+     * {@link TransmitCallback} will be notified.
+     */
+    @Test
+    public void testFailedTransmitWillNotifyCallback() throws Exception {
+        TransmitterException exception = new TransmitterException("Test", null);
+
+        Transmitter transmitter = mockTransmitter();
+        doThrow(exception).when(transmitter).transmit(anyCollectionOf(Intent.class));
+
+        TransmitCallback callback = mock(TransmitCallback.class);
+        Intent intent = DummyTestValues.createMockedIntent();
+
+        AsyncTransmitter asyncTransmitter = new AsyncTransmitter(transmitter);
+
+        Future<Void> future = asyncTransmitter.transmit(intent, callback);
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertSame(exception, e.getCause());
+        }
+
+        verify(callback, timeout(5000)).onTransmitFailed(intent, exception);
+
+        asyncTransmitter.close();
+    }
+
+    /**
+     * Calling {@link AsyncTransmitter#close()} will close the wrapped {@link Transmitter}.
+     */
+    @Test
+    public void testCloseWillCloseTransmitter() throws Exception {
+        Transmitter transmitter = mockTransmitter();
+        AsyncTransmitter asyncTransmitter = new AsyncTransmitter(transmitter);
+
+        asyncTransmitter.close();
+
+        verify(transmitter, timeout(5000)).close();
+    }
+
+    /**
+     * If a batch of queued {@link Intent}s fails because one {@link Intent} can't be
+     * serialized, only the future of that {@link Intent} fails.
+     */
+    @Test
+    public void testBadIntentOnlyFailsItsOwnFuture() throws Exception {
+        final Intent badIntent = DummyTestValues.createMockedIntent();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Transmitter transmitter = mockTransmitter();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Exception {
+                Collection<?> intents = (Collection<?>) invocation.getArguments()[0];
+
+                if (blocked.getCount() > 0) {
+                    blocked.countDown();
+                    release.await();
+                }
+
+                if (intents.contains(badIntent)) {
+                    throw new TransmitterException("Could not serialize intent", new IntentCodecException("Test"));
+                }
+
+                return null;
+            }
+        }).when(transmitter).transmit(anyCollectionOf(Intent.class));
+
+        AsyncTransmitter asyncTransmitter = new AsyncTransmitter(transmitter);
+
+        // Keep the sender thread busy, so that the next Intents are sent as one batch
+        Future<Void> blocking = asyncTransmitter.transmit(DummyTestValues.createMockedIntent());
+        Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        Future<Void> first = asyncTransmitter.transmit(DummyTestValues.createMockedIntent());
+        Future<Void> bad = asyncTransmitter.transmit(badIntent);
+        Future<Void> last = asyncTransmitter.transmit(DummyTestValues.createMockedIntent());
+
+        release.countDown();
+
+        blocking.get(5, TimeUnit.SECONDS);
+        first.get(5, TimeUnit.SECONDS);
+        last.get(5, TimeUnit.SECONDS);
+
+        try {
+            bad.get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TransmitterException);
+        }
+
+        asyncTransmitter.close();
+    }
+
+    /**
+     * If an {@link Intent} in the middle of a batch can't be serialized, the
+     * {@link Intent}s sent before it are not sent again.
+     */
+    @Test
+    public void testMidBatchFailureDoesNotSendIntentsTwice() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Exception {
+                DatagramPacket packet = (DatagramPacket) invocation.getArguments()[0];
+                sent.add(new String(packet.getData(), packet.getOffset(), packet.getLength(), "UTF-8"));
+
+                if (blocked.getCount() > 0) {
+                    blocked.countDown();
+                    release.await();
+                }
+                return null;
+            }
+        }).when(socket).send(any(DatagramPacket.class));
+
+        Transmitter transmitter = spy(new Transmitter());
+        doReturn(socket).when(transmitter).createSocket();
+        transmitter.setIntentCodec(new IntentCodec() {
+            @Override
+            public byte[] encode(Intent intent) throws IntentCodecException {
+                if ("bad".equals(intent.getAction())) {
+                    throw new IntentCodecException("Test");
+                }
+                return intent.getAction().getBytes();
+            }
+
+            @Override
+            public Intent decode(byte[] data, int offset, int length) {
+                throw new UnsupportedOperationException();
+            }
+        });
+
+        // Frames of 8 bytes hold a single Intent of 4 bytes, so every Intent
+        // before the bad one is sent in a packet of its own.
+        transmitter.setBatchPacketSize(8);
+
+        AsyncTransmitter asyncTransmitter = new AsyncTransmitter(transmitter);
+
+        // Keep the sender thread busy, so that the next Intents are sent as one batch
+        Future<Void> blocking = asyncTransmitter.transmit(createIntent("wait"));
+        Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        Future<Void> first = asyncTransmitter.transmit(createIntent("aaaa"));
+        Future<Void> second = asyncTransmitter.transmit(createIntent("bbbb"));
+        Future<Void> bad = asyncTransmitter.transmit(createIntent("bad"));
+        Future<Void> last = asyncTransmitter.transmit(createIntent("cccc"));
+
+        release.countDown();
+
+        blocking.get(5, TimeUnit.SECONDS);
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        last.get(5, TimeUnit.SECONDS);
+
+        try {
+            bad.get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getCause() instanceof IntentCodecException);
+        }
+
+        Assert.assertEquals(Arrays.asList("wait", "aaaa", "bbbb", "cccc"), sent);
+
+        asyncTransmitter.close();
+    }
+
+    /**
+     * An unexpected {@link RuntimeException} fails the affected future but does not
+     * stop the sender thread.
+     */
+    @Test
+    public void testRuntimeExceptionDoesNotStopSenderThread() throws Exception {
+        Transmitter transmitter = mockTransmitter();
+        doThrow(new RuntimeException("Test")).doNothing().when(transmitter).transmit(anyCollectionOf(Intent.class));
+
+        AsyncTransmitter asyncTransmitter = new AsyncTransmitter(transmitter);
+
+        Future<Void> failed = asyncTransmitter.transmit(DummyTestValues.createMockedIntent());
+
+        try {
+            failed.get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getCause() instanceof RuntimeException);
+        }
+
+        asyncTransmitter.transmit(DummyTestValues.createMockedIntent()).get(5, TimeUnit.SECONDS);
+
+        asyncTransmitter.close();
+    }
+
+    private static Intent createIntent(String action) {
+        Intent intent = mock(Intent.class);
+        when(intent.getAction()).thenReturn(action);
+        return intent;
+    }
+
+    private static Transmitter mockTransmitter() {
+        Transmitter transmitter = mock(Transmitter.class);
+        when(transmitter.getMetricsRecorder()).thenReturn(new CounterMetrics());
+        return transmitter;
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.transmitter;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Matchers;
+
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.codec.IntentCodecException;
+import com.androidzeitgeist.ani.metrics.CounterMetrics;
+import com.androidzeitgeist.ani.metrics.Metric;
+
+/**
+ * Unit tests for the {@link ConflatingTransmitter} class.
+ */
+public class ConflatingTransmitterTest {
+    private static final long LONG_INTERVAL = 60000;
+
+    /**
+     * Of multiple {@link Intent}s with the same action only the latest one is sent.
+     */
+    @Test
+    public void testOnlyLatestIntentPerActionIsSent() throws Exception {
+        CounterMetrics metrics = new CounterMetrics();
+        Transmitter transmitter = mockTransmitter(metrics);
+        ConflatingTransmitter conflatingTransmitter = new ConflatingTransmitter(transmitter, LONG_INTERVAL);
+
+        Intent first = createIntent("position");
+        Intent second = createIntent("status");
+        Intent third = createIntent("position");
+
+        conflatingTransmitter.transmit(first);
+        conflatingTransmitter.transmit(second);
+        conflatingTransmitter.transmit(third);
+
+        Assert.assertEquals(2, conflatingTransmitter.getPendingCount());
+
+        conflatingTransmitter.flush();
+
+        verify(transmitter).transmit(Arrays.asList(third, second));
+        Assert.assertEquals(0, conflatingTransmitter.getPendingCount());
+        Assert.assertEquals(1, metrics.snapshot().getCount(Metric.INTENTS_CONFLATED));
+
+        conflatingTransmitter.close();
+    }
+
+    /**
+     * {@link Intent}s without key are never replaced.
+     */
+    @Test
+    public void testIntentsWithoutKeyAreNotConflated() throws Exception {
+        Transmitter transmitter = mockTransmitter(new CounterMetrics());
+        ConflatingTransmitter conflatingTransmitter = new ConflatingTransmitter(transmitter, LONG_INTERVAL);
+
+        Intent first = createIntent(null);
+        Intent second = createIntent(null);
+
+        conflatingTransmitter.transmit(first);
+        conflatingTransmitter.transmit(second);
+
+        conflatingTransmitter.flush();
+
+        verify(transmitter).transmit(Arrays.asList(first, second));
+
+        conflatingTransmitter.close();
+    }
+
+    /**
+     * {@link Intent}s with and without key are sent in the order they have been
+     * passed to {@link ConflatingTransmitter#transmit(Intent)}.
+     */
+    @Test
+    public void testIntentsKeepTransmitOrder() throws Exception {
+        Transmitter transmitter = mockTransmitter(new CounterMetrics());
+        ConflatingTransmitter conflatingTransmitter = new ConflatingTransmitter(transmitter, LONG_INTERVAL);
+
+        Intent first = createIntent("position");
+        Intent second = createIntent(null);
+        Intent third = createIntent("status");
+        Intent fourth = createIntent(null);
+
+        conflatingTransmitter.transmit(first);
+        conflatingTransmitter.transmit(second);
+        conflatingTransmitter.transmit(third);
+        conflatingTransmitter.transmit(fourth);
+
+        conflatingTransmitter.flush();
+
+        verify(transmitter).transmit(Arrays.asList(first, second, third, fourth));
+
+        conflatingTransmitter.close();
+    }
+
+    /**
+     * A custom {@link ConflationKey} decides which {@link Intent}s replace each other.
+     */
+    @Test
+    public void testCustomConflationKey() throws Exception {
+        Transmitter transmitter = mockTransmitter(new CounterMetrics());
+        ConflatingTransmitter conflatingTransmitter = new ConflatingTransmitter(transmitter, LONG_INTERVAL,
+                new ConflationKey() {
+                    @Override
+                    public Object getKey(Intent intent) {
+                        return "all";
+                    }
+                });
+
+        Intent first = createIntent("position");
+        Intent second = createIntent("status");
+
+        conflatingTransmitter.transmit(first);
+        conflatingTransmitter.transmit(second);
+
+        conflatingTransmitter.flush();
+
+        verify(transmitter).transmit(Arrays.asList(second));
+
+        conflatingTransmitter.close();
+    }
+
+    /**
+     * {@link Intent}s that could not be sent because of the network are kept for
+     * the next flush, unless a newer {@link Intent} with the same key replaced them.
+     */
+    @Test
+    public void testIntentsAreKeptIfNetworkFails() throws Exception {
+        Transmitter transmitter = mockTransmitter(new CounterMetrics());
+        doThrow(new TransmitterException("Test", new IOException("Test")))
+            .doNothing()
+            .when(transmitter).transmit(anyCollectionOf(Intent.class));
+
+        ConflatingTransmitter conflatingTransmitter = new ConflatingTransmitter(transmitter, LONG_INTERVAL);
+
+        Intent first = createIntent("position");
+        Intent second = createIntent("status");
+        Intent third = createIntent("position");
+
+        conflatingTransmitter.transmit(first);
+        conflatingTransmitter.transmit(second);
+
+        try {
+            conflatingTransmitter.flush();
+            Assert.fail("Expected TransmitterException");
+        } catch (TransmitterException exception) {
+            // Expected
+        }
+
+        Assert.assertEquals(2, conflatingTransmitter.getPendingCount());
+
+        conflatingTransmitter.transmit(third);
+        conflatingTransmitter.flush();
+
+        verify(transmitter).transmit(Arrays.asList(third, second));
+        Assert.assertEquals(0, conflatingTransmitter.getPendingCount());
+
+        conflatingTransmitter.close();
+    }
+
+    /**
+     * If there are more pending {@link Intent}s without key than allowed, the
+     * oldest of them are dropped, including {@link Intent}s kept after the
+     * network failed.
+     */
+    @Test
+    public void testOldestIntentsWithoutKeyAreDropped() throws Exception {
+        CounterMetrics metrics = new CounterMetrics();
+        Transmitter transmitter = mockTransmitter(metrics);
+        doThrow(new TransmitterException("Test", new IOException("Test")))
+            .doNothing()
+            .when(transmitter).transmit(anyCollectionOf(Intent.class));
+
+        ConflatingTransmitter conflatingTransmitter = new ConflatingTransmitter(
+            transmitter, LONG_INTERVAL, ConflationKey.ACTION, 2);
+
+        Intent first = createIntent(null);
+        Intent second = createIntent(null);
+        Intent status = createIntent("status");
+        Intent third = createIntent(null);
+        Intent fourth = createIntent(null);
+
+        conflatingTransmitter.transmit(first);
+        conflatingTransmitter.transmit(second);
+        conflatingTransmitter.transmit(status);
+        conflatingTransmitter.transmit(third);
+
+        Assert.assertEquals(3, conflatingTransmitter.getPendingCount());
+
+        try {
+            conflatingTransmitter.flush();
+            Assert.fail("Expected TransmitterException");
+        } catch (TransmitterException exception) {
+            // Expected
+        }
+
+        conflatingTransmitter.transmit(fourth);
+        conflatingTransmitter.flush();
+
+        verify(transmitter).transmit(Arrays.asList(second, status, third));
+        verify(transmitter).transmit(Arrays.asList(status, third, fourth));
+        Assert.assertEquals(2, metrics.snapshot().getCount(Metric.SEND_QUEUE_DROPPED));
+
+        conflatingTransmitter.close();
+    }
+
+    /**
+     * {@link Intent}s that could not be serialized are dropped.
+     */
+    @Test
+    public void testIntentsAreDroppedIfSerializationFails() throws Exception {
+        Transmitter transmitter = mockTransmitter(new CounterMetrics());
+        doThrow(new TransmitterException("Test", new IntentCodecException("Test")))
+            .when(transmitter).transmit(anyCollectionOf(Intent.class));
+
+        ConflatingTransmitter conflatingTransmitter = new ConflatingTransmitter(transmitter, LONG_INTERVAL);
+        conflatingTransmitter.transmit(createIntent("position"));
+
+        try {
+            conflatingTransmitter.flush();
+            Assert.fail("Expected TransmitterException");
+        } catch (TransmitterException exception) {
+            // Expected
+        }
+
+        Assert.assertEquals(0, conflatingTransmitter.getPendingCount());
+
+        conflatingTransmitter.close();
+    }
+
+    /**
+     * An unexpected {@link RuntimeException} does not stop the flush thread.
+     */
+    @Test
+    public void testRuntimeExceptionDoesNotStopFlushThread() throws Exception {
+        Transmitter transmitter = mockTransmitter(new CounterMetrics());
+        doThrow(new RuntimeException("Test"))
+            .doNothing()
+            .when(transmitter).transmit(anyCollectionOf(Intent.class));
+
+        ConflatingTransmitter conflatingTransmitter = new ConflatingTransmitter(transmitter, 10);
+
+        conflatingTransmitter.transmit(createIntent("position"));
+        verify(transmitter, timeout(5000)).transmit(anyCollectionOf(Intent.class));
+
+        Intent intent = createIntent("status");
+        conflatingTransmitter.transmit(intent);
+        verify(transmitter, timeout(5000)).transmit(Arrays.asList(intent));
+
+        conflatingTransmitter.close();
+    }
+
+    /**
+     * Flushing without pending {@link Intent}s does not send anything.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFlushWithoutPendingIntentsSendsNothing() throws Exception {
+        Transmitter transmitter = mockTransmitter(new CounterMetrics());
+        ConflatingTransmitter conflatingTransmitter = new ConflatingTransmitter(transmitter, LONG_INTERVAL);
+
+        conflatingTransmitter.flush();
+
+        verify(transmitter, never()).transmit(Matchers.any(List.class));
+
+        conflatingTransmitter.close();
+    }
+
+    /**
+     * Pending {@link Intent}s are sent by the background thread after the interval.
+     */
+    @Test
+    public void testPendingIntentsAreSentAfterInterval() throws Exception {
+        Transmitter transmitter = mockTransmitter(new CounterMetrics());
+        ConflatingTransmitter conflatingTransmitter = new ConflatingTransmitter(transmitter, 10);
+
+        Intent intent = createIntent("position");
+        conflatingTransmitter.transmit(intent);
+
+        verify(transmitter, timeout(5000)).transmit(Arrays.asList(intent));
+
+        conflatingTransmitter.close();
+    }
+
+    /**
+     * Closing the {@link ConflatingTransmitter} sends pending {@link Intent}s and
+     * closes the wrapped {@link Transmitter}.
+     */
+    @Test
+    public void testCloseSendsPendingIntentsAndClosesTransmitter() throws Exception {
+        Transmitter transmitter = mockTransmitter(new CounterMetrics());
+        ConflatingTransmitter conflatingTransmitter = new ConflatingTransmitter(transmitter, LONG_INTERVAL);
+
+        Intent intent = createIntent("position");
+        conflatingTransmitter.transmit(intent);
+        conflatingTransmitter.close();
+
+        verify(transmitter, timeout(5000)).transmit(Arrays.asList(intent));
+        verify(transmitter, timeout(5000)).close();
+    }
+
+    /**
+     * Calling {@link ConflatingTransmitter#transmit(Intent)} after closing throws
+     * an {@link IllegalStateException}.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testTransmitAfterCloseThrowsException() {
+        ConflatingTransmitter conflatingTransmitter = new ConflatingTransmitter(
+                mockTransmitter(new CounterMetrics()), LONG_INTERVAL);
+        conflatingTransmitter.close();
+
+        conflatingTransmitter.transmit(createIntent("position"));
+    }
+
+    /**
+     * Creating a {@link ConflatingTransmitter} with a non-positive interval throws
+     * an {@link IllegalArgumentException}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveIntervalThrowsException() {
+        new ConflatingTransmitter(mockTransmitter(new CounterMetrics()), 0);
+    }
+
+    /**
+     * Creating a {@link ConflatingTransmitter} with a non-positive maximum number of
+     * {@link Intent}s without key throws an {@link IllegalArgumentException}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveMaxUnkeyedIntentsThrowsException() {
+        new ConflatingTransmitter(mockTransmitter(new CounterMetrics()), LONG_INTERVAL, ConflationKey.ACTION, 0);
+    }
+
+    private static Intent createIntent(String action) {
+        Intent intent = mock(Intent.class);
+        when(intent.getAction()).thenReturn(action);
+        return intent;
+    }
+
+    private static Transmitter mockTransmitter(CounterMetrics metrics) {
+        Transmitter transmitter = mock(Transmitter.class);
+        when(transmitter.getMetricsRecorder()).thenReturn(metrics);
+        return transmitter;
+    }
+}
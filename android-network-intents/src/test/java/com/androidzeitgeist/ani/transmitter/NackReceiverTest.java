@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.transmitter;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+
+import com.androidzeitgeist.ani.internal.ByteWriter;
+import com.androidzeitgeist.ani.internal.PacketFormat;
+
+/**
+ * Unit tests for the {@link NackReceiver} class.
+ */
+public class NackReceiverTest {
+    /**
+     * Packets requested by a NACK are sent again.
+     */
+    @Test
+    public void testRetransmitsRequestedPackets() throws Exception {
+        Transmitter transmitter = mock(Transmitter.class);
+
+        RetransmitBuffer buffer = new RetransmitBuffer(8, 60000);
+        byte[] packet1 = new byte[] { 1 };
+        byte[] packet2 = new byte[] { 2 };
+        buffer.add(1, packet1, System.nanoTime() / 1000000);
+        buffer.add(2, packet2, System.nanoTime() / 1000000);
+
+        NackReceiver receiver = new NackReceiver(transmitter, 42, buffer);
+
+        try {
+            ByteWriter nack = createNack(42, 1, 2);
+            receiver.handleNack(nack.getBuffer(), nack.size());
+
+            verify(transmitter).retransmit(packet1);
+            verify(transmitter).retransmit(packet2);
+        } finally {
+            receiver.close();
+        }
+    }
+
+    /**
+     * NACKs for a different sender are ignored.
+     */
+    @Test
+    public void testIgnoresNacksForOtherSenders() throws Exception {
+        Transmitter transmitter = mock(Transmitter.class);
+
+        RetransmitBuffer buffer = new RetransmitBuffer(8, 60000);
+        buffer.add(1, new byte[] { 1 }, System.nanoTime() / 1000000);
+
+        NackReceiver receiver = new NackReceiver(transmitter, 42, buffer);
+
+        try {
+            ByteWriter nack = createNack(23, 1, 1);
+            receiver.handleNack(nack.getBuffer(), nack.size());
+
+            verify(transmitter, never()).retransmit(any(byte[].class));
+        } finally {
+            receiver.close();
+        }
+    }
+
+    private static ByteWriter createNack(long senderId, int firstSequence, int count) {
+        ByteWriter nack = new ByteWriter();
+        PacketFormat.writeHeader(nack, PacketFormat.FLAG_NACK);
+        nack.writeLong(senderId);
+        nack.writeInt(firstSequence);
+        nack.writeVarInt(count);
+        return nack;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.transmitter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link Pacer} class.
+ */
+public class PacerTest {
+    private static final long SECOND = 1000000000L;
+
+    /**
+     * Packets within the burst are not delayed, further packets are spaced
+     * according to the packet rate.
+     */
+    @Test
+    public void testPacketRate() {
+        Pacer pacer = new Pacer(10, 0, 2, 0, 0);
+
+        Assert.assertEquals(0, pacer.reserve(100, 0));
+        Assert.assertEquals(0, pacer.reserve(100, 0));
+        Assert.assertEquals(SECOND / 10, pacer.reserve(100, 0));
+        Assert.assertEquals(2 * SECOND / 10, pacer.reserve(100, 0));
+    }
+
+    /**
+     * Packets are delayed until enough bytes have been refilled.
+     */
+    @Test
+    public void testByteRate() {
+        Pacer pacer = new Pacer(0, 1000, 0, 500, 0);
+
+        Assert.assertEquals(0, pacer.reserve(500, 0));
+        Assert.assertEquals(SECOND / 2, pacer.reserve(500, 0));
+        Assert.assertEquals(0, pacer.reserve(250, 2 * SECOND));
+    }
+
+    /**
+     * Tokens refill over time but never beyond the burst.
+     */
+    @Test
+    public void testRefillIsLimitedByBurst() {
+        Pacer pacer = new Pacer(1, 0, 1, 0, 0);
+
+        Assert.assertEquals(0, pacer.reserve(1, 0));
+        Assert.assertEquals(0, pacer.reserve(1, 100 * SECOND));
+        Assert.assertEquals(SECOND, pacer.reserve(1, 100 * SECOND));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.transmitter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link RetransmitBuffer} class.
+ */
+public class RetransmitBufferTest {
+    /**
+     * A kept packet can be requested by its sequence number.
+     */
+    @Test
+    public void testReturnsKeptPacket() {
+        RetransmitBuffer buffer = new RetransmitBuffer(4, 1000);
+        byte[] packet = new byte[] { 1, 2, 3 };
+
+        buffer.add(7, packet, 0);
+
+        Assert.assertSame(packet, buffer.getForRetransmission(7, 10));
+        Assert.assertNull(buffer.getForRetransmission(8, 10));
+    }
+
+    /**
+     * Packets are dropped once overwritten by newer packets or after the retention time.
+     */
+    @Test
+    public void testDropsOverwrittenAndExpiredPackets() {
+        RetransmitBuffer buffer = new RetransmitBuffer(2, 1000);
+
+        buffer.add(0, new byte[1], 0);
+        buffer.add(1, new byte[1], 0);
+        buffer.add(2, new byte[1], 0);
+
+        Assert.assertNull(buffer.getForRetransmission(0, 10));
+        Assert.assertNotNull(buffer.getForRetransmission(1, 10));
+        Assert.assertNull(buffer.getForRetransmission(2, 1001));
+    }
+
+    /**
+     * A packet requested multiple times within a short time is only returned once.
+     */
+    @Test
+    public void testSuppressesRepeatedRetransmissions() {
+        RetransmitBuffer buffer = new RetransmitBuffer(4, 1000);
+
+        buffer.add(-3, new byte[1], 0);
+
+        Assert.assertNotNull(buffer.getForRetransmission(-3, 100));
+        Assert.assertNull(buffer.getForRetransmission(-3, 105));
+        Assert.assertNotNull(buffer.getForRetransmission(-3, 200));
+    }
+}
@@ -17,20 +17,36 @@
 package com.androidzeitgeist.ani.transmitter;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.io.IOException;
 import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import android.content.Intent;
 
+import com.androidzeitgeist.ani.internal.AndroidNetworkIntents;
+import com.androidzeitgeist.ani.internal.ByteReader;
+import com.androidzeitgeist.ani.internal.PacketFormat;
 import com.androidzeitgeist.ani.test.DummyTestValues;
 
 /**
@@ -108,9 +124,411 @@ public class TransmitterTest {
         ArgumentCaptor<DatagramPacket> packetArgument = ArgumentCaptor.forClass(DatagramPacket.class);
         verify(socket).send(packetArgument.capture());
 
+        DatagramPacket packet = packetArgument.getValue();
+
         Assert.assertEquals(
             intent.toUri(0),
-            new String(packetArgument.getValue().getData())
+            new String(packet.getData(), packet.getOffset(), packet.getLength(), "UTF-8")
+        );
+    }
+
+    /**
+     * With a socket pool the {@link MulticastSocket} is kept open and reused by
+     * subsequent calls to {@link Transmitter#transmit(Intent)}.
+     */
+    @Test
+    public void testPooledSocketWillBeReused() throws Exception {
+        Transmitter transmitter = spy(new Transmitter());
+        transmitter.setSocketPoolSize(1);
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doReturn(socket).when(transmitter).createSocket();
+
+        Intent intent = DummyTestValues.createMockedIntent();
+
+        transmitter.transmit(intent);
+        transmitter.transmit(intent);
+
+        verify(transmitter, times(1)).createSocket();
+        verify(socket, times(2)).send(any(DatagramPacket.class));
+        verify(socket, never()).close();
+    }
+
+    /**
+     * Calling {@link Transmitter#close()} closes the pooled {@link MulticastSocket}.
+     */
+    @Test
+    public void testClosingTransmitterWillClosePooledSocket() throws Exception {
+        Transmitter transmitter = spy(new Transmitter());
+        transmitter.setSocketPoolSize(1);
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doReturn(socket).when(transmitter).createSocket();
+
+        transmitter.transmit(DummyTestValues.createMockedIntent());
+        transmitter.close();
+
+        verify(socket).close();
+    }
+
+    /**
+     * A pooled {@link MulticastSocket} that failed to send will be closed and
+     * not be reused.
+     */
+    @Test
+    public void testFailedPooledSocketWillBeReplaced() throws Exception {
+        Transmitter transmitter = spy(new Transmitter());
+        transmitter.setSocketPoolSize(1);
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doThrow(new IOException()).when(socket).send(any(DatagramPacket.class));
+        doReturn(socket).when(transmitter).createSocket();
+
+        Intent intent = DummyTestValues.createMockedIntent();
+
+        try {
+            transmitter.transmit(intent);
+            Assert.fail("Expected TransmitterException");
+        } catch (TransmitterException exception) {
+            // Expected
+        }
+
+        verify(socket).close();
+    }
+
+    /**
+     * Calling {@link Transmitter#transmit(Intent)} after {@link Transmitter#close()}
+     * throws an {@link IllegalStateException}.
+     */
+    @Test(expected=IllegalStateException.class)
+    public void testTransmitAfterCloseThrowsException() throws Exception {
+        Transmitter transmitter = new Transmitter();
+        transmitter.close();
+
+        transmitter.transmit(DummyTestValues.createMockedIntent());
+    }
+
+    /**
+     * A reliable send racing {@link Transmitter#close()} does not start a
+     * {@link NackReceiver} that nothing would close anymore.
+     */
+    @Test(expected=IllegalStateException.class)
+    public void testReliableTransmitRacingCloseThrowsException() throws Exception {
+        final Transmitter transmitter = spy(new Transmitter());
+        transmitter.setRetransmitBuffer(16, 1000);
+
+        final MulticastSocket socket = mock(MulticastSocket.class);
+
+        // Close the transmitter after the send has passed the closed check
+        doAnswer(new Answer<MulticastSocket>() {
+            @Override
+            public MulticastSocket answer(InvocationOnMock invocation) {
+                transmitter.close();
+                return socket;
+            }
+        }).when(transmitter).createSocket();
+
+        try {
+            transmitter.transmit(DummyTestValues.createMockedIntent());
+        } finally {
+            verify(socket, never()).send(any(DatagramPacket.class));
+        }
+    }
+
+    /**
+     * A {@link Transmitter} created with an {@link InetSocketAddress} sends its
+     * {@link DatagramPacket}s to exactly this address.
+     */
+    @Test
+    public void testTransmitterSendsToGivenSocketAddress() throws Exception {
+        InetSocketAddress destination = new InetSocketAddress(
+            InetAddress.getByAddress(new byte[] { (byte) 225, 1, 2, 3 }), 4242
+        );
+
+        Transmitter transmitter = spy(new Transmitter(destination));
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doReturn(socket).when(transmitter).createSocket();
+
+        transmitter.transmit(DummyTestValues.createMockedIntent());
+
+        ArgumentCaptor<DatagramPacket> packetArgument = ArgumentCaptor.forClass(DatagramPacket.class);
+        verify(socket).send(packetArgument.capture());
+
+        Assert.assertEquals(destination, packetArgument.getValue().getSocketAddress());
+    }
+
+    /**
+     * Calling {@link Transmitter#transmit(java.util.Collection)} without a batch
+     * packet size sends one {@link DatagramPacket} per {@link Intent} using a
+     * single {@link MulticastSocket}.
+     */
+    @Test
+    public void testTransmitCollectionUsesSingleSocket() throws Exception {
+        Transmitter transmitter = spy(new Transmitter());
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doReturn(socket).when(transmitter).createSocket();
+
+        List<Intent> intents = Arrays.asList(
+            DummyTestValues.createMockedIntent(),
+            DummyTestValues.createMockedIntent(),
+            DummyTestValues.createMockedIntent()
         );
+
+        transmitter.transmit(intents);
+
+        verify(transmitter, times(1)).createSocket();
+        verify(socket, times(3)).send(any(DatagramPacket.class));
+        verify(socket).close();
+    }
+
+    /**
+     * With a batch packet size multiple {@link Intent}s are packed into a single
+     * {@link DatagramPacket} starting with a frame header.
+     */
+    @Test
+    public void testTransmitCollectionPacksIntentsIntoOnePacket() throws Exception {
+        Transmitter transmitter = spy(new Transmitter());
+        transmitter.setBatchPacketSize(AndroidNetworkIntents.DEFAULT_BATCH_PACKET_SIZE);
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doReturn(socket).when(transmitter).createSocket();
+
+        List<Intent> intents = Arrays.asList(
+            DummyTestValues.createMockedIntent(),
+            DummyTestValues.createMockedIntent(),
+            DummyTestValues.createMockedIntent()
+        );
+
+        transmitter.transmit(intents);
+
+        ArgumentCaptor<DatagramPacket> packetArgument = ArgumentCaptor.forClass(DatagramPacket.class);
+        verify(socket, times(1)).send(packetArgument.capture());
+
+        DatagramPacket packet = packetArgument.getValue();
+        Assert.assertTrue(PacketFormat.isFrame(packet.getData(), 0, packet.getLength()));
+        Assert.assertEquals(PacketFormat.HEADER_LENGTH + 3 * 2, packet.getLength());
+    }
+
+    /**
+     * With a compression threshold large packets are sent compressed.
+     */
+    @Test
+    public void testTransmitCompressesLargePackets() throws Exception {
+        Transmitter transmitter = spy(new Transmitter());
+        transmitter.setCompressionThreshold(100);
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doReturn(socket).when(transmitter).createSocket();
+
+        StringBuilder uri = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            uri.append('a');
+        }
+
+        Intent intent = mock(Intent.class);
+        when(intent.toUri(0)).thenReturn(uri.toString());
+
+        transmitter.transmit(intent);
+
+        ArgumentCaptor<DatagramPacket> packetArgument = ArgumentCaptor.forClass(DatagramPacket.class);
+        verify(socket).send(packetArgument.capture());
+
+        DatagramPacket packet = packetArgument.getValue();
+        Assert.assertTrue(PacketFormat.isFrame(packet.getData(), 0, packet.getLength()));
+        Assert.assertEquals(PacketFormat.FLAG_COMPRESSED, packet.getData()[3]);
+        Assert.assertTrue(packet.getLength() < 2000);
+    }
+
+    /**
+     * Packets below the compression threshold are sent unchanged.
+     */
+    @Test
+    public void testTransmitDoesNotCompressSmallPackets() throws Exception {
+        Transmitter transmitter = spy(new Transmitter());
+        transmitter.setCompressionThreshold(100);
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doReturn(socket).when(transmitter).createSocket();
+
+        transmitter.transmit(DummyTestValues.createMockedIntent());
+
+        ArgumentCaptor<DatagramPacket> packetArgument = ArgumentCaptor.forClass(DatagramPacket.class);
+        verify(socket).send(packetArgument.capture());
+
+        Assert.assertEquals(1, packetArgument.getValue().getLength());
+    }
+
+    /**
+     * With a fragment size packets exceeding it are split into fragments.
+     */
+    @Test
+    public void testTransmitSplitsLargePacketsIntoFragments() throws Exception {
+        Transmitter transmitter = spy(new Transmitter());
+        transmitter.setFragmentSize(100);
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doReturn(socket).when(transmitter).createSocket();
+
+        StringBuilder uri = new StringBuilder();
+        for (int i = 0; i < 240; i++) {
+            uri.append('a');
+        }
+
+        Intent intent = mock(Intent.class);
+        when(intent.toUri(0)).thenReturn(uri.toString());
+
+        transmitter.transmit(intent);
+
+        ArgumentCaptor<DatagramPacket> packetArgument = ArgumentCaptor.forClass(DatagramPacket.class);
+        verify(socket, times(3)).send(packetArgument.capture());
+
+        DatagramPacket packet = packetArgument.getValue();
+        Assert.assertTrue(PacketFormat.isFrame(packet.getData(), 0, packet.getLength()));
+        Assert.assertEquals(PacketFormat.FLAG_FRAGMENT, packet.getData()[3]);
+        Assert.assertTrue(packet.getLength() <= 100);
+    }
+
+    /**
+     * A fragment size that can not hold the fragment header is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooSmallFragmentSizeThrowsException() {
+        new Transmitter().setFragmentSize(PacketFormat.HEADER_LENGTH);
+    }
+
+    /**
+     * Sequenced packets carry the sender id and an increasing sequence number.
+     */
+    @Test
+    public void testTransmitStampsSequenceNumbers() throws Exception {
+        Transmitter transmitter = spy(new Transmitter());
+        transmitter.setSequenced(true);
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doReturn(socket).when(transmitter).createSocket();
+
+        final List<byte[]> packets = new ArrayList<byte[]>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                DatagramPacket packet = (DatagramPacket) invocation.getArguments()[0];
+                packets.add(Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength()));
+                return null;
+            }
+        }).when(socket).send(any(DatagramPacket.class));
+
+        transmitter.transmit(DummyTestValues.createMockedIntent());
+        transmitter.transmit(DummyTestValues.createMockedIntent());
+
+        Assert.assertEquals(2, packets.size());
+
+        ByteReader first = new ByteReader(packets.get(0), 0, packets.get(0).length);
+        ByteReader second = new ByteReader(packets.get(1), 0, packets.get(1).length);
+
+        Assert.assertEquals(PacketFormat.FLAG_SEQUENCED, PacketFormat.readHeader(first));
+        Assert.assertEquals(PacketFormat.FLAG_SEQUENCED, PacketFormat.readHeader(second));
+        Assert.assertEquals(first.readLong(), second.readLong());
+        Assert.assertEquals(first.readInt() + 1, second.readInt());
+        Assert.assertEquals(1, second.remaining());
+    }
+
+    /**
+     * Intents sent to peers are sent once to each peer on the port of the
+     * {@link Transmitter} instead of to the multicast group.
+     */
+    @Test
+    public void testTransmitToPeersSendsPacketToEveryPeer() throws Exception {
+        Transmitter transmitter = spy(new Transmitter(4242));
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doReturn(socket).when(transmitter).createSocket();
+
+        InetAddress peer1 = InetAddress.getByAddress(new byte[] { (byte) 192, (byte) 168, 1, 10 });
+        InetAddress peer2 = InetAddress.getByAddress(new byte[] { (byte) 192, (byte) 168, 1, 11 });
+
+        transmitter.transmit(Arrays.asList(DummyTestValues.createMockedIntent()), Arrays.asList(peer1, peer2));
+
+        ArgumentCaptor<DatagramPacket> packetArgument = ArgumentCaptor.forClass(DatagramPacket.class);
+        verify(socket, times(2)).send(packetArgument.capture());
+
+        Assert.assertEquals(new InetSocketAddress(peer1, 4242), packetArgument.getAllValues().get(0).getSocketAddress());
+        Assert.assertEquals(new InetSocketAddress(peer2, 4242), packetArgument.getAllValues().get(1).getSocketAddress());
+    }
+
+    /**
+     * Packets sent to peers are not sequenced, as every peer only sees some of them.
+     */
+    @Test
+    public void testTransmitToPeerIsNotSequenced() throws Exception {
+        Transmitter transmitter = spy(new Transmitter());
+        transmitter.setSequenced(true);
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doReturn(socket).when(transmitter).createSocket();
+
+        transmitter.transmit(DummyTestValues.createMockedIntent(), InetAddress.getByName("192.168.1.10"));
+
+        ArgumentCaptor<DatagramPacket> packetArgument = ArgumentCaptor.forClass(DatagramPacket.class);
+        verify(socket).send(packetArgument.capture());
+
+        Assert.assertEquals("/", new String(packetArgument.getValue().getData(), 0,
+                packetArgument.getValue().getLength()));
+    }
+
+    /**
+     * Sending to an empty set of peers does not send anything.
+     */
+    @Test
+    public void testTransmitToNoPeersSendsNothing() throws Exception {
+        Transmitter transmitter = spy(new Transmitter());
+
+        transmitter.transmit(Arrays.asList(DummyTestValues.createMockedIntent()), new ArrayList<InetAddress>());
+
+        verify(transmitter, never()).createSocket();
+    }
+
+    /**
+     * A packet burst of 0 would never allow sending and is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testPacingWithoutPacketBurstThrowsException() {
+        new Transmitter().setPacing(10, 0, 0, 0);
+    }
+
+    /**
+     * Subsequent calls on the same thread send from the same reused buffer
+     * instead of allocating a new one for every packet.
+     */
+    @Test
+    public void testSendBufferIsReused() throws Exception {
+        Transmitter transmitter = spy(new Transmitter());
+        transmitter.setSocketPoolSize(1);
+
+        MulticastSocket socket = mock(MulticastSocket.class);
+        doReturn(socket).when(transmitter).createSocket();
+
+        final List<byte[]> buffers = new ArrayList<byte[]>();
+        final List<String> payloads = new ArrayList<String>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Exception {
+                DatagramPacket packet = (DatagramPacket) invocation.getArguments()[0];
+                buffers.add(packet.getData());
+                payloads.add(new String(packet.getData(), packet.getOffset(), packet.getLength(), "UTF-8"));
+                return null;
+            }
+        }).when(socket).send(any(DatagramPacket.class));
+
+        Intent intent = DummyTestValues.createMockedIntent();
+
+        transmitter.transmit(intent);
+        transmitter.transmit(intent);
+
+        Assert.assertEquals(2, buffers.size());
+        Assert.assertSame(buffers.get(0), buffers.get(1));
+        Assert.assertEquals(intent.toUri(0), payloads.get(0));
+        Assert.assertEquals(intent.toUri(0), payloads.get(1));
     }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.benchmark;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.net.Uri;
+
+import com.androidzeitgeist.ani.codec.BinaryIntentCodec;
+import com.androidzeitgeist.ani.codec.CachingIntentCodec;
+import com.androidzeitgeist.ani.codec.IntentCodec;
+import com.androidzeitgeist.ani.codec.UriIntentCodec;
+
+/**
+ * {@link Intent}s and {@link IntentCodec}s shared by the benchmarks.
+ */
+public final class BenchmarkIntents {
+    private BenchmarkIntents() {
+    }
+
+    /**
+     * Returns the {@link IntentCodec} for the given benchmark parameter: "uri" or
+     * "binary", optionally followed by "-cached" to wrap it in a {@link CachingIntentCodec}.
+     */
+    public static IntentCodec createCodec(String name) {
+        if ("uri".equals(name)) {
+            return new UriIntentCodec();
+        } else if ("binary".equals(name)) {
+            return new BinaryIntentCodec();
+        } else if (name.endsWith("-cached")) {
+            return new CachingIntentCodec(createCodec(name.substring(0, name.length() - 7)), 64);
+        }
+
+        throw new IllegalArgumentException("Unknown codec: " + name);
+    }
+
+    /**
+     * Returns the {@link Intent} for the given benchmark parameter: "small" for
+     * an action with a single extra, as sent by a chat message, or "large" for an
+     * {@link Intent} using all fields and a dozen extras.
+     */
+    public static Intent createIntent(String name) {
+        if ("small".equals(name)) {
+            Intent intent = new Intent("com.androidzeitgeist.ani.benchmark.MESSAGE");
+            intent.putExtra("message", "Hello from the other side");
+            return intent;
+        } else if ("large".equals(name)) {
+            Intent intent = new Intent("com.androidzeitgeist.ani.benchmark.STATUS");
+            intent.setDataAndType(Uri.parse("content://com.androidzeitgeist.ani/status/42"), "text/plain");
+            intent.setPackage("com.androidzeitgeist.ani.benchmark");
+            intent.setComponent(new ComponentName("com.androidzeitgeist.ani.benchmark",
+                "com.androidzeitgeist.ani.benchmark.StatusReceiver"));
+            intent.addCategory("android.intent.category.DEFAULT");
+            intent.addCategory("com.androidzeitgeist.ani.benchmark.STATUS_UPDATES");
+            intent.setFlags(0x10000000);
+            intent.putExtra("device", "Nexus 5X");
+            intent.putExtra("owner", "J\u00fcrgen M\u00fcller");
+            intent.putExtra("status", "Available, ready to receive files; 3 pending downloads");
+            intent.putExtra("battery", 87);
+            intent.putExtra("timestamp", 1466000000000L);
+            intent.putExtra("charging", true);
+            intent.putExtra("latitude", 52.5200066d);
+            intent.putExtra("longitude", 13.404954d);
+            intent.putExtra("accuracy", 12.5f);
+            intent.putExtra("signal", (short) -67);
+            intent.putExtra("channel", (byte) 11);
+            intent.putExtra("grade", 'A');
+            return intent;
+        }
+
+        throw new IllegalArgumentException("Unknown intent: " + name);
+    }
+}
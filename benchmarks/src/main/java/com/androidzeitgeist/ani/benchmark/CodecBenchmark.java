@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.codec.IntentCodec;
+import com.androidzeitgeist.ani.codec.IntentCodecException;
+import com.androidzeitgeist.ani.codec.IntentHeader;
+import com.androidzeitgeist.ani.codec.IntentHeaderDecoder;
+
+/**
+ * Measures encoding and decoding of {@link Intent}s with the available
+ * {@link IntentCodec}s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    @Param({ "uri", "binary" })
+    public String codec;
+
+    @Param({ "small", "large" })
+    public String intent;
+
+    private IntentCodec intentCodec;
+    private Intent originalIntent;
+    private byte[] encodedIntent;
+
+    @Setup
+    public void setUp() throws IntentCodecException {
+        intentCodec = BenchmarkIntents.createCodec(codec);
+        originalIntent = BenchmarkIntents.createIntent(intent);
+        encodedIntent = intentCodec.encode(originalIntent);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IntentCodecException {
+        return intentCodec.encode(originalIntent);
+    }
+
+    @Benchmark
+    public Intent decode() throws IntentCodecException {
+        return intentCodec.decode(encodedIntent, 0, encodedIntent.length);
+    }
+
+    /**
+     * Decodes only the fields needed for filtering, as done for every received
+     * packet while a {@link com.androidzeitgeist.ani.discovery.DiscoveryFilter} is set.
+     */
+    @Benchmark
+    public IntentHeader decodeHeader() throws IntentCodecException {
+        return ((IntentHeaderDecoder) intentCodec).decodeHeader(encodedIntent, 0, encodedIntent.length);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.benchmark;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.MulticastSocket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-memory stand-in for a {@link MulticastSocket}. Sent packets never reach
+ * the network; they are counted and, if requested, copied so that they can be
+ * replayed to a receiver.
+ */
+public class MemorySocket extends MulticastSocket {
+    private final List<byte[]> sentPackets;
+    private long sentBytes;
+
+    /**
+     * @param capture Whether the content of sent packets should be kept.
+     */
+    public MemorySocket(boolean capture) throws IOException {
+        super((SocketAddress) null);
+
+        this.sentPackets = capture ? new ArrayList<byte[]>() : null;
+    }
+
+    @Override
+    public void send(DatagramPacket packet) {
+        sentBytes += packet.getLength();
+
+        if (sentPackets != null) {
+            sentPackets.add(Arrays.copyOfRange(packet.getData(), packet.getOffset(),
+                packet.getOffset() + packet.getLength()));
+        }
+    }
+
+    /**
+     * Returns the content of all sent packets, or null if the content has not
+     * been kept.
+     */
+    public List<byte[]> getSentPackets() {
+        return sentPackets;
+    }
+
+    public long getSentBytes() {
+        return sentBytes;
+    }
+}
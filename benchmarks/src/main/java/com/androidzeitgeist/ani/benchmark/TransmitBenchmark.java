@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.benchmark;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.transmitter.Transmitter;
+import com.androidzeitgeist.ani.transmitter.TransmitterException;
+
+/**
+ * Measures the latency of {@link Transmitter#transmit(Intent)}, either sending
+ * to an in-memory socket, which isolates the cost of the library, or through
+ * the loopback interface, which adds the cost of the system call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransmitBenchmark {
+    @Param({ "memory", "loopback" })
+    public String socket;
+
+    @Param({ "uri", "binary" })
+    public String codec;
+
+    @Param({ "small", "large" })
+    public String intent;
+
+    /**
+     * 0 opens a new socket for every call (the default of {@link Transmitter}),
+     * 1 reuses a single socket.
+     */
+    @Param({ "0", "1" })
+    public int socketPoolSize;
+
+    private DatagramSocket sink;
+    private Transmitter transmitter;
+    private Intent originalIntent;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Receiving socket on the loopback interface that is never read. Packets
+        // exceeding its buffer are dropped by the system without affecting the sender.
+        sink = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        InetSocketAddress destination = new InetSocketAddress(sink.getLocalAddress(), sink.getLocalPort());
+
+        if ("memory".equals(socket)) {
+            transmitter = new Transmitter(destination) {
+                @Override
+                protected MulticastSocket createSocket() throws IOException {
+                    return new MemorySocket(false);
+                }
+            };
+        } else if ("loopback".equals(socket)) {
+            transmitter = new Transmitter(destination);
+        } else {
+            throw new IllegalArgumentException("Unknown socket: " + socket);
+        }
+
+        transmitter.setIntentCodec(BenchmarkIntents.createCodec(codec));
+        transmitter.setSocketPoolSize(socketPoolSize);
+
+        originalIntent = BenchmarkIntents.createIntent(intent);
+    }
+
+    @TearDown
+    public void tearDown() {
+        transmitter.close();
+        sink.close();
+    }
+
+    @Benchmark
+    public void transmit() throws TransmitterException {
+        transmitter.transmit(originalIntent);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.androidzeitgeist.ani.discovery;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.content.Intent;
+
+import com.androidzeitgeist.ani.benchmark.BenchmarkIntents;
+import com.androidzeitgeist.ani.benchmark.MemorySocket;
+import com.androidzeitgeist.ani.codec.IntentCodec;
+import com.androidzeitgeist.ani.transmitter.Transmitter;
+
+/**
+ * Measures the throughput of {@link DiscoveryThread#receiveIntents()}: receiving
+ * a packet, parsing the frame, decoding the {@link Intent}s and notifying the
+ * listener on the receiving thread.
+ *
+ * The packets are created by a {@link Transmitter} up front and replayed by an
+ * in-memory socket, so only the receive path is measured. Run with
+ * {@code -prof gc} to see the allocation rate per received packet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiveBenchmark {
+    private static final int PACKETS = 1024;
+    private static final int INTENTS_PER_BATCH = 8;
+
+    /**
+     * The "-cached" variants decode through a {@link com.androidzeitgeist.ani.codec.CachingIntentCodec}.
+     * As all packets are identical, every packet after the first is a cache hit.
+     */
+    @Param({ "uri", "binary", "uri-cached", "binary-cached" })
+    public String codec;
+
+    @Param({ "small", "large" })
+    public String intent;
+
+    /**
+     * "single" sends one {@link Intent} per packet, "batch" packs multiple
+     * {@link Intent}s into a packet and "compressed" compresses every packet.
+     */
+    @Param({ "single", "batch", "compressed" })
+    public String frame;
+
+    private ReplaySocket socket;
+    private CountingListener listener;
+    private DiscoveryThread thread;
+
+    @Setup
+    public void setUp() throws Exception {
+        IntentCodec intentCodec = BenchmarkIntents.createCodec(codec);
+
+        socket = new ReplaySocket(createPackets(intentCodec));
+        listener = new CountingListener();
+
+        thread = new DiscoveryThread("239.5.6.7", 6789, listener) {
+            @Override
+            protected MulticastSocket createSocket() {
+                return socket;
+            }
+        };
+        thread.setIntentCodec(intentCodec);
+
+        socket.setThread(thread);
+    }
+
+    @TearDown
+    public void tearDown() {
+        socket.release();
+    }
+
+    /**
+     * Receives {@value #PACKETS} packets. Setting up the thread for every
+     * invocation is negligible compared to handling the packets.
+     */
+    @Benchmark
+    @OperationsPerInvocation(PACKETS)
+    public Intent receiveIntents() {
+        thread.run();
+
+        return listener.lastIntent;
+    }
+
+    private List<byte[]> createPackets(IntentCodec intentCodec) throws Exception {
+        final MemorySocket capture = new MemorySocket(true);
+
+        Transmitter transmitter = new Transmitter(new InetSocketAddress("127.0.0.1", 6789)) {
+            @Override
+            protected MulticastSocket createSocket() {
+                return capture;
+            }
+        };
+        transmitter.setIntentCodec(intentCodec);
+
+        Intent original = BenchmarkIntents.createIntent(intent);
+
+        if ("batch".equals(frame) || "compressed".equals(frame)) {
+            transmitter.setBatchPacketSize(8192);
+        }
+
+        if ("compressed".equals(frame)) {
+            transmitter.setCompressionThreshold(1);
+        }
+
+        int intentsPerTransmit = "single".equals(frame) ? 1 : INTENTS_PER_BATCH;
+
+        List<Intent> intents = new ArrayList<Intent>();
+        for (int i = 0; i < intentsPerTransmit; i++) {
+            intents.add(original);
+        }
+
+        for (int i = 0; i < PACKETS; i++) {
+            transmitter.transmit(intents);
+        }
+
+        if (capture.getSentPackets().size() != PACKETS) {
+            throw new IllegalStateException("Expected " + PACKETS + " packets, got "
+                + capture.getSentPackets().size());
+        }
+
+        return capture.getSentPackets();
+    }
+
+    /**
+     * Socket returning the given packets in a loop. After the last packet the
+     * thread is stopped, so that every call of {@link DiscoveryThread#run()}
+     * receives all packets once.
+     */
+    private static class ReplaySocket extends MulticastSocket {
+        private final List<byte[]> packets;
+        private final InetAddress sender;
+        private DiscoveryThread thread;
+        private int index;
+
+        ReplaySocket(List<byte[]> packets) throws IOException {
+            super((SocketAddress) null);
+
+            this.packets = packets;
+            this.sender = InetAddress.getByName("192.168.1.23");
+        }
+
+        void setThread(DiscoveryThread thread) {
+            this.thread = thread;
+        }
+
+        @Override
+        public void receive(DatagramPacket packet) {
+            byte[] data = packets.get(index);
+
+            System.arraycopy(data, 0, packet.getData(), packet.getOffset(), data.length);
+            packet.setLength(data.length);
+            packet.setAddress(sender);
+            packet.setPort(6789);
+
+            index++;
+            if (index == packets.size()) {
+                index = 0;
+                thread.stopDiscovery();
+            }
+        }
+
+        @Override
+        public void close() {
+            // Kept open across invocations, see release()
+        }
+
+        void release() {
+            super.close();
+        }
+    }
+
+    private static class CountingListener implements DiscoveryListener {
+        private Intent lastIntent;
+
+        @Override
+        public void onDiscoveryStarted() {
+        }
+
+        @Override
+        public void onDiscoveryStopped() {
+        }
+
+        @Override
+        public void onDiscoveryError(Exception exception) {
+            throw new IllegalStateException("Receiving failed", exception);
+        }
+
+        @Override
+        public void onIntentDiscovered(InetAddress address, Intent intent) {
+            lastIntent = intent;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content;
+
+/**
+ * Shadow of the Android class of the same name.
+ */
+public final class ComponentName {
+    private final String packageName;
+    private final String className;
+
+    public ComponentName(String packageName, String className) {
+        if (packageName == null || className == null) {
+            throw new NullPointerException("package name and class name must not be null");
+        }
+
+        this.packageName = packageName;
+        this.className = className;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String flattenToString() {
+        return packageName + "/" + className;
+    }
+
+    public static ComponentName unflattenFromString(String string) {
+        int separator = string.indexOf('/');
+        if (separator < 0 || separator + 1 >= string.length()) {
+            return null;
+        }
+
+        String packageName = string.substring(0, separator);
+        String className = string.substring(separator + 1);
+        if (className.charAt(0) == '.') {
+            className = packageName + className;
+        }
+
+        return new ComponentName(packageName, className);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof ComponentName)) {
+            return false;
+        }
+
+        ComponentName other = (ComponentName) object;
+        return packageName.equals(other.packageName) && className.equals(other.className);
+    }
+
+    @Override
+    public int hashCode() {
+        return packageName.hashCode() + className.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ComponentInfo{" + flattenToString() + "}";
+    }
+}
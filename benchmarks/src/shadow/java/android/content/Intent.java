@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content;
+
+import java.net.URISyntaxException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import android.net.Uri;
+import android.os.Bundle;
+
+/**
+ * Shadow of the Android class of the same name. Implements the fields used
+ * by the library and the URI representation of {@link #toUri(int)} and
+ * {@link #parseUri(String, int)} in the format of the Android implementation,
+ * limited to the extra types that format supports.
+ */
+public class Intent {
+    public static final String ACTION_VIEW = "android.intent.action.VIEW";
+
+    private static final String INTENT_FRAGMENT = "#Intent;";
+
+    private String action;
+    private Uri data;
+    private String type;
+    private String packageName;
+    private ComponentName component;
+    private int flags;
+    private Set<String> categories;
+    private Bundle extras;
+
+    public Intent() {
+    }
+
+    public Intent(String action) {
+        this.action = action;
+    }
+
+    public Intent(String action, Uri data) {
+        this.action = action;
+        this.data = data;
+    }
+
+    public Intent(Intent intent) {
+        this.action = intent.action;
+        this.data = intent.data;
+        this.type = intent.type;
+        this.packageName = intent.packageName;
+        this.component = intent.component;
+        this.flags = intent.flags;
+
+        if (intent.categories != null) {
+            this.categories = new LinkedHashSet<String>(intent.categories);
+        }
+
+        if (intent.extras != null) {
+            this.extras = new Bundle(intent.extras);
+        }
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public Intent setAction(String action) {
+        this.action = action;
+        return this;
+    }
+
+    public Uri getData() {
+        return data;
+    }
+
+    public String getDataString() {
+        return data != null ? data.toString() : null;
+    }
+
+    public String getScheme() {
+        return data != null ? data.getScheme() : null;
+    }
+
+    public Intent setData(Uri data) {
+        this.data = data;
+        this.type = null;
+        return this;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Intent setType(String type) {
+        this.data = null;
+        this.type = type;
+        return this;
+    }
+
+    public Intent setDataAndType(Uri data, String type) {
+        this.data = data;
+        this.type = type;
+        return this;
+    }
+
+    public String getPackage() {
+        return packageName;
+    }
+
+    public Intent setPackage(String packageName) {
+        this.packageName = packageName;
+        return this;
+    }
+
+    public ComponentName getComponent() {
+        return component;
+    }
+
+    public Intent setComponent(ComponentName component) {
+        this.component = component;
+        return this;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public Intent setFlags(int flags) {
+        this.flags = flags;
+        return this;
+    }
+
+    public Intent addFlags(int flags) {
+        this.flags |= flags;
+        return this;
+    }
+
+    public Set<String> getCategories() {
+        return categories;
+    }
+
+    public boolean hasCategory(String category) {
+        return categories != null && categories.contains(category);
+    }
+
+    public Intent addCategory(String category) {
+        if (categories == null) {
+            categories = new LinkedHashSet<String>();
+        }
+        categories.add(category);
+        return this;
+    }
+
+    public Bundle getExtras() {
+        return extras != null ? new Bundle(extras) : null;
+    }
+
+    public boolean hasExtra(String name) {
+        return extras != null && extras.containsKey(name);
+    }
+
+    public String getStringExtra(String name) {
+        return extras != null ? extras.getString(name) : null;
+    }
+
+    public int getIntExtra(String name, int defaultValue) {
+        return extras != null ? extras.getInt(name, defaultValue) : defaultValue;
+    }
+
+    public long getLongExtra(String name, long defaultValue) {
+        return extras != null ? extras.getLong(name, defaultValue) : defaultValue;
+    }
+
+    public boolean getBooleanExtra(String name, boolean defaultValue) {
+        return extras != null ? extras.getBoolean(name, defaultValue) : defaultValue;
+    }
+
+    public Intent putExtra(String name, String value) {
+        return putExtraValue(name, value);
+    }
+
+    public Intent putExtra(String name, int value) {
+        return putExtraValue(name, value);
+    }
+
+    public Intent putExtra(String name, long value) {
+        return putExtraValue(name, value);
+    }
+
+    public Intent putExtra(String name, boolean value) {
+        return putExtraValue(name, value);
+    }
+
+    public Intent putExtra(String name, byte value) {
+        return putExtraValue(name, value);
+    }
+
+    public Intent putExtra(String name, short value) {
+        return putExtraValue(name, value);
+    }
+
+    public Intent putExtra(String name, char value) {
+        return putExtraValue(name, value);
+    }
+
+    public Intent putExtra(String name, float value) {
+        return putExtraValue(name, value);
+    }
+
+    public Intent putExtra(String name, double value) {
+        return putExtraValue(name, value);
+    }
+
+    public Intent putExtra(String name, byte[] value) {
+        return putExtraValue(name, value);
+    }
+
+    public Intent putExtra(String name, int[] value) {
+        return putExtraValue(name, value);
+    }
+
+    public Intent putExtra(String name, long[] value) {
+        return putExtraValue(name, value);
+    }
+
+    public Intent putExtra(String name, String[] value) {
+        return putExtraValue(name, value);
+    }
+
+    private Intent putExtraValue(String name, Object value) {
+        if (extras == null) {
+            extras = new Bundle();
+        }
+        extras.put(name, value);
+        return this;
+    }
+
+    public String toUri(int flags) {
+        StringBuilder uri = new StringBuilder(128);
+
+        if (data != null) {
+            uri.append(data.toString());
+        }
+
+        uri.append(INTENT_FRAGMENT);
+
+        if (action != null) {
+            uri.append("action=").append(Uri.encode(action)).append(';');
+        }
+        if (categories != null) {
+            for (String category : categories) {
+                uri.append("category=").append(Uri.encode(category)).append(';');
+            }
+        }
+        if (type != null) {
+            uri.append("type=").append(Uri.encode(type, "/")).append(';');
+        }
+        if (this.flags != 0) {
+            uri.append("launchFlags=0x").append(Integer.toHexString(this.flags)).append(';');
+        }
+        if (packageName != null) {
+            uri.append("package=").append(Uri.encode(packageName)).append(';');
+        }
+        if (component != null) {
+            uri.append("component=").append(Uri.encode(component.flattenToString(), "/")).append(';');
+        }
+        if (extras != null) {
+            for (String key : extras.keySet()) {
+                Object value = extras.get(key);
+                char prefix = getExtraPrefix(value);
+
+                if (prefix != 0) {
+                    uri.append(prefix).append('.').append(Uri.encode(key)).append('=')
+                        .append(Uri.encode(value.toString())).append(';');
+                }
+            }
+        }
+
+        uri.append("end");
+
+        return uri.toString();
+    }
+
+    public static Intent parseUri(String uri, int flags) throws URISyntaxException {
+        int fragment = uri.lastIndexOf('#');
+        if (fragment == -1 || !uri.startsWith(INTENT_FRAGMENT, fragment)) {
+            return new Intent(ACTION_VIEW, Uri.parse(uri));
+        }
+
+        Intent intent = new Intent();
+
+        if (fragment > 0) {
+            intent.data = Uri.parse(uri.substring(0, fragment));
+        }
+
+        int position = fragment + INTENT_FRAGMENT.length();
+        while (!uri.startsWith("end", position)) {
+            int separator = uri.indexOf('=', position);
+            int end = uri.indexOf(';', position);
+            if (end == -1) {
+                throw new URISyntaxException(uri, "Intent fragment not terminated", position);
+            }
+            if (separator == -1 || separator > end) {
+                throw new URISyntaxException(uri, "Intent field without value", position);
+            }
+
+            String name = uri.substring(position, separator);
+            String value = Uri.decode(uri.substring(separator + 1, end));
+
+            if (name.equals("action")) {
+                intent.action = value;
+            } else if (name.equals("category")) {
+                intent.addCategory(value);
+            } else if (name.equals("type")) {
+                intent.type = value;
+            } else if (name.equals("launchFlags")) {
+                intent.flags = Integer.decode(value).intValue();
+            } else if (name.equals("package")) {
+                intent.packageName = value;
+            } else if (name.equals("component")) {
+                intent.component = ComponentName.unflattenFromString(value);
+            } else if (name.length() > 2 && name.charAt(1) == '.') {
+                parseExtra(intent, name.charAt(0), Uri.decode(name.substring(2)), value);
+            }
+
+            position = end + 1;
+        }
+
+        return intent;
+    }
+
+    private static char getExtraPrefix(Object value) {
+        if (value instanceof String) {
+            return 'S';
+        } else if (value instanceof Boolean) {
+            return 'B';
+        } else if (value instanceof Byte) {
+            return 'b';
+        } else if (value instanceof Character) {
+            return 'c';
+        } else if (value instanceof Double) {
+            return 'd';
+        } else if (value instanceof Float) {
+            return 'f';
+        } else if (value instanceof Integer) {
+            return 'i';
+        } else if (value instanceof Long) {
+            return 'l';
+        } else if (value instanceof Short) {
+            return 's';
+        }
+
+        return 0;
+    }
+
+    private static void parseExtra(Intent intent, char prefix, String key, String value) {
+        switch (prefix) {
+            case 'S':
+                intent.putExtra(key, value);
+                break;
+            case 'B':
+                intent.putExtra(key, Boolean.parseBoolean(value));
+                break;
+            case 'b':
+                intent.putExtra(key, Byte.parseByte(value));
+                break;
+            case 'c':
+                intent.putExtra(key, value.charAt(0));
+                break;
+            case 'd':
+                intent.putExtra(key, Double.parseDouble(value));
+                break;
+            case 'f':
+                intent.putExtra(key, Float.parseFloat(value));
+                break;
+            case 'i':
+                intent.putExtra(key, Integer.parseInt(value));
+                break;
+            case 'l':
+                intent.putExtra(key, Long.parseLong(value));
+                break;
+            case 's':
+                intent.putExtra(key, Short.parseShort(value));
+                break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Intent { " + toUri(0) + " }";
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.net;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Shadow of the Android class of the same name. Only keeps the string form
+ * of the URI and parses the scheme on demand.
+ */
+public final class Uri {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final String ALLOWED = "_-!.~'()*";
+
+    private final String uriString;
+
+    private Uri(String uriString) {
+        this.uriString = uriString;
+    }
+
+    public static Uri parse(String uriString) {
+        if (uriString == null) {
+            throw new NullPointerException("uriString");
+        }
+
+        return new Uri(uriString);
+    }
+
+    public String getScheme() {
+        for (int i = 0; i < uriString.length(); i++) {
+            char c = uriString.charAt(i);
+
+            if (c == ':') {
+                return i > 0 ? uriString.substring(0, i) : null;
+            } else if (c == '/' || c == '?' || c == '#') {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Percent-encodes all characters except letters, digits and "_-!.~'()*"
+     * using UTF-8, like the Android implementation.
+     */
+    public static String encode(String s) {
+        return encode(s, null);
+    }
+
+    /**
+     * Percent-encodes like {@link #encode(String)}, but keeps the characters
+     * in the given string unencoded as well.
+     */
+    public static String encode(String s, String allow) {
+        if (s == null) {
+            return null;
+        }
+
+        StringBuilder encoded = null;
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            if (isAllowed(c, allow)) {
+                if (encoded != null) {
+                    encoded.append(c);
+                }
+                continue;
+            }
+
+            if (encoded == null) {
+                encoded = new StringBuilder(s.length() + 16);
+                encoded.append(s, 0, i);
+            }
+
+            int end = i + 1;
+            while (end < s.length() && !isAllowed(s.charAt(end), allow)) {
+                end++;
+            }
+
+            for (byte b : s.substring(i, end).getBytes(UTF_8)) {
+                encoded.append('%');
+                encoded.append(HEX_DIGITS[(b & 0xf0) >> 4]);
+                encoded.append(HEX_DIGITS[b & 0x0f]);
+            }
+
+            i = end - 1;
+        }
+
+        return encoded != null ? encoded.toString() : s;
+    }
+
+    public static String decode(String s) {
+        if (s == null) {
+            return null;
+        }
+
+        if (s.indexOf('%') == -1) {
+            return s;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(s.length());
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            if (c == '%' && i + 2 < s.length()) {
+                int high = Character.digit(s.charAt(i + 1), 16);
+                int low = Character.digit(s.charAt(i + 2), 16);
+
+                if (high != -1 && low != -1) {
+                    bytes.write((high << 4) | low);
+                    i += 2;
+                    continue;
+                }
+            }
+
+            byte[] encoded = String.valueOf(c).getBytes(UTF_8);
+            bytes.write(encoded, 0, encoded.length);
+        }
+
+        return new String(bytes.toByteArray(), UTF_8);
+    }
+
+    private static boolean isAllowed(char c, String allow) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || ALLOWED.indexOf(c) != -1 || (allow != null && allow.indexOf(c) != -1);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        return object instanceof Uri && uriString.equals(((Uri) object).uriString);
+    }
+
+    @Override
+    public int hashCode() {
+        return uriString.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return uriString;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+/**
+ * Shadow of the Android class of the same name.
+ */
+public class Build {
+    /**
+     * Shadow of the Android class of the same name. Reports an API level on
+     * which all code paths of the library are enabled, as the JVM provides all
+     * APIs they need.
+     */
+    public static class VERSION {
+        public static final int SDK_INT = 24;
+    }
+}
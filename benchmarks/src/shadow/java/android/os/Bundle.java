@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2013 Sebastian Kaspari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shadow of the Android class of the same name, backed by a map.
+ */
+public final class Bundle {
+    private final Map<String, Object> values;
+
+    public Bundle() {
+        values = new LinkedHashMap<String, Object>();
+    }
+
+    public Bundle(Bundle bundle) {
+        values = new LinkedHashMap<String, Object>(bundle.values);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    public boolean containsKey(String key) {
+        return values.containsKey(key);
+    }
+
+    public Set<String> keySet() {
+        return values.keySet();
+    }
+
+    public Object get(String key) {
+        return values.get(key);
+    }
+
+    public void remove(String key) {
+        values.remove(key);
+    }
+
+    /**
+     * Stores a value of any type. Replaces the typed put methods of the
+     * Android class, which all end up in the same map.
+     */
+    public void put(String key, Object value) {
+        values.put(key, value);
+    }
+
+    public String getString(String key) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    @Override
+    public String toString() {
+        return "Bundle" + values;
+    }
+}
@@ -1,10 +1,11 @@
 package com.androidzeitgeist.ani.sample.intentchat;
 
-import java.net.InetAddress;
+import java.util.List;
 
 import android.app.Activity;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Looper;
 import android.view.KeyEvent;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -14,13 +15,16 @@ import android.widget.ImageButton;
 import android.widget.TextView;
 import android.widget.TextView.OnEditorActionListener;
 
+import com.androidzeitgeist.ani.discovery.BatchDiscoveryListener;
+import com.androidzeitgeist.ani.discovery.DiscoveredIntent;
 import com.androidzeitgeist.ani.discovery.Discovery;
 import com.androidzeitgeist.ani.discovery.DiscoveryException;
-import com.androidzeitgeist.ani.discovery.DiscoveryListener;
+import com.androidzeitgeist.ani.transmitter.AsyncTransmitter;
+import com.androidzeitgeist.ani.transmitter.TransmitCallback;
 import com.androidzeitgeist.ani.transmitter.Transmitter;
 import com.androidzeitgeist.ani.transmitter.TransmitterException;
 
-public class ChatActivity extends Activity implements DiscoveryListener, OnEditorActionListener, OnClickListener  {
+public class ChatActivity extends Activity implements BatchDiscoveryListener, TransmitCallback, OnEditorActionListener, OnClickListener  {
     private static final String EXTRA_MESSAGE = "message";
 
     private TextView chatView;
@@ -28,7 +32,7 @@ public class ChatActivity extends Activity implements DiscoveryListener, OnEdito
     private ImageButton sendButton;
 
     private Discovery discovery;
-    private Transmitter transmitter;
+    private AsyncTransmitter transmitter;
 
     private boolean discoveryStarted;
 
@@ -39,8 +43,8 @@ public class ChatActivity extends Activity implements DiscoveryListener, OnEdito
         setContentView(R.layout.activity_chat);
 
         discovery = new Discovery();
-        discovery.setDisoveryListener(this);
-        transmitter = new Transmitter();
+        discovery.addBatchDiscoveryListener(this, null, Looper.getMainLooper());
+        transmitter = new AsyncTransmitter(new Transmitter());
 
         chatView = (TextView) findViewById(R.id.chat);
 
@@ -73,6 +77,13 @@ public class ChatActivity extends Activity implements DiscoveryListener, OnEdito
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        transmitter.close();
+    }
+
     private void appendChatMessage(final String message) {
         runOnUiThread(new Runnable() {
             public void run() {
@@ -101,16 +112,20 @@ public class ChatActivity extends Activity implements DiscoveryListener, OnEdito
     }
 
     @Override
-    public void onIntentDiscovered(InetAddress address, Intent intent) {
-        if (!intent.hasExtra(EXTRA_MESSAGE)) {
-            appendChatMessage("* (!) Received Intent without message");
-            return;
-        }
+    public void onIntentsDiscovered(List<DiscoveredIntent> intents) {
+        for (DiscoveredIntent discoveredIntent : intents) {
+            Intent intent = discoveredIntent.getIntent();
+
+            if (!intent.hasExtra(EXTRA_MESSAGE)) {
+                appendChatMessage("* (!) Received Intent without message");
+                continue;
+            }
 
-        String message = intent.getStringExtra(EXTRA_MESSAGE);
-        String sender  = address.getHostName();
+            String message = intent.getStringExtra(EXTRA_MESSAGE);
+            String sender  = discoveredIntent.getAddress().getHostAddress();
 
-        appendChatMessageFromSender(sender, message);
+            appendChatMessageFromSender(sender, message);
+        }
     }
 
     @Override
@@ -140,22 +155,16 @@ public class ChatActivity extends Activity implements DiscoveryListener, OnEdito
         Intent intent = new Intent();
         intent.putExtra(EXTRA_MESSAGE, message);
 
-        transmitIntentOnBackgroundThread(intent);
+        transmitter.transmit(intent, this);
     }
 
-    private void transmitIntentOnBackgroundThread(final Intent intent) {
-        new Thread() {
-            public void run() {
-                transmitIntent(intent); 
-            }
-        }.start();
+    @Override
+    public void onTransmitted(Intent intent) {
+        // Our own message will be received and displayed by the discovery.
     }
 
-    private void transmitIntent(final Intent intent) {
-        try {
-            transmitter.transmit(intent);
-        } catch (TransmitterException exception) {
-            appendChatMessage("Could not transmit intent: " + exception.getMessage());
-        }
+    @Override
+    public void onTransmitFailed(Intent intent, TransmitterException exception) {
+        appendChatMessage("Could not transmit intent: " + exception.getMessage());
     }
 }